@@ -3,12 +3,10 @@ package algorithm;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.List;
-import java.util.Map;
 
 import network.Packet;
 import network.Router;
 import network.Topology;
-import simulation.Simulation;
 import simulation.StepResult;
 
 
@@ -20,54 +18,35 @@ public class FloodingAlgorithm extends RoutingAlgorithm {
     }
 
     @Override
-    public StepResult step(Topology topology) {
-	StepResult result = new StepResult(Simulation.getInstance()
-		.getStepNumber());
-
-	// Refresh packets, dropping repeats
-	for (Router router : topology) {
-	    List<Packet> packetsDropped = router.dropRepeatedPackets();
-	    Map<String, List<Packet>> packetsReceived = router.refreshPackets();
-
-	    for (Packet packet : packetsDropped) {
-		result.addPacketDroppedMessage(packet);
-	    }
+    protected void refreshPackets(Router router, StepResult result) {
+	// Drop repeats before refreshing
+	for (Packet packet : router.dropRepeatedPackets()) {
+	    result.addPacketDroppedMessage(packet);
+	}
 
-	    for (Packet packet : packetsReceived.get("removed")) {
-		result.addPacketReceivedMessage(packet);
-	    }
+	super.refreshPackets(router, result);
+    }
 
-	    for (Packet packet : packetsReceived.get("dropped")) {
-		result.addPacketDroppedMessage(packet);
+    @Override
+    protected void route(Router source, Packet packet,
+	    List<Transfer> transfers) {
+	Deque<Router> nextRouters = new ArrayDeque<>();
+	for (int i = 0; i < source.getDegree(); i++) {
+	    Router connection = source.getConnection(i);
+	    if (!packet.hasVisited(connection)) {
+		nextRouters.push(connection);
 	    }
 	}
 
-	for (Router source : topology) {
-	    for (Packet packet : source.getNonStalePackets()) {
-		Deque<Router> nextRouters = new ArrayDeque<>();
-		for (Router connection : source.getConnections()) {
-		    if (!packet.hasVisited(connection)) {
-			nextRouters.push(connection);
-		    }
-		}
-
-		if (nextRouters.size() == 0) {
-		    source.dropPacket(packet);
-		    result.addPacketDroppedMessage(packet);
-		} else {
-		    while (nextRouters.size() > 1) {
-			Packet copy = new Packet(packet);
-			topology.injectPacketCopy(copy, source);
-			source.sendPacket(copy, nextRouters.pop());
-			result.addPacketSentMessage(copy, source);
-		    }
-		    source.sendPacket(packet, nextRouters.pop());
-		    result.addPacketSentMessage(packet, source);
-		}
+	if (nextRouters.size() == 0) {
+	    transfers.add(Transfer.drop(source, packet));
+	} else {
+	    while (nextRouters.size() > 1) {
+		transfers.add(Transfer.sendCopy(source, packet,
+			nextRouters.pop()));
 	    }
+	    transfers.add(Transfer.send(source, packet, nextRouters.pop()));
 	}
-
-	return result;
     }
 
     @Override
@@ -0,0 +1,111 @@
+package algorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import network.Router;
+
+/**
+ * Runs one phase of a step over an array of routers. The routers are split
+ * into contiguous partitions, each of which collects its output into its own
+ * partial result. In parallel mode the partitions are processed on the
+ * common ForkJoinPool, otherwise there is a single partition processed on the
+ * calling thread. Either way the partial results are returned in router
+ * order, so merging them gives the same outcome however the work was split.
+ */
+class RouterPartitions {
+
+    private static final int MIN_PARTITION_SIZE = 64;
+
+    private RouterPartitions() {
+    }
+
+    /**
+     * @param routers
+     *            The routers to process, in order, at the start of the array.
+     * @param count
+     *            The number of routers to process.
+     * @param parallel
+     *            Whether partitions may be processed concurrently.
+     * @param newPartial
+     *            Creates an empty partial result for a partition.
+     * @param phase
+     *            The work to do for a single router. It may only modify the
+     *            router it is given and the partial result.
+     * @return The partial results, one per partition, in router order.
+     */
+    public static <T> List<T> run(Router[] routers, int count,
+	    boolean parallel, Supplier<T> newPartial,
+	    BiConsumer<Router, T> phase) {
+	int partitions = 1;
+	if (parallel) {
+	    partitions = Math.min(count / MIN_PARTITION_SIZE,
+		    4 * ForkJoinPool.getCommonPoolParallelism());
+	    partitions = Math.max(partitions, 1);
+	}
+
+	List<T> partials = new ArrayList<>(partitions);
+	for (int i = 0; i < partitions; i++) {
+	    partials.add(newPartial.get());
+	}
+
+	if (partitions == 1) {
+	    T partial = partials.get(0);
+	    for (int i = 0; i < count; i++) {
+		phase.accept(routers[i], partial);
+	    }
+	} else {
+	    ForkJoinPool.commonPool().invoke(
+		    new PhaseTask<>(routers, count, partials, phase, 0,
+			    partitions));
+	}
+
+	return partials;
+    }
+
+    @SuppressWarnings("serial")
+    private static class PhaseTask<T> extends RecursiveAction {
+	private final Router[] routers;
+	private final int count;
+	private final List<T> partials;
+	private final BiConsumer<Router, T> phase;
+	private final int first;
+	private final int last;
+
+	/**
+	 * Processes the partitions from first (inclusive) to last (exclusive).
+	 */
+	public PhaseTask(Router[] routers, int count, List<T> partials,
+		BiConsumer<Router, T> phase, int first, int last) {
+	    this.routers = routers;
+	    this.count = count;
+	    this.partials = partials;
+	    this.phase = phase;
+	    this.first = first;
+	    this.last = last;
+	}
+
+	@Override
+	protected void compute() {
+	    if (last - first > 1) {
+		int middle = (first + last) >>> 1;
+		invokeAll(new PhaseTask<>(routers, count, partials, phase,
+			first, middle), new PhaseTask<>(routers, count,
+			partials, phase, middle, last));
+	    } else {
+		int partitions = partials.size();
+		int start = (int) ((long) count * first / partitions);
+		int end = (int) ((long) count * last / partitions);
+		T partial = partials.get(first);
+
+		for (int i = start; i < end; i++) {
+		    phase.accept(routers[i], partial);
+		}
+	    }
+	}
+    }
+}
@@ -2,11 +2,16 @@ package algorithm;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
+import network.Packet;
 import network.Router;
 import network.Topology;
 import simulation.StepResult;
 
+import common.Counter;
+import common.RandomStreams;
+
 public abstract class RoutingAlgorithm {
 
     private enum RoutingAlgorithmSubclass {
@@ -15,20 +20,26 @@ public abstract class RoutingAlgorithm {
 		RandomPathAlgorithm.class), SHORTEST_PATH(
 		ShortestPathAlgorithm.class);
 
-	private RoutingAlgorithm algorithm;
+	private final Class<?> type;
+	private final RoutingAlgorithm algorithm;
 
 	private RoutingAlgorithmSubclass(Class<?> type) {
-	    try {
-		algorithm = (RoutingAlgorithm) type.newInstance();
-	    } catch (InstantiationException | IllegalAccessException ex) {
-		algorithm = null;
-	    }
+	    this.type = type;
+	    algorithm = newInstance();
 	}
 
 	public RoutingAlgorithm getInstance() {
 	    return algorithm;
 	}
 
+	public RoutingAlgorithm newInstance() {
+	    try {
+		return (RoutingAlgorithm) type.newInstance();
+	    } catch (InstantiationException | IllegalAccessException ex) {
+		return null;
+	    }
+	}
+
 	public static int indexof(RoutingAlgorithm algorithm) {
 	    for (int i = 0; i < values().length; i++) {
 		if (algorithm == values()[i].getInstance()) {
@@ -39,6 +50,10 @@ public abstract class RoutingAlgorithm {
 	}
     }
 
+    private boolean parallel = false;
+    private RandomStreams randomStreams = new RandomStreams(0);
+    private Counter stepNumber = new Counter();
+
     public static RoutingAlgorithm[] getSubclasses() {
 	List<RoutingAlgorithm> subclasses = new ArrayList<>();
 
@@ -56,20 +71,156 @@ public abstract class RoutingAlgorithm {
 	return RoutingAlgorithmSubclass.indexof(algorithm);
     }
 
+    /**
+     * Creates a new instance of a routing algorithm, looked up by either its
+     * constant name (e.g. SHORTEST_PATH) or its display name (e.g.
+     * "Shortest Path"), ignoring case. Every simulation needs its own
+     * instance, since an algorithm keeps per-run state.
+     * 
+     * @param name
+     *            The name of the algorithm.
+     * @return A new algorithm, or null if there is no algorithm with that
+     *         name.
+     */
+    public static RoutingAlgorithm create(String name) {
+	for (RoutingAlgorithmSubclass a : RoutingAlgorithmSubclass.values()) {
+	    if (a.name().equalsIgnoreCase(name)
+		    || a.getInstance().toString().equalsIgnoreCase(name)) {
+		return a.newInstance();
+	    }
+	}
+	return null;
+    }
+
     public abstract void buildRoutingTables(Topology topology);
 
-    public abstract StepResult step(Topology topology);
+    /**
+     * @return Whether steps are split across cores.
+     */
+    public boolean isParallel() {
+	return parallel;
+    }
+
+    /**
+     * Sets whether steps are split across cores. Both modes give identical
+     * results. In parallel mode refreshing and routing run on ForkJoinPool
+     * threads, so they must only touch the router they are given; Transfers
+     * are still applied, and StepListeners notified, on the stepping thread.
+     * 
+     * @param parallel
+     *            True to split steps across cores, false to take them on the
+     *            calling thread.
+     */
+    public void setParallel(boolean parallel) {
+	this.parallel = parallel;
+    }
+
+    /**
+     * Sets where the algorithm gets its randomness from. This is done by the
+     * Simulation that the algorithm belongs to.
+     * 
+     * @param randomStreams
+     *            The streams derived from the simulation's seed.
+     */
+    public void setRandomStreams(RandomStreams randomStreams) {
+	this.randomStreams = randomStreams;
+    }
+
+    /**
+     * @param packet
+     *            A packet being routed this step.
+     * @return The random stream for routing that packet this step. It is the
+     *         same no matter which thread asks for it.
+     */
+    protected SplittableRandom getRandom(Packet packet) {
+	return randomStreams.forPacket(stepNumber, packet.getID());
+    }
+
+    /**
+     * Take a step in two phases. First every router holding packets refreshes
+     * them, then decides where to send them. Idle routers are skipped, so a
+     * step costs time in proportion to the packets in flight rather than to
+     * the size of the topology. Both phases only touch one router at a time,
+     * so they can be split across cores. The decisions are staged as
+     * Transfers and carried out afterwards in router order, which keeps the
+     * outcome the same in either mode. Packets sent on wait in the routers'
+     * next-step queues, which are swapped in at the end of the step.
+     * 
+     * @param topology
+     *            The topology to step.
+     * @param stepNumber
+     *            The number of the step being taken.
+     * @return What happened during the step.
+     */
+    public StepResult step(Topology topology, Counter stepNumber) {
+	this.stepNumber = stepNumber;
+	StepResult result = new StepResult(stepNumber);
+	int count = topology.findActiveRouters();
+	Router[] routers = topology.getActiveRouters();
+	topology.getGraph(); // Built before the routing threads read it
+
+	// Refresh packets
+	for (StepResult refreshed : RouterPartitions.run(routers, count,
+		parallel, () -> new StepResult(stepNumber),
+		this::refreshPackets)) {
+	    result.append(refreshed);
+	}
+
+	// Decide where to send packets, then send them
+	for (List<Transfer> transfers : RouterPartitions.run(routers, count,
+		parallel, ArrayList<Transfer>::new, this::routePackets)) {
+	    for (Transfer transfer : transfers) {
+		transfer.apply(result);
+	    }
+	}
+	topology.endStep();
+
+	return result;
+    }
 
-    public void undoStep(Topology topology) {
-	for (Router router : topology) {
-	    router.unsendPackets();
+    /**
+     * Update the packets a router is holding at the start of a step,
+     * recording which ones have reached their destination or been dropped.
+     * 
+     * @param router
+     *            The router to refresh.
+     * @param result
+     *            The result to record what happened in.
+     */
+    protected void refreshPackets(Router router, StepResult result) {
+	router.refreshPackets();
+	List<Packet> delivered = router.getDeliveredPackets();
+	for (int i = 0; i < delivered.size(); i++) {
+	    result.addPacketReceivedMessage(delivered.get(i));
+	}
+	List<Packet> dropped = router.getDroppedPackets();
+	for (int i = 0; i < dropped.size(); i++) {
+	    result.addPacketDroppedMessage(dropped.get(i));
 	}
+    }
 
-	for (Router router : topology) {
-	    router.dropRepeatedPackets();
+    private void routePackets(Router source, List<Transfer> transfers) {
+	for (Packet packet : source.getPackets()) {
+	    route(source, packet, transfers);
 	}
     }
 
+    /**
+     * Decide what happens to a packet this step. This may be called from any
+     * thread, so it must not modify anything; it only stages Transfers. The
+     * packet must be sent on or dropped, since the router lets go of every
+     * packet it holds at the end of the step.
+     * 
+     * @param source
+     *            The router holding the packet.
+     * @param packet
+     *            The packet to route.
+     * @param transfers
+     *            The list to add the staged Transfers to.
+     */
+    protected abstract void route(Router source, Packet packet,
+	    List<Transfer> transfers);
+
     @Override
     public abstract String toString();
 }
@@ -1,21 +1,19 @@
 package algorithm;
 
 import java.util.List;
-import java.util.Map;
 
 import network.Packet;
 import network.Router;
 import network.RoutingTable;
 import network.Topology;
-import simulation.Simulation;
-import simulation.StepResult;
 
 
 public class ShortestPathAlgorithm extends RoutingAlgorithm {
 
     @Override
     public void buildRoutingTables(Topology topology) {
-	// Building routing tables using Dijkstra's shortest path algorithm
+	// Every edge has the same cost, so a breadth-first search from each
+	// router finds its shortest paths
 	for (Router router : topology) {
 	    RoutingTable routingTable = new RoutingTable(topology, router);
 	    router.setRoutingTable(routingTable);
@@ -23,32 +21,10 @@ public class ShortestPathAlgorithm extends RoutingAlgorithm {
     }
 
     @Override
-    public StepResult step(Topology topology) {
-	StepResult result = new StepResult(Simulation.getInstance()
-		.getStepNumber());
-
-	// Refresh packets
-	for (Router router : topology) {
-	    Map<String, List<Packet>> packetsReceived = router.refreshPackets();
-	    for (Packet packet : packetsReceived.get("removed")) {
-		result.addPacketReceivedMessage(packet);
-	    }
-	    for (Packet packet : packetsReceived.get("dropped")) {
-		result.addPacketDroppedMessage(packet);
-	    }
-	}
-
-	// Send packets
-	for (Router source : topology) {
-	    for (Packet packet : source.getNonStalePackets()) {
-		Router next = source.getNextHop(packet.getDestination());
-		source.sendPacket(packet, next);
-
-		result.addPacketSentMessage(packet, source);
-	    }
-	}
-
-	return result;
+    protected void route(Router source, Packet packet,
+	    List<Transfer> transfers) {
+	Router next = source.getNextHop(packet.getDestination());
+	transfers.add(Transfer.send(source, packet, next));
     }
 
     @Override
@@ -0,0 +1,65 @@
+package algorithm;
+
+import network.Packet;
+import network.Router;
+import simulation.StepResult;
+
+/**
+ * A routing decision made for a packet during a step, staged so that it can
+ * be decided on any thread and then applied later in router order.
+ */
+public class Transfer {
+
+    private final Router source;
+    private final Packet packet;
+    private final Router next;
+    private final boolean isCopy;
+
+    private Transfer(Router source, Packet packet, Router next, boolean isCopy) {
+	this.source = source;
+	this.packet = packet;
+	this.next = next;
+	this.isCopy = isCopy;
+    }
+
+    /**
+     * @return A Transfer that sends the packet from source to next.
+     */
+    public static Transfer send(Router source, Packet packet, Router next) {
+	return new Transfer(source, packet, next, false);
+    }
+
+    /**
+     * @return A Transfer that sends a new copy of the packet from source to
+     *         next, leaving the original packet where it is.
+     */
+    public static Transfer sendCopy(Router source, Packet packet, Router next) {
+	return new Transfer(source, packet, next, true);
+    }
+
+    /**
+     * @return A Transfer that drops the packet at source.
+     */
+    public static Transfer drop(Router source, Packet packet) {
+	return new Transfer(source, packet, null, false);
+    }
+
+    /**
+     * Carries out the transfer, recording what happened in the result. The
+     * source lets go of all of its packets at the end of the step, so a packet
+     * is sent without taking it out of the source, and a packet that is
+     * dropped is only recorded.
+     */
+    protected void apply(StepResult result) {
+	if (next == null) {
+	    result.addPacketDroppedMessage(packet);
+	} else if (isCopy) {
+	    Packet copy = new Packet(packet);
+	    copy.sendTo(next);
+	    result.addPacketSentMessage(copy, source);
+	} else {
+	    packet.sendTo(next);
+	    result.addPacketSentMessage(packet, source);
+	}
+    }
+}
@@ -3,10 +3,11 @@ package common;
 public class Action {
 
     public static enum MainMenu {
-	CONFIGURATION_UPDATE, RESET_SIMULATION, SAVE_TOPOLOGY, LOAD_TOPOLOGY, RESET_TOPOLOGY
+	CONFIGURATION_UPDATE, RESET_SIMULATION, OPEN_TRACE, RECORD_TRACE,
+	STOP_RECORDING, SAVE_TOPOLOGY, LOAD_TOPOLOGY, RESET_TOPOLOGY
     }
 
     public static enum Step {
-	STEP_ONCE, STEP_N_TIMES, UNDO_STEP
+	STEP_ONCE, STEP_N_TIMES, UNDO_STEP, GO_TO_STEP, RUN_PAUSE
     }
 }
@@ -0,0 +1,97 @@
+package common;
+
+import java.util.SplittableRandom;
+
+/**
+ * Samples indices in proportion to a fixed set of weights in constant time,
+ * using Vose's alias method. Building the table takes time in proportion to
+ * the number of weights; every sample after that takes one random int and one
+ * random double, however many weights there are.
+ */
+public class AliasTable {
+
+    private final double[] probabilities;
+    private final int[] aliases;
+    private final double total;
+
+    /**
+     * @param weights
+     *            The weight of each index, none of which may be negative.
+     * @throws IllegalArgumentException
+     *             If there are no weights, a weight is negative or not a
+     *             number, or every weight is 0.
+     */
+    public AliasTable(double[] weights) throws IllegalArgumentException {
+	int size = weights.length;
+	double sum = 0;
+	for (double weight : weights) {
+	    if (!(weight >= 0) || Double.isInfinite(weight)) {
+		throw new IllegalArgumentException("Invalid weight " + weight);
+	    }
+	    sum += weight;
+	}
+	if (!(sum > 0)) {
+	    throw new IllegalArgumentException("No weight to sample from");
+	}
+	total = sum;
+	probabilities = new double[size];
+	aliases = new int[size];
+
+	// Indices with less than the average weight, then the rest, as stacks
+	// that grow towards each other
+	int[] work = new int[size];
+	int small = 0;
+	int large = size;
+	double[] scaled = new double[size];
+	for (int i = 0; i < size; i++) {
+	    scaled[i] = weights[i] * size / sum;
+	    if (scaled[i] < 1) {
+		work[small++] = i;
+	    } else {
+		work[--large] = i;
+	    }
+	}
+
+	while (small > 0 && large < size) {
+	    int less = work[--small];
+	    int more = work[large++];
+	    probabilities[less] = scaled[less];
+	    aliases[less] = more;
+	    scaled[more] = (scaled[more] + scaled[less]) - 1;
+	    if (scaled[more] < 1) {
+		work[small++] = more;
+	    } else {
+		work[--large] = more;
+	    }
+	}
+	// Whatever is left is only off 1 by rounding
+	while (large < size) {
+	    probabilities[work[large++]] = 1;
+	}
+	while (small > 0) {
+	    probabilities[work[--small]] = 1;
+	}
+    }
+
+    /**
+     * @return The number of weights.
+     */
+    public int size() {
+	return probabilities.length;
+    }
+
+    /**
+     * @return The sum of the weights.
+     */
+    public double getTotal() {
+	return total;
+    }
+
+    /**
+     * @return An index, drawn with probability in proportion to its weight.
+     */
+    public int sample(SplittableRandom random) {
+	int i = random.nextInt(probabilities.length);
+	return (random.nextDouble() < probabilities[i]) ? i : aliases[i];
+    }
+}
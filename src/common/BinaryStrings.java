@@ -0,0 +1,42 @@
+package common;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes strings to binary files as a length followed by UTF-8 bytes, and
+ * reads them back from a ByteBuffer, which is how snapshots are loaded.
+ */
+public class BinaryStrings {
+
+    private BinaryStrings() {
+    }
+
+    public static void write(DataOutput out, String string)
+	    throws IOException {
+	byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+	out.writeInt(bytes.length);
+	out.write(bytes);
+    }
+
+    /**
+     * @throws IOException
+     *             If the buffer doesn't hold a whole string.
+     */
+    public static String read(ByteBuffer in) throws IOException {
+	try {
+	    int length = in.getInt();
+	    if (length < 0 || length > in.remaining()) {
+		throw new IOException("Corrupt string of length " + length);
+	    }
+	    byte[] bytes = new byte[length];
+	    in.get(bytes);
+	    return new String(bytes, StandardCharsets.UTF_8);
+	} catch (BufferUnderflowException ex) {
+	    throw new IOException("Unexpected end of file", ex);
+	}
+    }
+}
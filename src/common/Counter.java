@@ -0,0 +1,142 @@
+package common;
+
+import java.math.BigInteger;
+
+/**
+ * A mutable integer counter that works on a primitive long for as long as the
+ * value fits in one, and only switches to a BigInteger once it would overflow.
+ * Incrementing a counter therefore allocates nothing during any realistic run.
+ */
+public class Counter implements Comparable<Counter> {
+
+    private long value;
+    private BigInteger largeValue; // Only set once value no longer fits
+
+    public Counter() {
+	this(0);
+    }
+
+    public Counter(long value) {
+	this.value = value;
+	largeValue = null;
+    }
+
+    public Counter(Counter counter) {
+	value = counter.value;
+	largeValue = counter.largeValue;
+    }
+
+    public void increment() {
+	add(1);
+    }
+
+    public void decrement() {
+	add(-1);
+    }
+
+    public void add(long amount) {
+	if (largeValue == null) {
+	    long sum = value + amount;
+
+	    // Overflow iff both operands have the opposite sign to the result
+	    if (((value ^ sum) & (amount ^ sum)) >= 0) {
+		value = sum;
+		return;
+	    }
+	    largeValue = BigInteger.valueOf(value);
+	}
+
+	largeValue = largeValue.add(BigInteger.valueOf(amount));
+	if (largeValue.bitLength() < Long.SIZE) {
+	    value = largeValue.longValue();
+	    largeValue = null;
+	}
+    }
+
+    public void reset() {
+	value = 0;
+	largeValue = null;
+    }
+
+    public boolean isZero() {
+	return largeValue == null && value == 0;
+    }
+
+    /**
+     * @return Whether the value can be read with longValue().
+     */
+    public boolean fitsInLong() {
+	return largeValue == null;
+    }
+
+    /**
+     * @return The value of this counter.
+     * @throws ArithmeticException
+     *             If the value doesn't fit in a long.
+     */
+    public long longValue() throws ArithmeticException {
+	if (largeValue != null) {
+	    throw new ArithmeticException("Counter is out of long range");
+	}
+	return value;
+    }
+
+    public double doubleValue() {
+	return (largeValue == null) ? value : largeValue.doubleValue();
+    }
+
+    public BigInteger toBigInteger() {
+	return (largeValue == null) ? BigInteger.valueOf(value) : largeValue;
+    }
+
+    /**
+     * @param divisor
+     *            A positive divisor.
+     * @return The value of this counter modulo the divisor, which is never
+     *         negative.
+     */
+    public long mod(long divisor) {
+	if (largeValue == null) {
+	    return Math.floorMod(value, divisor);
+	}
+	return largeValue.mod(BigInteger.valueOf(divisor)).longValue();
+    }
+
+    public int compareTo(long other) {
+	if (largeValue == null) {
+	    return Long.compare(value, other);
+	}
+	return largeValue.signum();
+    }
+
+    @Override
+    public int compareTo(Counter counter) {
+	if (largeValue == null && counter.largeValue == null) {
+	    return Long.compare(value, counter.value);
+	}
+	return toBigInteger().compareTo(counter.toBigInteger());
+    }
+
+    @Override
+    public int hashCode() {
+	return (largeValue == null) ? Long.hashCode(value) : largeValue
+		.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+	if (this == obj)
+	    return true;
+	if (obj == null)
+	    return false;
+	if (getClass() != obj.getClass())
+	    return false;
+	return compareTo((Counter) obj) == 0;
+    }
+
+    @Override
+    public String toString() {
+	return (largeValue == null) ? Long.toString(value) : largeValue
+		.toString();
+    }
+}
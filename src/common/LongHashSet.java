@@ -0,0 +1,125 @@
+package common;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs kept in a single open-addressing array, without boxing them
+ * or allocating anything per element. It only grows, and stays at most half
+ * full so that probes are short.
+ */
+public class LongHashSet {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long EMPTY = 0; // Whether 0 is held is kept apart
+
+    private long[] table;
+    private boolean hasEmpty;
+    private int size;
+
+    public LongHashSet() {
+	table = new long[INITIAL_CAPACITY];
+	hasEmpty = false;
+	size = 0;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    public boolean contains(long value) {
+	if (value == EMPTY) {
+	    return hasEmpty;
+	}
+
+	int mask = table.length - 1;
+	for (int slot = hash(value) & mask;; slot = (slot + 1) & mask) {
+	    if (table[slot] == value) {
+		return true;
+	    } else if (table[slot] == EMPTY) {
+		return false;
+	    }
+	}
+    }
+
+    /**
+     * @return True if the value wasn't already in the set.
+     */
+    public boolean add(long value) {
+	if (value == EMPTY) {
+	    if (hasEmpty) {
+		return false;
+	    }
+	    hasEmpty = true;
+	    size++;
+	    return true;
+	}
+
+	int mask = table.length - 1;
+	int slot = hash(value) & mask;
+	while (table[slot] != EMPTY) {
+	    if (table[slot] == value) {
+		return false;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+	table[slot] = value;
+	size++;
+
+	if (size * 2 > table.length) {
+	    grow();
+	}
+	return true;
+    }
+
+    private void grow() {
+	long[] old = table;
+	table = new long[old.length * 2];
+	int mask = table.length - 1;
+	for (long value : old) {
+	    if (value != EMPTY) {
+		int slot = hash(value) & mask;
+		while (table[slot] != EMPTY) {
+		    slot = (slot + 1) & mask;
+		}
+		table[slot] = value;
+	    }
+	}
+    }
+
+    private static int hash(long value) {
+	long hash = value * 0x9e3779b97f4a7c15L;
+	return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Empties the set, keeping the room it has grown to.
+     */
+    public void clear() {
+	if (size > 0) {
+	    Arrays.fill(table, EMPTY);
+	    hasEmpty = false;
+	    size = 0;
+	}
+    }
+
+    /**
+     * @return The values in the set, in no particular order.
+     */
+    public long[] toArray() {
+	long[] values = new long[size];
+	int i = 0;
+	if (hasEmpty) {
+	    values[i++] = EMPTY;
+	}
+	for (long value : table) {
+	    if (value != EMPTY) {
+		values[i++] = value;
+	    }
+	}
+	return values;
+    }
+}
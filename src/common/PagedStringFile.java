@@ -0,0 +1,188 @@
+package common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A list of strings kept on disk rather than in memory. The strings are
+ * appended to a data file, and the offset of the end of each one is written to
+ * an index file at a fixed size, so any string can be read back by its number
+ * with two positional reads. Nothing is kept in memory per string, however many
+ * there are. Records of raw bytes can be kept the same way.
+ */
+public class PagedStringFile implements Closeable {
+
+    private static final int OFFSET_SIZE = 8;
+
+    private final FileChannel data;
+    private final FileChannel index;
+    private final ByteBuffer offset;
+    private long size;
+    private long dataEnd;
+
+    /**
+     * Creates the files, replacing them if they exist.
+     *
+     * @param dataFile
+     *            The file to write the strings to.
+     * @param indexFile
+     *            The file to write where each string ends to.
+     * @throws IOException
+     *             If a file can't be created.
+     */
+    public PagedStringFile(File dataFile, File indexFile) throws IOException {
+	data = open(dataFile);
+	try {
+	    index = open(indexFile);
+	} catch (IOException ex) {
+	    data.close();
+	    throw ex;
+	}
+	offset = ByteBuffer.allocate(OFFSET_SIZE);
+	size = 0;
+	dataEnd = 0;
+    }
+
+    private static FileChannel open(File file) throws IOException {
+	return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+		StandardOpenOption.READ, StandardOpenOption.WRITE,
+		StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * @return The number of strings in the list.
+     */
+    public long size() {
+	return size;
+    }
+
+    /**
+     * Adds a string to the end of the list.
+     *
+     * @throws IOException
+     *             If it can't be written.
+     */
+    public void add(String string) throws IOException {
+	add(ByteBuffer.wrap(string.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Adds the bytes remaining in a buffer to the end of the list, as one
+     * record.
+     *
+     * @throws IOException
+     *             If they can't be written.
+     */
+    public void add(ByteBuffer bytes) throws IOException {
+	int length = bytes.remaining();
+	write(data, bytes, dataEnd);
+
+	offset.clear();
+	offset.putLong(dataEnd + length);
+	offset.flip();
+	write(index, offset, size * OFFSET_SIZE);
+
+	dataEnd += length;
+	size++;
+    }
+
+    /**
+     * @param i
+     *            The number of the string, where 0 is the first one added.
+     * @return The string.
+     * @throws IOException
+     *             If it can't be read.
+     */
+    public String get(long i) throws IOException {
+	return new String(getBytes(i).array(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param i
+     *            The number of the record, where 0 is the first one added.
+     * @return The bytes of the record.
+     * @throws IOException
+     *             If it can't be read.
+     */
+    public ByteBuffer getBytes(long i) throws IOException {
+	if (i < 0 || i >= size) {
+	    throw new IndexOutOfBoundsException("String " + i + " of " + size);
+	}
+	long start = (i == 0) ? 0 : readOffset(i - 1);
+	long end = readOffset(i);
+	if (end < start || end - start > Integer.MAX_VALUE) {
+	    throw new IOException("Corrupt index for string " + i);
+	}
+
+	ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+	read(data, bytes, start);
+	bytes.flip();
+	return bytes;
+    }
+
+    private long readOffset(long i) throws IOException {
+	offset.clear();
+	read(index, offset, i * OFFSET_SIZE);
+	return offset.getLong(0);
+    }
+
+    /**
+     * Removes the string added last, if there is one. Its space is reused by
+     * the next string added.
+     *
+     * @throws IOException
+     *             If the index can't be read, in which case the string is
+     *             left in the list.
+     */
+    public void removeLast() throws IOException {
+	if (size > 0) {
+	    dataEnd = (size == 1) ? 0 : readOffset(size - 2);
+	    size--;
+	}
+    }
+
+    /**
+     * Removes every string and gives back the space they took on disk.
+     *
+     * @throws IOException
+     *             If the files can't be truncated.
+     */
+    public void clear() throws IOException {
+	size = 0;
+	dataEnd = 0;
+	data.truncate(0);
+	index.truncate(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+	try {
+	    data.close();
+	} finally {
+	    index.close();
+	}
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer,
+	    long position) throws IOException {
+	while (buffer.hasRemaining()) {
+	    position += channel.write(buffer, position);
+	}
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer,
+	    long position) throws IOException {
+	while (buffer.hasRemaining()) {
+	    int read = channel.read(buffer, position);
+	    if (read < 0) {
+		throw new IOException("Unexpected end of file");
+	    }
+	    position += read;
+	}
+    }
+}
@@ -0,0 +1,93 @@
+package common;
+
+import java.util.SplittableRandom;
+
+/**
+ * Derives SplittableRandom streams from a single simulation seed. Every stream
+ * is identified by the step it is used in and a key, and is built from
+ * scratch from those values whenever it is asked for. The draws made during
+ * a step therefore don't depend on which thread makes them or on the order
+ * things are processed in, and there is no shared generator for threads to
+ * contend on. The seed alone is enough to reproduce a run.
+ */
+public class RandomStreams {
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final long INJECTION_KEY = 0;
+    private static final long BURST_KEY = 1;
+
+    private final long seed;
+
+    public RandomStreams(long seed) {
+	this.seed = seed;
+    }
+
+    /**
+     * @return A new seed, different on every call.
+     */
+    public static long randomSeed() {
+	return mix(System.nanoTime() ^ Thread.currentThread().getId());
+    }
+
+    public long getSeed() {
+	return seed;
+    }
+
+    /**
+     * @param index
+     *            The index of a replication.
+     * @return The streams for one of several independent replications run
+     *         from the same seed.
+     */
+    public RandomStreams forReplication(int index) {
+	return new RandomStreams(mix(seed + (index + 1) * GOLDEN_GAMMA));
+    }
+
+    /**
+     * @return The stream used to inject packets during a step.
+     */
+    public SplittableRandom forInjection(Counter step) {
+	return forStep(step, INJECTION_KEY);
+    }
+
+    /**
+     * @param burst
+     *            The number of a burst of steps, counted from 0.
+     * @return The stream used to decide which sources of traffic are on
+     *         during a burst.
+     */
+    public SplittableRandom forBurst(long burst) {
+	return forStep(new Counter(burst), BURST_KEY);
+    }
+
+    /**
+     * @return The stream used to route a packet during a step.
+     */
+    public SplittableRandom forPacket(Counter step, long packetID) {
+	return forStep(step, key(packetID));
+    }
+
+    private SplittableRandom forStep(Counter step, long key) {
+	long stepBits = step.fitsInLong() ? step.longValue() : step
+		.toBigInteger().longValue();
+	return new SplittableRandom(mix(seed ^ mix(stepBits + GOLDEN_GAMMA)
+		^ mix(key * GOLDEN_GAMMA)));
+    }
+
+    /**
+     * @return The stream key for a packet ID. The ID is offset before it is
+     *         mixed, so that no packet shares a key with injections or bursts.
+     */
+    private static long key(long packetID) {
+	return mix(packetID + GOLDEN_GAMMA);
+    }
+
+    /**
+     * The finalizer that SplittableRandom itself uses to mix its seeds.
+     */
+    private static long mix(long z) {
+	z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+	z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+	return z ^ (z >>> 31);
+    }
+}
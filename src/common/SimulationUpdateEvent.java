@@ -5,7 +5,7 @@ import simulation.StepResult;
 public class SimulationUpdateEvent {
 
     public static enum SimulationUpdate {
-	RATE_CHANGED, ALGORITHM_CHANGED, READY_STATE_CHANGED, FIRST_STEP_TAKEN, STEP_TAKEN, METRICS_RESET, TOPOLOGY_RESET, UNDO_STEP
+	RATE_CHANGED, ALGORITHM_CHANGED, READY_STATE_CHANGED, RUNNING_STATE_CHANGED, FIRST_STEP_TAKEN, STEP_TAKEN, STEPS_TAKEN, METRICS_RESET, TOPOLOGY_RESET, UNDO_STEP, SEEK
     }
 
     private final SimulationUpdate action;
@@ -28,6 +28,10 @@ public class SimulationUpdateEvent {
 	return (boolean) update;
     }
 
+    public boolean getNewRunningState() {
+	return (boolean) update;
+    }
+
     public StepResult getStepResult() {
 	return (StepResult) update;
     }
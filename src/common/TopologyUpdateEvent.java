@@ -1,12 +1,11 @@
 package common;
 
-import network.Packet;
 import network.Router;
 
 public class TopologyUpdateEvent {
 
     public static enum TopologyUpdate {
-	ROUTER_ADDED, ROUTER_REMOVED, EDGE_ADDED, EDGE_REMOVED, PACKET_INJECTED, PACKET_RECEIVED
+	ROUTER_ADDED, ROUTER_REMOVED, EDGE_ADDED, EDGE_REMOVED
     }
 
     private final TopologyUpdate action;
@@ -46,8 +45,4 @@ public class TopologyUpdateEvent {
 	return updateCount;
     }
 
-    public Packet getPacket() {
-	return (Packet) update;
-    }
-
 }
@@ -2,7 +2,6 @@ package gui;
 
 import gui.controller.MainMenuListener;
 
-import java.awt.event.ActionListener;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -21,9 +20,13 @@ public class MainMenuBar extends JMenuBar implements Observer {
 
     private final JMenuItem configureSimulation;
     private final JMenuItem resetSimulator;
+    private final JMenuItem openTrace;
+    private final JMenuItem recordTrace;
+    private final JMenuItem stopRecording;
     private final JMenuItem newTopology;
     private final JMenuItem loadTopology;
     private final JMenuItem saveTopology;
+    private final MainMenuListener listener;
 
     /**
      * Creates a new MainMenuBar
@@ -33,7 +36,8 @@ public class MainMenuBar extends JMenuBar implements Observer {
 	add(simulatorMenu);
 	JMenu topologyMenu = new JMenu("Topology");
 	add(topologyMenu);
-	ActionListener listener = new MainMenuListener();
+	stopRecording = new JMenuItem("Stop Recording");
+	listener = new MainMenuListener(stopRecording);
 
 	configureSimulation = new JMenuItem("Configure");
 	configureSimulation
@@ -48,6 +52,21 @@ public class MainMenuBar extends JMenuBar implements Observer {
 	simulatorMenu.add(resetSimulator);
 	resetSimulator.addActionListener(listener);
 
+	openTrace = new JMenuItem("Open Trace...");
+	openTrace.setActionCommand(Action.MainMenu.OPEN_TRACE.name());
+	simulatorMenu.add(openTrace);
+	openTrace.addActionListener(listener);
+
+	recordTrace = new JMenuItem("Record Trace...");
+	recordTrace.setActionCommand(Action.MainMenu.RECORD_TRACE.name());
+	simulatorMenu.add(recordTrace);
+	recordTrace.addActionListener(listener);
+
+	stopRecording.setActionCommand(Action.MainMenu.STOP_RECORDING.name());
+	stopRecording.setEnabled(false);
+	simulatorMenu.add(stopRecording);
+	stopRecording.addActionListener(listener);
+
 	newTopology = new JMenuItem("New");
 	newTopology.setActionCommand(Action.MainMenu.RESET_TOPOLOGY.name());
 	topologyMenu.add(newTopology);
@@ -68,17 +87,34 @@ public class MainMenuBar extends JMenuBar implements Observer {
 	Simulation.getInstance().addObserver(this);
     }
 
+    /**
+     * Closes the trace being recorded, if there is one, so that it is
+     * complete before the program exits.
+     */
+    public void stopRecording() {
+	listener.stopRecording();
+    }
+
     @Override
     public void update(Observable observable, Object update) {
 	// Simulation status update causes re-evaluation of elements enabled
 	if (observable instanceof Simulation) {
 	    SimulationUpdateEvent event = (SimulationUpdateEvent) update;
+	    Simulation simulation = (Simulation) observable;
 	    if (event.getAction() == SimulationUpdate.FIRST_STEP_TAKEN) {
-		resetSimulator.setEnabled(true);
+		resetSimulator.setEnabled(!simulation.isRunning());
 	    } else if (event.getAction() == SimulationUpdate.READY_STATE_CHANGED) {
 		boolean newState = event.getNewReadyState();
-		loadTopology.setEnabled(newState);
+		loadTopology.setEnabled(newState && !simulation.isRunning());
 		saveTopology.setEnabled(newState);
+	    } else if (event.getAction() == SimulationUpdate.RUNNING_STATE_CHANGED) {
+		// Nothing may change the simulation under a run
+		boolean isRunning = event.getNewRunningState();
+		configureSimulation.setEnabled(!isRunning);
+		resetSimulator.setEnabled(!isRunning && simulation.hasStarted());
+		openTrace.setEnabled(!isRunning);
+		newTopology.setEnabled(!isRunning);
+		loadTopology.setEnabled(!isRunning && simulation.isReady());
 	    }
 	}
     }
@@ -2,6 +2,8 @@ package gui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.JFrame;
 import javax.swing.JTabbedPane;
@@ -11,19 +13,29 @@ public class MainWindow extends JFrame {
 
     public MainWindow() {
 	super("Network Simulator");
-	setJMenuBar(new MainMenuBar());
+	MainMenuBar menuBar = new MainMenuBar();
+	setJMenuBar(menuBar);
 	setMinimumSize(new Dimension(800, 500));
 	setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+	addWindowListener(new WindowAdapter() {
+	    @Override
+	    public void windowClosing(WindowEvent e) {
+		menuBar.stopRecording();
+	    }
+	});
 
 	setLayout(new BorderLayout());
 
 	add(new StepsPanel(), BorderLayout.WEST);
 
+	TopologyPanel topologyPanel = new TopologyPanel();
 	JTabbedPane tabbedPane = new JTabbedPane();
-	tabbedPane.addTab("Topology", new TopologyPanel());
+	tabbedPane.addTab("Topology", topologyPanel);
 	tabbedPane.addTab("Metrics", new MetricsPanel());
 	add(tabbedPane, BorderLayout.CENTER);
 
+	add(new StatusBar(topologyPanel.getCanvas()), BorderLayout.SOUTH);
+
 	pack();
 	setVisible(true);
     }
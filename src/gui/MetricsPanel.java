@@ -5,7 +5,6 @@ import gui.models.AverageHopsTableModel;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
-import java.math.BigInteger;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -18,7 +17,6 @@ import javax.swing.SwingConstants;
 import javax.swing.table.DefaultTableCellRenderer;
 
 import simulation.Simulation;
-import simulation.StepResult;
 
 import common.SimulationUpdateEvent;
 import common.SimulationUpdateEvent.SimulationUpdate;
@@ -26,16 +24,12 @@ import common.SimulationUpdateEvent.SimulationUpdate;
 @SuppressWarnings("serial")
 public class MetricsPanel extends JPanel implements Observer {
 
-    private BigInteger packetCount;
-
     private final JTextField stepCount;
     private final JTextField totalPackets;
 
     public MetricsPanel() {
 	super(new GridBagLayout());
 
-	packetCount = BigInteger.ZERO;
-
 	stepCount = new JTextField();
 	stepCount.setEditable(false);
 	totalPackets = new JTextField();
@@ -92,16 +86,17 @@ public class MetricsPanel extends JPanel implements Observer {
 	if (observable instanceof Simulation) {
 	    SimulationUpdateEvent event = (SimulationUpdateEvent) update;
 
-	    if (event.getAction() == SimulationUpdate.STEP_TAKEN) {
-		StepResult result = event.getStepResult();
-		stepCount.setText(result.getStepNumber().toString());
-
-		packetCount = packetCount.add(result.getPacketsTransmitted());
-		totalPackets.setText(packetCount.toString());
+	    if (event.getAction() == SimulationUpdate.STEP_TAKEN
+		    || event.getAction() == SimulationUpdate.STEPS_TAKEN
+		    || event.getAction() == SimulationUpdate.UNDO_STEP
+		    || event.getAction() == SimulationUpdate.SEEK) {
+		Simulation simulation = (Simulation) observable;
+		stepCount.setText(simulation.getStepNumber().toString());
+		totalPackets.setText(Long.toString(simulation.getMetrics()
+			.getPacketsTransmitted()));
 	    } else if (event.getAction() == SimulationUpdate.METRICS_RESET) {
 		stepCount.setText("");
 		totalPackets.setText("");
-		packetCount = BigInteger.ZERO;
 	    }
 	}
     }
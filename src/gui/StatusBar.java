@@ -0,0 +1,67 @@
+package gui;
+
+import gui.graphics.TopologyCanvas;
+
+import java.awt.FlowLayout;
+import java.math.BigInteger;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import simulation.Simulation;
+
+/**
+ * Shows how many steps the simulation is actually taking each second and how
+ * many frames the topology canvas is painting each second. Since steps and
+ * painting are decoupled, the two can differ widely.
+ */
+@SuppressWarnings("serial")
+public class StatusBar extends JPanel {
+
+    private final int updateMillis = 1000;
+
+    private final TopologyCanvas canvas;
+    private final JLabel label;
+    private BigInteger lastStep;
+    private long lastFrames;
+    private long lastTime;
+
+    public StatusBar(TopologyCanvas canvas) {
+	super(new FlowLayout(FlowLayout.LEFT));
+	this.canvas = canvas;
+	setBorder(BorderFactory.createEtchedBorder());
+
+	label = new JLabel(" ");
+	add(label);
+
+	lastStep = getStepNumber();
+	lastFrames = canvas.getFramesPainted();
+	lastTime = System.nanoTime();
+	new Timer(updateMillis, event -> update()).start();
+    }
+
+    private static BigInteger getStepNumber() {
+	Simulation simulation = Simulation.getInstance();
+	synchronized (simulation) {
+	    return simulation.getStepNumber().toBigInteger();
+	}
+    }
+
+    private void update() {
+	BigInteger step = getStepNumber();
+	long frames = canvas.getFramesPainted();
+	long time = System.nanoTime();
+	double seconds = (time - lastTime) / 1e9;
+
+	// Undoing, seeking and resetting can move the step number backwards
+	double steps = Math.max(0, step.subtract(lastStep).doubleValue());
+	label.setText(String.format("Step %s    %.0f steps/sec    %.0f fps",
+		step, steps / seconds, (frames - lastFrames) / seconds));
+
+	lastStep = step;
+	lastFrames = frames;
+	lastTime = time;
+    }
+}
@@ -8,6 +8,7 @@ import java.awt.Component;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
+import java.awt.Point;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.util.Observable;
@@ -17,14 +18,18 @@ import javax.swing.BorderFactory;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.DefaultListSelectionModel;
 import javax.swing.JButton;
+import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JViewport;
+import javax.swing.SpinnerNumberModel;
 import javax.swing.border.TitledBorder;
 
 import simulation.Simulation;
-import simulation.StepResult;
 
 import common.Action;
 import common.SimulationUpdateEvent;
@@ -36,16 +41,26 @@ public class StepsPanel extends JPanel implements Observer {
     private final JButton stepOnce;
     private final JButton stepNTimes;
     private final JButton undoStep;
-    private final JList<StepResult> stepLog;
+    private final JButton goToStep;
+    private final JButton runPause;
+    private final JList<Object> stepLog;
+    private final JScrollPane logScrollPane;
+    private int logScrollValue;
+    private boolean isPagingLog;
 
     // Magic constants
     private final int width = 200;
     private final int maximumElements = 50;
     private final int buttonHeight = 25;
+    private final int defaultStepsPerSecond = 10;
+    private final int maximumStepsPerSecond = 100000;
 
     public StepsPanel() {
 	super(new GridBagLayout());
-	ActionListener listener = new StepButtonListener();
+	// 0 steps per second runs as fast as possible
+	SpinnerNumberModel speed = new SpinnerNumberModel(
+		defaultStepsPerSecond, 0, maximumStepsPerSecond, 1);
+	ActionListener listener = new StepButtonListener(speed);
 
 	stepOnce = new JButton("Step Once");
 	stepOnce.setEnabled(false);
@@ -59,15 +74,30 @@ public class StepsPanel extends JPanel implements Observer {
 	undoStep.setEnabled(false);
 	undoStep.setActionCommand(Action.Step.UNDO_STEP.name());
 	undoStep.addActionListener(listener);
+	goToStep = new JButton("Go To Step");
+	goToStep.setEnabled(false);
+	goToStep.setActionCommand(Action.Step.GO_TO_STEP.name());
+	goToStep.addActionListener(listener);
+	runPause = new JButton("Run");
+	runPause.setEnabled(false);
+	runPause.setActionCommand(Action.Step.RUN_PAUSE.name());
+	runPause.addActionListener(listener);
+
+	JPanel speedContainer = new JPanel(new BorderLayout(5, 0));
+	speedContainer.add(new JLabel("Steps/sec (0 = max):"),
+		BorderLayout.WEST);
+	speedContainer.add(new JSpinner(speed), BorderLayout.CENTER);
 
 	stepLog = new JList<>();
+	LogListModel logModel = null;
 	try {
-	    stepLog.setModel(new LogListModel<StepResult>(maximumElements));
+	    logModel = new LogListModel(maximumElements);
+	    stepLog.setModel(logModel);
 	} catch (IOException ex) {
 	    JOptionPane
 		    .showMessageDialog(
 			    null,
-			    "There was an error creating a temporary file for saving log elements.\nUndoing steps will not update the step log properly.",
+			    "There was an error creating a temporary file for saving log elements.\nThe step log will not be shown.",
 			    "Error", JOptionPane.ERROR_MESSAGE);
 	}
 	stepLog.setAutoscrolls(true);
@@ -84,9 +114,15 @@ public class StepsPanel extends JPanel implements Observer {
 	logContainer.setBorder(BorderFactory.createTitledBorder(
 		BorderFactory.createEtchedBorder(), "Step Log",
 		TitledBorder.CENTER, TitledBorder.TOP));
-	logContainer.add(new JScrollPane(stepLog,
+	logScrollPane = new JScrollPane(stepLog,
 		JScrollPane.VERTICAL_SCROLLBAR_ALWAYS,
-		JScrollPane.HORIZONTAL_SCROLLBAR_NEVER));
+		JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+	logContainer.add(logScrollPane);
+	if (logModel != null) {
+	    LogListModel model = logModel;
+	    logScrollPane.getVerticalScrollBar().addAdjustmentListener(
+		    event -> logScrolled(model));
+	}
 
 	GridBagConstraints c = new GridBagConstraints();
 
@@ -104,8 +140,20 @@ public class StepsPanel extends JPanel implements Observer {
 	c.gridy = 2;
 	add(undoStep, c);
 
-	c.fill = GridBagConstraints.BOTH;
 	c.gridy = 3;
+	add(goToStep, c);
+
+	c.gridy = 4;
+	c.insets = new Insets(10, 0, 0, 0);
+	add(runPause, c);
+
+	c.gridy = 5;
+	c.insets = new Insets(5, 0, 0, 0);
+	c.ipady = 0;
+	add(speedContainer, c);
+
+	c.fill = GridBagConstraints.BOTH;
+	c.gridy = 6;
 	c.insets = new Insets(10, 0, 0, 0);
 	c.ipady = 0;
 	c.weighty = 1.0;
@@ -119,20 +167,85 @@ public class StepsPanel extends JPanel implements Observer {
 	if (observable instanceof Simulation) {
 	    SimulationUpdateEvent event = (SimulationUpdateEvent) update;
 
+	    Simulation simulation = (Simulation) observable;
+
 	    if (event.getAction() == SimulationUpdate.READY_STATE_CHANGED) {
-		stepOnce.setEnabled(event.getNewReadyState());
-		stepNTimes.setEnabled(event.getNewReadyState());
+		stepOnce.setEnabled(event.getNewReadyState()
+			&& !simulation.isRunning());
+		stepNTimes.setEnabled(event.getNewReadyState()
+			&& !simulation.isRunning());
+		goToStep.setEnabled(event.getNewReadyState()
+			&& !simulation.isRunning());
+		runPause.setEnabled(event.getNewReadyState()
+			|| simulation.isRunning());
 	    } else if (event.getAction() == SimulationUpdate.FIRST_STEP_TAKEN) {
-		undoStep.setEnabled(true);
+		undoStep.setEnabled(!simulation.isRunning());
 	    } else if (event.getAction() == SimulationUpdate.METRICS_RESET
 		    || event.getAction() == SimulationUpdate.TOPOLOGY_RESET) {
-		stepOnce.setEnabled(true);
-		stepNTimes.setEnabled(true);
+		stepOnce.setEnabled(!simulation.isRunning());
+		stepNTimes.setEnabled(!simulation.isRunning());
+		goToStep.setEnabled(!simulation.isRunning());
+		runPause.setEnabled(true);
 		undoStep.setEnabled(false);
+	    } else if (event.getAction() == SimulationUpdate.RUNNING_STATE_CHANGED) {
+		boolean isRunning = event.getNewRunningState();
+		runPause.setText(isRunning ? "Pause" : "Run");
+		stepOnce.setEnabled(!isRunning && simulation.isReady());
+		stepNTimes.setEnabled(!isRunning && simulation.isReady());
+		goToStep.setEnabled(!isRunning && simulation.isReady());
+		undoStep.setEnabled(!isRunning && simulation.hasStarted());
+		runPause.setEnabled(isRunning || simulation.isReady());
 	    }
 	}
     }
 
+    /**
+     * Pages the log when the user scrolls to the bottom or top of the steps
+     * shown and there are more steps past them, keeping the steps that were
+     * in view where they were.
+     */
+    private void logScrolled(LogListModel model) {
+	JScrollBar scrollBar = logScrollPane.getVerticalScrollBar();
+	int value = scrollBar.getValue();
+	int previous = logScrollValue;
+	logScrollValue = value;
+	if (isPagingLog || scrollBar.getValueIsAdjusting()) {
+	    return;
+	}
+
+	boolean atBottom = value + scrollBar.getVisibleAmount() >= scrollBar
+		.getMaximum();
+	if (value > previous && atBottom && model.hasOlder()) {
+	    pageLog(-1, model);
+	} else if (value < previous && value == 0 && model.hasNewer()) {
+	    pageLog(1, model);
+	}
+    }
+
+    /**
+     * @param direction
+     *            -1 to page towards older steps, or 1 towards newer ones.
+     */
+    private void pageLog(int direction, LogListModel model) {
+	JViewport viewport = logScrollPane.getViewport();
+	Point position = viewport.getViewPosition();
+	int top = stepLog.locationToIndex(position);
+	int offset = position.y - stepLog.getCellBounds(top, top).y;
+
+	isPagingLog = true;
+	try {
+	    int moved = (direction < 0) ? -model.showOlder() : model
+		    .showNewer();
+	    logScrollPane.validate();
+	    top = Math.max(0, Math.min(top + moved, model.getSize() - 1));
+	    viewport.setViewPosition(new Point(position.x, stepLog
+		    .getCellBounds(top, top).y + offset));
+	} finally {
+	    isPagingLog = false;
+	    logScrollValue = logScrollPane.getVerticalScrollBar().getValue();
+	}
+    }
+
     private class TextWrappingRenderer extends DefaultListCellRenderer {
 	private static final String HTML_1 = "<html><body style='font-weight: normal; width: ";
 	private static final String HTML_2 = "px'>";
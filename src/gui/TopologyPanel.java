@@ -83,6 +83,10 @@ public class TopologyPanel extends JPanel implements Observer {
 	Simulation.getInstance().getTopology().addObserver(canvas);
     }
 
+    public TopologyCanvas getCanvas() {
+	return canvas;
+    }
+
     @Override
     public void update(Observable observable, Object update) {
 	if (observable instanceof Topology) {
@@ -118,8 +122,18 @@ public class TopologyPanel extends JPanel implements Observer {
 		removeRouter.setEnabled(false);
 		addEdge.setEnabled(false);
 		removeEdge.setEnabled(false);
+	    } else if (event.getAction() == SimulationUpdate.RUNNING_STATE_CHANGED) {
+		// The topology can't be edited under a run
+		boolean isRunning = event.getNewRunningState();
+		Topology topology = Simulation.getInstance().getTopology();
+		addRouter.setEnabled(!isRunning);
+		removeRouter.setEnabled(!isRunning && topology.size() >= 1);
+		addEdge.setEnabled(!isRunning && topology.size() >= 2);
+		removeEdge.setEnabled(!isRunning && topology.hasEdges());
 	    } else if (event.getAction() == SimulationUpdate.STEP_TAKEN
-		    || event.getAction() == SimulationUpdate.UNDO_STEP) {
+		    || event.getAction() == SimulationUpdate.STEPS_TAKEN
+		    || event.getAction() == SimulationUpdate.UNDO_STEP
+		    || event.getAction() == SimulationUpdate.SEEK) {
 		canvas.repaint();
 	    }
 	}
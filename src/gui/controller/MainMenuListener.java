@@ -1,30 +1,60 @@
 package gui.controller;
 
+import java.awt.BorderLayout;
 import java.awt.Font;
+import java.awt.Frame;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.BorderFactory;
 import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
 
+import network.Topology;
+import network.TopologyFile;
 import simulation.Simulation;
+import simulation.StepLog;
+import simulation.StepTrace;
 import algorithm.RoutingAlgorithm;
 
 import common.Action;
 
 public class MainMenuListener implements ActionListener {
 
-    public MainMenuListener() {
+    private final JMenuItem stopRecording;
+    private StepLog recording; // Null unless a trace is being recorded
+
+    /**
+     * @param stopRecording
+     *            The menu item that stops recording, which is only enabled
+     *            while a trace is being recorded.
+     */
+    public MainMenuListener(JMenuItem stopRecording) {
 	super();
+	this.stopRecording = stopRecording;
+	recording = null;
     }
 
+    /**
+     * The actions that change the simulation are disabled while it runs.
+     * Dialogs are shown without holding the simulation's lock, which is only
+     * taken around each change, so painting is never held up by a dialog.
+     */
     @Override
     public void actionPerformed(ActionEvent e) {
 	String actionCommand = e.getActionCommand();
@@ -36,7 +66,10 @@ public class MainMenuListener implements ActionListener {
 			    "If you do this, you will erase the entire simulation setup!\nContinue?",
 			    "Confirm Simulation Delete",
 			    JOptionPane.YES_NO_OPTION)) {
-		Simulation.getInstance().resetMetrics();
+		stopRecording();
+		synchronized (Simulation.getInstance()) {
+		    Simulation.getInstance().resetMetrics();
+		}
 
 	    }
 	} else if (actionCommand == Action.MainMenu.CONFIGURATION_UPDATE.name()) {
@@ -56,6 +89,11 @@ public class MainMenuListener implements ActionListener {
 					"For the rate, you must enter a valid positive integer greater than 0.",
 					"Error", JOptionPane.ERROR_MESSAGE);
 			dialogPanel.reset();
+		    } else if (dialogPanel.getSeed() == null) {
+			JOptionPane.showMessageDialog(null,
+				"For the seed, you must enter a valid integer.",
+				"Error", JOptionPane.ERROR_MESSAGE);
+			dialogPanel.reset();
 		    } else {
 			boolean change = true;
 			if (Simulation.getInstance().hasStarted()) {
@@ -69,10 +107,14 @@ public class MainMenuListener implements ActionListener {
 			}
 
 			if (change) {
-			    Simulation.getInstance().setRate(
-				    dialogPanel.getRate());
-			    Simulation.getInstance().setRoutingAlgorithm(
-				    dialogPanel.getRoutingAlgorithm());
+			    synchronized (Simulation.getInstance()) {
+				Simulation.getInstance().setRate(
+					dialogPanel.getRate());
+				Simulation.getInstance().setRoutingAlgorithm(
+					dialogPanel.getRoutingAlgorithm());
+				Simulation.getInstance().setSeed(
+					dialogPanel.getSeed());
+			    }
 			    quit = true;
 			} else {
 			    dialogPanel.reset();
@@ -83,11 +125,44 @@ public class MainMenuListener implements ActionListener {
 		}
 	    } while (!quit);
 
+	} else if (actionCommand == Action.MainMenu.OPEN_TRACE.name()) {
+	    if (JOptionPane.YES_OPTION == JOptionPane
+		    .showConfirmDialog(
+			    null,
+			    "Opening a trace will erase your current topology.\nDo you wish to continue?",
+			    "Confirm Open Trace", JOptionPane.YES_NO_OPTION)) {
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+		    stopRecording();
+		    openTrace(chooser.getSelectedFile());
+		}
+	    }
+	} else if (actionCommand == Action.MainMenu.RECORD_TRACE.name()) {
+	    JFileChooser chooser = new JFileChooser();
+	    if (chooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+		stopRecording();
+		try {
+		    StepLog log = new StepLog(chooser.getSelectedFile(),
+			    Simulation.getInstance());
+		    synchronized (Simulation.getInstance()) {
+			Simulation.getInstance().addStepListener(log);
+			recording = log;
+		    }
+		    stopRecording.setEnabled(true);
+		} catch (IOException ex) {
+		    JOptionPane.showMessageDialog(null, ex.getMessage(),
+			    "Error", JOptionPane.ERROR_MESSAGE);
+		}
+	    }
+	} else if (actionCommand == Action.MainMenu.STOP_RECORDING.name()) {
+	    stopRecording();
 	} else if (actionCommand == Action.MainMenu.RESET_TOPOLOGY.name()) {
 	    if (JOptionPane.YES_OPTION == JOptionPane.showConfirmDialog(null,
 		    "Are you sure you want to erase the current topology?",
 		    "Confirm Topology Reset", JOptionPane.YES_NO_OPTION)) {
-		Simulation.getInstance().newTopology();
+		synchronized (Simulation.getInstance()) {
+		    Simulation.getInstance().newTopology();
+		}
 	    }
 	} else if (actionCommand == Action.MainMenu.LOAD_TOPOLOGY.name()) {
 	    if (JOptionPane.YES_OPTION == JOptionPane
@@ -95,10 +170,103 @@ public class MainMenuListener implements ActionListener {
 			    null,
 			    "Loading a new topology will erase your current one.\nDo you wish to continue?",
 			    "Confirm Load Topology", JOptionPane.YES_NO_OPTION)) {
-		// TODO: Implement this
+		JFileChooser chooser = new JFileChooser();
+		if (chooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+		    try {
+			Topology topology = TopologyFile.load(chooser
+				.getSelectedFile());
+			synchronized (Simulation.getInstance()) {
+			    Simulation.getInstance().setTopology(topology);
+			}
+		    } catch (IOException ex) {
+			JOptionPane.showMessageDialog(null, ex.getMessage(),
+				"Error", JOptionPane.ERROR_MESSAGE);
+		    }
+		}
 	    }
 	} else if (actionCommand == Action.MainMenu.SAVE_TOPOLOGY.name()) {
-	    // TODO: Implement this
+	    JFileChooser chooser = new JFileChooser();
+	    if (chooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
+		try {
+		    synchronized (Simulation.getInstance()) {
+			TopologyFile.save(Simulation.getInstance()
+				.getTopology(), chooser.getSelectedFile());
+		    }
+		} catch (IOException ex) {
+		    JOptionPane.showMessageDialog(null, ex.getMessage(),
+			    "Error", JOptionPane.ERROR_MESSAGE);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Stops recording steps and closes the trace, if one is being recorded.
+     * Any error writing the trace is shown to the user.
+     */
+    public void stopRecording() {
+	synchronized (Simulation.getInstance()) {
+	    if (recording == null) {
+		return;
+	    }
+	    Simulation.getInstance().removeStepListener(recording);
+	    try {
+		recording.close();
+	    } catch (IOException ex) {
+		JOptionPane.showMessageDialog(null, ex.getMessage(), "Error",
+			JOptionPane.ERROR_MESSAGE);
+	    } finally {
+		recording = null;
+		stopRecording.setEnabled(false);
+	    }
+	}
+    }
+
+    /**
+     * Reads a trace through on a SwingWorker, showing a modal dialog until it
+     * can be played back.
+     */
+    private void openTrace(File file) {
+	SwingWorker<StepTrace, Void> worker = new SwingWorker<StepTrace, Void>() {
+	    @Override
+	    protected StepTrace doInBackground() throws IOException {
+		return StepTrace.open(file);
+	    }
+	};
+
+	JProgressBar progress = new JProgressBar();
+	progress.setIndeterminate(true);
+
+	JPanel panel = new JPanel(new BorderLayout(5, 5));
+	panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+	panel.add(new JLabel("Indexing " + file.getName() + "..."),
+		BorderLayout.NORTH);
+	panel.add(progress, BorderLayout.CENTER);
+
+	JDialog dialog = new JDialog((Frame) null, "Opening Trace", true);
+	dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+	dialog.setContentPane(panel);
+	dialog.pack();
+	dialog.setLocationRelativeTo(null);
+
+	worker.addPropertyChangeListener(event -> {
+	    if (worker.isDone()) {
+		dialog.dispose();
+	    }
+	});
+	worker.execute();
+	dialog.setVisible(true);
+
+	try {
+	    StepTrace trace = worker.get();
+	    synchronized (Simulation.getInstance()) {
+		Simulation.getInstance().replay(trace);
+	    }
+	} catch (ExecutionException ex) {
+	    JOptionPane.showMessageDialog(null, ex.getCause().getMessage(),
+		    "Error", JOptionPane.ERROR_MESSAGE);
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
 	}
     }
 
@@ -106,12 +274,14 @@ public class MainMenuListener implements ActionListener {
     private class ConfigurationPanel extends JPanel {
 	private final JTextField rate;
 	private final JComboBox<RoutingAlgorithm> algorithms;
+	private final JTextField seed;
 
 	public ConfigurationPanel() {
 	    super(new GridBagLayout());
 
 	    rate = new JTextField(Simulation.getInstance().getRate() + "");
 	    algorithms = new JComboBox<>();
+	    seed = new JTextField(Simulation.getInstance().getSeed() + "");
 
 	    for (RoutingAlgorithm algorithm : RoutingAlgorithm.getSubclasses()) {
 		algorithms.addItem(algorithm);
@@ -163,10 +333,25 @@ public class MainMenuListener implements ActionListener {
 	    c.gridwidth = GridBagConstraints.REMAINDER;
 	    c.weightx = 1.0;
 	    add(algorithms, c);
+
+	    c.fill = GridBagConstraints.NONE;
+	    c.gridx = 0;
+	    c.gridwidth = GridBagConstraints.RELATIVE;
+	    c.gridy = 3;
+	    c.weightx = 0.0;
+	    c.insets = new Insets(5, 5, 5, 5);
+	    add(new JLabel("Seed:"), c);
+
+	    c.fill = GridBagConstraints.HORIZONTAL;
+	    c.gridx = 1;
+	    c.gridwidth = GridBagConstraints.REMAINDER;
+	    c.weightx = 1.0;
+	    add(seed, c);
 	}
 
 	public void reset() {
 	    rate.setText(Simulation.getInstance().getRate() + "");
+	    seed.setText(Simulation.getInstance().getSeed() + "");
 	}
 
 	public long getRate() {
@@ -177,6 +362,14 @@ public class MainMenuListener implements ActionListener {
 	    }
 	}
 
+	public Long getSeed() {
+	    try {
+		return Long.parseLong(seed.getText());
+	    } catch (NumberFormatException e) {
+		return null;
+	    }
+	}
+
 	public RoutingAlgorithm getRoutingAlgorithm() {
 	    return (RoutingAlgorithm) algorithms.getSelectedItem();
 	}
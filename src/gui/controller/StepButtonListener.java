@@ -1,9 +1,19 @@
 package gui.controller;
 
+import java.awt.BorderLayout;
+import java.awt.Frame;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.BorderFactory;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingWorker.StateValue;
 
 import simulation.Simulation;
 
@@ -11,8 +21,24 @@ import common.Action;
 
 public class StepButtonListener implements ActionListener {
 
-    public StepButtonListener() {
+    private final SpinnerNumberModel speed;
+    private StepWorker running;
+
+    /**
+     * @param speed
+     *            The number of steps to take each second in run mode, or 0 to
+     *            take them as fast as possible.
+     */
+    public StepButtonListener(SpinnerNumberModel speed) {
 	super();
+	this.speed = speed;
+	running = null;
+
+	speed.addChangeListener(event -> {
+	    if (running != null) {
+		running.setStepsPerSecond(getStepsPerSecond());
+	    }
+	});
     }
 
     @Override
@@ -20,7 +46,7 @@ public class StepButtonListener implements ActionListener {
 	String action = e.getActionCommand();
 
 	if (action == Action.Step.STEP_ONCE.name()) {
-	    doSteps(1);
+	    Simulation.getInstance().step();
 	} else if (action == Action.Step.STEP_N_TIMES.name()) {
 	    String result = null;
 	    int value = -1;
@@ -43,12 +69,90 @@ public class StepButtonListener implements ActionListener {
 
 	} else if (action == Action.Step.UNDO_STEP.name()) {
 	    Simulation.getInstance().undoStep();
+	} else if (action == Action.Step.GO_TO_STEP.name()) {
+	    String result = JOptionPane
+		    .showInputDialog("Enter the step to go to:");
+	    if (result != null) {
+		try {
+		    Simulation.getInstance().seek(Long.parseUnsignedLong(result));
+		} catch (NumberFormatException ex) {
+		    JOptionPane.showMessageDialog(null,
+			    "You must enter a valid step number.", "Error",
+			    JOptionPane.ERROR_MESSAGE);
+		} catch (IllegalArgumentException | IllegalStateException ex) {
+		    JOptionPane.showMessageDialog(null, ex.getMessage(),
+			    "Error", JOptionPane.ERROR_MESSAGE);
+		}
+	    }
+	} else if (action == Action.Step.RUN_PAUSE.name()) {
+	    if (running == null) {
+		run();
+	    } else {
+		running.cancel(false);
+	    }
 	}
     }
 
+    private double getStepsPerSecond() {
+	return speed.getNumber().doubleValue();
+    }
+
+    /**
+     * Keeps taking steps on a StepWorker until paused. The simulation is told
+     * when the run starts and stops so the other step buttons can be disabled
+     * in the meantime.
+     */
+    private void run() {
+	Simulation simulation = Simulation.getInstance();
+	StepWorker worker = new StepWorker(simulation, Long.MAX_VALUE,
+		getStepsPerSecond());
+
+	worker.addPropertyChangeListener(event -> {
+	    if ("state".equals(event.getPropertyName())
+		    && event.getNewValue() == StateValue.DONE) {
+		running = null;
+		simulation.setRunning(false);
+	    }
+	});
+	running = worker;
+	simulation.setRunning(true);
+	worker.execute();
+    }
+
+    /**
+     * Takes the steps on a StepWorker, showing a modal progress dialog with a
+     * button to cancel them. The dialog keeps the topology from being edited
+     * while the steps are being taken.
+     */
     private void doSteps(int steps) {
-	for (int i = 0; i < steps; i++) {
-	    Simulation.getInstance().step();
-	}
+	StepWorker worker = new StepWorker(Simulation.getInstance(), steps);
+
+	JProgressBar progress = new JProgressBar(0, 100);
+	progress.setStringPainted(true);
+	JButton cancel = new JButton("Cancel");
+	cancel.addActionListener(event -> worker.cancel(false));
+
+	JPanel panel = new JPanel(new BorderLayout(5, 5));
+	panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+	panel.add(new JLabel("Taking " + steps + " steps..."),
+		BorderLayout.NORTH);
+	panel.add(progress, BorderLayout.CENTER);
+	panel.add(cancel, BorderLayout.SOUTH);
+
+	JDialog dialog = new JDialog((Frame) null, "Stepping", true);
+	dialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+	dialog.setContentPane(panel);
+	dialog.pack();
+	dialog.setLocationRelativeTo(null);
+
+	worker.addPropertyChangeListener(event -> {
+	    if ("progress".equals(event.getPropertyName())) {
+		progress.setValue((Integer) event.getNewValue());
+	    } else if (worker.isDone()) {
+		dialog.dispose();
+	    }
+	});
+	worker.execute();
+	dialog.setVisible(true);
     }
 }
@@ -0,0 +1,133 @@
+package gui.controller;
+
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.SwingWorker;
+
+import simulation.Simulation;
+import simulation.StepResult;
+
+/**
+ * Takes a batch of steps on a background thread, so the window stays
+ * responsive however many steps there are. Steps can be taken as fast as
+ * possible or paced to a target number per second, which can be changed
+ * while the worker runs. Observers aren't told about every
+ * step; instead the simulation is sampled a fixed number of times a second
+ * and they are brought up to date on the event dispatch thread. The
+ * simulation is locked while each step is taken and while it is sampled, so
+ * anything that reads it on the event dispatch thread, such as painting, must
+ * lock it too. Rendering never holds the steps up: if painting falls behind,
+ * samples are dropped rather than steps slowed down.
+ */
+public class StepWorker extends SwingWorker<Long, StepResult> {
+
+    public static final int FRAMES_PER_SECOND = 30;
+    private static final long FRAME_NANOS = 1000000000L / FRAMES_PER_SECOND;
+
+    private final Simulation simulation;
+    private final long steps;
+    private volatile double stepsPerSecond;
+    private volatile StepResult latest;
+
+    /**
+     * @param simulation
+     *            The simulation to step.
+     * @param steps
+     *            The number of steps to take.
+     */
+    public StepWorker(Simulation simulation, long steps) {
+	this(simulation, steps, 0);
+    }
+
+    /**
+     * @param simulation
+     *            The simulation to step.
+     * @param steps
+     *            The number of steps to take, or Long.MAX_VALUE to keep going
+     *            until cancelled.
+     * @param stepsPerSecond
+     *            The number of steps to aim for each second, or 0 to go as
+     *            fast as possible.
+     */
+    public StepWorker(Simulation simulation, long steps, double stepsPerSecond) {
+	this.simulation = simulation;
+	this.steps = steps;
+	this.stepsPerSecond = stepsPerSecond;
+	latest = null;
+    }
+
+    /**
+     * @param stepsPerSecond
+     *            The number of steps to aim for each second from now on, or 0
+     *            to go as fast as possible.
+     */
+    public void setStepsPerSecond(double stepsPerSecond) {
+	this.stepsPerSecond = stepsPerSecond;
+    }
+
+    /**
+     * @return The number of steps taken, which is fewer than asked for if the
+     *         worker was cancelled.
+     */
+    @Override
+    protected Long doInBackground() {
+	long lastFrame = System.nanoTime();
+	long nextStep = lastFrame;
+
+	long taken = 0;
+	while (taken < steps && !isCancelled()) {
+	    double rate = stepsPerSecond;
+	    if (rate > 0) {
+		long now = System.nanoTime();
+		if (nextStep - now > 0) {
+		    LockSupport.parkNanos(nextStep - now);
+		    continue; // Check for cancellation again
+		} else if (now - nextStep > 1000000000L) {
+		    // Too far behind to catch up, carry on from now
+		    nextStep = now;
+		}
+		nextStep += (long) (1e9 / rate);
+	    }
+
+	    synchronized (simulation) {
+		latest = simulation.stepQuietly();
+	    }
+	    taken++;
+
+	    long now = System.nanoTime();
+	    if (now - lastFrame >= FRAME_NANOS) {
+		lastFrame = now;
+		publish(latest);
+		setProgress((int) (taken * 100 / steps));
+	    }
+	}
+
+	return taken;
+    }
+
+    /**
+     * Brings observers up to date with the latest step taken, dropping any
+     * samples that were published in the meantime.
+     */
+    @Override
+    protected void process(List<StepResult> results) {
+	synchronized (simulation) {
+	    simulation.stepsTaken(results.get(results.size() - 1));
+	}
+    }
+
+    /**
+     * Brings observers up to date with the last step taken, since samples
+     * published just before the worker finished or was cancelled may not have
+     * been processed.
+     */
+    @Override
+    protected void done() {
+	if (latest != null) {
+	    synchronized (simulation) {
+		simulation.stepsTaken(latest);
+	    }
+	}
+    }
+}
@@ -18,6 +18,11 @@ public class TopologyButtonListener implements ActionListener {
 	super();
     }
 
+    /**
+     * The buttons are disabled while the simulation runs. Dialogs are shown
+     * without holding the simulation's lock, which is only taken around each
+     * edit, so painting is never held up by a dialog.
+     */
     @Override
     public void actionPerformed(ActionEvent e) {
 	String actionCommand = e.getActionCommand();
@@ -42,9 +47,13 @@ public class TopologyButtonListener implements ActionListener {
 	    if (name != null) {
 		try {
 		    Router router = new Router(name);
+		    boolean isAdded;
+		    synchronized (Simulation.getInstance()) {
+			isAdded = Simulation.getInstance().getTopology()
+				.addRouter(router);
+		    }
 
-		    if (!Simulation.getInstance().getTopology()
-			    .addRouter(router)) {
+		    if (!isAdded) {
 			JOptionPane.showMessageDialog(null,
 				"A Router with that name already exists!",
 				"Error", JOptionPane.ERROR_MESSAGE);
@@ -85,8 +94,10 @@ public class TopologyButtonListener implements ActionListener {
 			    JOptionPane.QUESTION_MESSAGE, null, values,
 			    values[0]);
 		    if (router2 != null) {
-			Simulation.getInstance().getTopology()
-				.addEdge(router1, router2);
+			synchronized (Simulation.getInstance()) {
+			    Simulation.getInstance().getTopology()
+				    .addEdge(router1, router2);
+			}
 		    }
 		}
 	    }
@@ -100,7 +111,9 @@ public class TopologyButtonListener implements ActionListener {
 		    JOptionPane.QUESTION_MESSAGE, null, values, values[0]);
 
 	    if (router != null) {
-		Simulation.getInstance().getTopology().removeRouter(router);
+		synchronized (Simulation.getInstance()) {
+		    Simulation.getInstance().getTopology().removeRouter(router);
+		}
 	    }
 	}
 
@@ -119,8 +132,10 @@ public class TopologyButtonListener implements ActionListener {
 			values, values[0]);
 
 		if (router2 != null) {
-		    Simulation.getInstance().getTopology()
-			    .removeEdge(router1, router2);
+		    synchronized (Simulation.getInstance()) {
+			Simulation.getInstance().getTopology()
+				.removeEdge(router1, router2);
+		    }
 		}
 	    }
 	}
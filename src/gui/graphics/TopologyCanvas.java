@@ -21,6 +21,7 @@ import javax.swing.JTable;
 
 import network.Router;
 import network.Topology;
+import simulation.Simulation;
 
 import common.TopologyUpdateEvent;
 import common.TopologyUpdateEvent.TopologyUpdate;
@@ -38,6 +39,7 @@ public class TopologyCanvas extends JPanel implements Observer {
 
     private final TreeSet<RouterNode> nodes;
     private final Rectangle canvas;
+    private long framesPainted;
 
     /**
      * Instantiate a blank canvas.
@@ -45,6 +47,7 @@ public class TopologyCanvas extends JPanel implements Observer {
     public TopologyCanvas() {
 	nodes = new TreeSet<>();
 	canvas = new Rectangle();
+	framesPainted = 0;
 
 	MouseAdapter a = new TopologyCanvasMouseAdapter();
 	addMouseMotionListener(a);
@@ -157,12 +160,28 @@ public class TopologyCanvas extends JPanel implements Observer {
     }
 
     /**
-     * Update the view of the canvas.
+     * Update the view of the canvas. The simulation is locked while painting,
+     * since steps may be being taken on another thread.
      */
     @Override
     public void paintComponent(Graphics g) {
 	super.paintComponent(g);
 
+	synchronized (Simulation.getInstance()) {
+	    paintTopology(g);
+	}
+	framesPainted++;
+    }
+
+    /**
+     * @return The number of times the canvas has been painted, for measuring
+     *         the frame rate.
+     */
+    public long getFramesPainted() {
+	return framesPainted;
+    }
+
+    private void paintTopology(Graphics g) {
 	// Resize the canvas according to the lowest and right-most RouterNodes
 	int newWidth = 0, newHeight = 0;
 	for (RouterNode node : nodes) {
@@ -1,26 +1,37 @@
 package gui.models;
 
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.TreeMap;
 
+import javax.swing.SwingUtilities;
 import javax.swing.table.AbstractTableModel;
 
-import network.Packet;
 import network.Router;
-import network.Topology;
+import simulation.PacketRecord;
+import simulation.RouteMetrics;
 import simulation.Simulation;
+import simulation.StepDelta;
+import simulation.StepListener;
 
 import common.SimulationUpdateEvent;
 import common.SimulationUpdateEvent.SimulationUpdate;
-import common.TopologyUpdateEvent;
-import common.TopologyUpdateEvent.TopologyUpdate;
 
+/**
+ * The average number of hops taken between every source and destination.
+ * Deliveries arrive in one StepDelta per step, and are gathered up and
+ * applied to the table in one go on the event dispatch thread, however many
+ * steps have been taken in the meantime. Steps that are undone or skipped
+ * over by seeking aren't passed on, so then the table is rebuilt from the
+ * simulation's metrics instead.
+ */
 @SuppressWarnings("serial")
 public class AverageHopsTableModel extends AbstractTableModel implements
-	Observer {
+	Observer, StepListener {
 
     // Constants
     private static final String[] COLUMN_NAMES = { "Source", "Destination",
@@ -29,11 +40,14 @@ public class AverageHopsTableModel extends AbstractTableModel implements
 	    String.class, String.class };
 
     private final Map<Router, Map<Router, AverageTuple>> averageHops;
+    private List<PacketRecord> pendingDeliveries; // Guarded by this
 
     public AverageHopsTableModel() {
 	averageHops = new TreeMap<>();
+	pendingDeliveries = new ArrayList<>();
 
 	Simulation.getInstance().addObserver(this);
+	Simulation.getInstance().addStepListener(this);
     }
 
     @Override
@@ -95,34 +109,24 @@ public class AverageHopsTableModel extends AbstractTableModel implements
 	return null;
     }
 
-    private void clear() {
-	if (getRowCount() > 0) {
-	    int rows = getRowCount() - 1;
-	    averageHops.clear();
-	    fireTableRowsDeleted(0, rows);
+    /**
+     * Replaces the table with the deliveries the simulation has recorded so
+     * far.
+     */
+    private void rebuild(RouteMetrics routes) {
+	synchronized (this) {
+	    pendingDeliveries.clear();
 	}
-    }
-
-    private int getRowOf(Router source, Router destination) {
-	int rowCount = 0;
-
-	for (Router router : averageHops.keySet()) {
-	    if (router == source) {
-		break;
-	    } else {
-		rowCount += averageHops.get(router).size();
+	averageHops.clear();
+	for (int i = 0; i < routes.size(); i++) {
+	    Router source = routes.getSource(i);
+	    if (!averageHops.containsKey(source)) {
+		averageHops.put(source, new TreeMap<Router, AverageTuple>());
 	    }
+	    averageHops.get(source).put(routes.getDestination(i),
+		    new AverageTuple(routes.getHops(i), routes.getDeliveries(i)));
 	}
-
-	for (Router router : averageHops.get(source).keySet()) {
-	    if (router == destination) {
-		break;
-	    } else {
-		rowCount++;
-	    }
-	}
-
-	return rowCount;
+	fireTableDataChanged();
     }
 
     private Router getDestinationAt(int row) {
@@ -154,48 +158,80 @@ public class AverageHopsTableModel extends AbstractTableModel implements
 	return averageHops.get(source).get(destination).getAverage();
     }
 
-    private void updateAverageHops(Router source, Router destination,
+    /**
+     * @return True if a new row had to be added.
+     */
+    private boolean updateAverageHops(Router source, Router destination,
 	    long newHops) {
+	boolean added = false;
 	if (!averageHops.containsKey(source)) {
 	    averageHops.put(source, new TreeMap<Router, AverageTuple>());
 	}
 
 	if (!averageHops.get(source).containsKey(destination)) {
 	    averageHops.get(source).put(destination, new AverageTuple(0, 0));
-	    int rowNum = getRowOf(source, destination);
-	    fireTableRowsInserted(rowNum, rowNum);
+	    added = true;
 	}
 
 	averageHops.get(source).get(destination).addHops(newHops);
-	fireTableCellUpdated(getRowOf(source, destination), 2);
+	return added;
     }
 
     @Override
-    public void update(Observable observable, Object update) {
+    public void stepTaken(StepDelta delta) {
+	if (delta.getDelivered().isEmpty()) {
+	    return;
+	}
 
+	synchronized (this) {
+	    // Only the first delivery since the table was last updated needs to
+	    // schedule an update, the rest are picked up by the same one
+	    boolean scheduled = !pendingDeliveries.isEmpty();
+	    pendingDeliveries.addAll(delta.getDelivered());
+	    if (scheduled) {
+		return;
+	    }
+	}
+	SwingUtilities.invokeLater(this::applyPendingDeliveries);
+    }
+
+    private void applyPendingDeliveries() {
+	List<PacketRecord> deliveries;
+	synchronized (this) {
+	    deliveries = pendingDeliveries;
+	    pendingDeliveries = new ArrayList<>();
+	}
+
+	boolean added = false;
+	for (PacketRecord delivery : deliveries) {
+	    added |= updateAverageHops(delivery.getSource(),
+		    delivery.getDestination(), delivery.getHops());
+	}
+
+	if (added) {
+	    fireTableDataChanged();
+	} else if (!deliveries.isEmpty()) {
+	    fireTableRowsUpdated(0, getRowCount() - 1);
+	}
+    }
+
+    @Override
+    public void update(Observable observable, Object update) {
 	if (observable instanceof Simulation) {
 	    SimulationUpdateEvent event = (SimulationUpdateEvent) update;
-	    if (event.getAction() == SimulationUpdate.METRICS_RESET) {
-		clear();
-	    }
-	} else if (observable instanceof Topology) {
-	    TopologyUpdateEvent event = (TopologyUpdateEvent) update;
-	    if (event.getAction() == TopologyUpdate.PACKET_INJECTED) {
-		Packet packet = event.getPacket();
-		packet.addObserver(this);
+	    if (event.getAction() == SimulationUpdate.METRICS_RESET
+		    || event.getAction() == SimulationUpdate.UNDO_STEP
+		    || event.getAction() == SimulationUpdate.SEEK) {
+		rebuild(((Simulation) observable).getMetrics().getRoutes());
 	    }
-	} else if (observable instanceof Packet) {
-	    Packet packet = (Packet) observable;
-	    updateAverageHops(packet.getSource(), packet.getDestination(),
-		    packet.getHops());
 	}
     }
 
     private class AverageTuple {
 	public long sum;
-	public int size;
+	public long size;
 
-	public AverageTuple(long sum, int size) {
+	public AverageTuple(long sum, long size) {
 	    this.sum = sum;
 	    this.size = size;
 	}
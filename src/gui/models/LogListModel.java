@@ -1,72 +1,253 @@
 package gui.models;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
 import javax.swing.AbstractListModel;
 
+import network.Router;
 import simulation.Simulation;
+import simulation.StepResult;
 
+import common.PagedStringFile;
 import common.SimulationUpdateEvent;
 import common.SimulationUpdateEvent.SimulationUpdate;
 
+/**
+ * Shows the steps the simulation has announced since it was last reset, newest
+ * first, a page at a time. The most recent steps are kept in memory, and older
+ * ones are written to a file as they are pushed out and read back when the
+ * user pages to them, so memory use doesn't grow with the number of steps.
+ * Steps are written in binary rather than rendered, and only the steps on the
+ * page shown are ever turned into HTML.
+ */
 @SuppressWarnings("serial")
-public class LogListModel<StepResult> extends AbstractListModel<StepResult>
-	implements Observer {
+public class LogListModel extends AbstractListModel<Object> implements
+	Observer {
 
     private final int maximumElements;
-    private final List<StepResult> log;
-    private final Deque<StepResult> oldLogs;
+    private final StepResult[] recent; // A ring, with the newest at latest
+    private int latest;
+    private int recentCount;
+    private PagedStringFile pages; // Oldest first, or null if it failed
+    private Router[] routers; // Of the topology the paged steps were taken in
+    private ByteBuffer buffer; // Reused for every step paged out
+    private final Map<Long, Object> cache;
+    private long first; // The number of newer steps than the page shown
+    private int shown;
 
+    /**
+     * @param maximumElements
+     *            The number of steps kept in memory, which is also the number
+     *            shown at once.
+     * @throws IOException
+     *             If the page files can't be created.
+     */
     public LogListModel(int maximumElements) throws IOException {
 	this.maximumElements = maximumElements;
-	log = new ArrayList<>();
-	oldLogs = new ArrayDeque<>();
+	recent = new StepResult[maximumElements];
+	latest = 0;
+	recentCount = 0;
+	routers = null;
+	buffer = ByteBuffer.allocate(1 << 12);
+	cache = new LinkedHashMap<Long, Object>(16, 0.75f, true) {
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<Long, Object> eldest) {
+		return size() > 2 * LogListModel.this.maximumElements;
+	    }
+	};
+	first = 0;
+	shown = 0;
+
+	File pageFile = File.createTempFile("steps", ".log");
+	pageFile.deleteOnExit();
+	File indexFile = File.createTempFile("steps", ".index");
+	indexFile.deleteOnExit();
+	pages = new PagedStringFile(pageFile, indexFile);
 
 	Simulation.getInstance().addObserver(this);
     }
 
     @Override
-    public StepResult getElementAt(int i) {
-	return log.get(i);
+    public Object getElementAt(int i) {
+	long n = first + i;
+	if (n < recentCount) {
+	    return recent[(latest - (int) n + recent.length) % recent.length];
+	}
+
+	long page = pages.size() - 1 - (n - recentCount);
+	Object step = cache.get(page);
+	if (step == null) {
+	    try {
+		step = StepResult.read(pages.getBytes(page), routers);
+	    } catch (IOException ex) {
+		step = "<i>This step couldn't be read back from disk.</i>";
+	    }
+	    cache.put(page, step);
+	}
+	return step;
     }
 
     @Override
     public int getSize() {
-	return log.size();
+	return shown;
     }
 
-    private void add(int index, StepResult element) {
-	log.add(index, element);
-	fireIntervalAdded(this, index, index);
+    private long getTotal() {
+	return recentCount + ((pages == null) ? 0 : pages.size());
+    }
 
-	if (log.size() > maximumElements) {
-	    // TODO: Write to log file
-	    oldLogs.push(log.remove(maximumElements));
+    /**
+     * @return True if there are older steps than the ones shown.
+     */
+    public boolean hasOlder() {
+	return first + shown < getTotal();
+    }
 
-	    fireIntervalRemoved(this, maximumElements, maximumElements);
+    /**
+     * @return True if there are newer steps than the ones shown.
+     */
+    public boolean hasNewer() {
+	return first > 0;
+    }
+
+    /**
+     * Moves half a page towards the oldest step.
+     *
+     * @return The number of places every step still shown has moved up.
+     */
+    public int showOlder() {
+	long last = Math.max(0, getTotal() - maximumElements);
+	long next = Math.min(last, first + Math.max(1, maximumElements / 2));
+	int moved = (int) Math.max(0, next - first);
+	showFrom(first + moved);
+	return moved;
+    }
+
+    /**
+     * Moves half a page towards the newest step.
+     *
+     * @return The number of places every step still shown has moved down.
+     */
+    public int showNewer() {
+	int moved = (int) Math.min(first, Math.max(1, maximumElements / 2));
+	showFrom(first - moved);
+	return moved;
+    }
+
+    private void showFrom(long first) {
+	this.first = first;
+	int previous = shown;
+	shown = (int) Math.min(maximumElements, getTotal() - first);
+
+	if (shown < previous) {
+	    fireIntervalRemoved(this, shown, previous - 1);
+	} else if (shown > previous) {
+	    fireIntervalAdded(this, previous, shown - 1);
+	}
+	if (Math.min(shown, previous) > 0) {
+	    fireContentsChanged(this, 0, Math.min(shown, previous) - 1);
 	}
     }
 
     private void addElement(StepResult element) {
-	add(0, element);
+	latest = (latest + 1) % recent.length;
+	if (recentCount == recent.length) {
+	    pushOut(recent[latest]); // The oldest
+	} else {
+	    recentCount++;
+	}
+	recent[latest] = element;
+
+	if (first > 0) {
+	    // Keep showing the same steps
+	    first++;
+	    return;
+	}
+
+	shown++;
+	fireIntervalAdded(this, 0, 0);
+	if (shown > maximumElements) {
+	    shown--;
+	    fireIntervalRemoved(this, maximumElements, maximumElements);
+	}
+    }
+
+    /**
+     * Writes a step that no longer fits in memory to the page file, in binary.
+     * If the file can't be written to, older steps are dropped instead.
+     */
+    private void pushOut(StepResult element) {
+	if (pages == null) {
+	    return;
+	}
+	if (pages.size() == 0) {
+	    // The log is cleared whenever the topology changes
+	    routers = Simulation.getInstance().getTopology().getRouters();
+	}
+	int size = element.getBinarySize();
+	if (buffer.capacity() < size) {
+	    buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+	}
+	buffer.clear();
+	element.write(buffer);
+	buffer.flip();
+	try {
+	    pages.add(buffer);
+	} catch (IOException ex) {
+	    try {
+		pages.close();
+	    } catch (IOException closeEx) {
+		// It has already failed
+	    }
+	    pages = null;
+	    cache.clear();
+	}
     }
 
     private void removeLatest() {
-	log.remove(0);
-	fireIntervalRemoved(this, 0, 0);
+	if (getTotal() == 0) {
+	    return;
+	}
+	if (recentCount > 0) {
+	    recent[latest] = null;
+	    latest = (latest - 1 + recent.length) % recent.length;
+	    recentCount--;
+	} else {
+	    try {
+		pages.removeLast();
+	    } catch (IOException ex) {
+		return; // It stays in the log
+	    }
+	    cache.remove(pages.size());
+	}
+
+	if (first > 0) {
+	    first--;
+	} else {
+	    showFrom(0);
+	}
     }
 
     private void clear() {
-	int previousSize = log.size();
-	log.clear();
-	oldLogs.clear();
-	fireIntervalRemoved(this, 0, previousSize - 1);
+	Arrays.fill(recent, null);
+	recentCount = 0;
+	routers = null;
+	cache.clear();
+	if (pages != null) {
+	    try {
+		pages.clear();
+	    } catch (IOException ex) {
+		// The steps are gone, even if their space on disk isn't
+	    }
+	}
+	showFrom(0);
     }
 
     @Override
@@ -74,14 +255,15 @@ public class LogListModel<StepResult> extends AbstractListModel<StepResult>
 	if (observable instanceof Simulation) {
 	    SimulationUpdateEvent event = (SimulationUpdateEvent) update;
 
-	    if (event.getAction() == SimulationUpdate.STEP_TAKEN) {
-		@SuppressWarnings("unchecked")
-		StepResult result = (StepResult) event.getStepResult();
-		addElement(result);
+	    if (event.getAction() == SimulationUpdate.STEP_TAKEN
+		    || event.getAction() == SimulationUpdate.STEPS_TAKEN) {
+		addElement(event.getStepResult());
 	    } else if (event.getAction() == SimulationUpdate.METRICS_RESET) {
 		clear();
 	    } else if (event.getAction() == SimulationUpdate.UNDO_STEP) {
 		removeLatest();
+	    } else if (event.getAction() == SimulationUpdate.SEEK) {
+		clear();
 	    }
 	}
     }
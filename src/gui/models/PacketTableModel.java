@@ -35,7 +35,7 @@ public class PacketTableModel extends AbstractTableModel {
 	Packet packet = packets.get(row);
 
 	if (column == 0) {
-	    return packet.getID();
+	    return packet.getID() + "";
 	} else if (column == 1) {
 	    return packet.getSource().getName();
 	} else if (column == 2) {
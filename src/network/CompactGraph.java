@@ -0,0 +1,149 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * The connections of a Topology's routers, frozen into primitive arrays for
+ * fast reading. Routers are numbered by their index in
+ * {@link Topology#getRouters()}, and the neighbours of router i are stored in
+ * ascending order, which is name order, at positions getStart(i) to
+ * getEnd(i) - 1 of a single array shared by every router. Walking a router's
+ * neighbours is then a scan over consecutive ints rather than a walk through
+ * a tree of Router objects.
+ * <p>
+ * A graph is built by its Topology when it is first asked for after the
+ * routers or edges change, and is never changed afterwards, so it can be read
+ * from any thread. It is a read-only copy: each Router's own set of
+ * connections stays the one that is edited. Edits come one at a time from
+ * the user or a topology file, routers can be connected before they join a
+ * Topology, and an edit to these arrays would mean shifting every later
+ * neighbour along. Steps, routing tables, traces and snapshots only ever read
+ * the graph, and it is rebuilt in a single pass after a batch of edits.
+ */
+public class CompactGraph {
+
+    private final Router[] routers;
+    private final int[] starts;
+    private final int[] neighbours;
+
+    /**
+     * @param routers
+     *            The routers, each of which must have its index in the array
+     *            set.
+     */
+    protected CompactGraph(Router[] routers) {
+	this.routers = routers;
+	starts = new int[routers.length + 1];
+	int size = 0;
+	for (int i = 0; i < routers.length; i++) {
+	    starts[i] = size;
+	    size += routers[i].getConnections().size();
+	}
+	starts[routers.length] = size;
+
+	neighbours = new int[size];
+	for (int i = 0; i < routers.length; i++) {
+	    int j = starts[i];
+	    // Connections iterate in name order, the same as indices
+	    for (Router neighbour : routers[i].getConnections()) {
+		neighbours[j++] = neighbour.getIndex();
+	    }
+	}
+    }
+
+    /**
+     * @return The routers, which must not be modified.
+     */
+    public Router[] getRouters() {
+	return routers;
+    }
+
+    public int size() {
+	return routers.length;
+    }
+
+    /**
+     * @return The number of edges, each counted once.
+     */
+    public int getEdgeCount() {
+	return neighbours.length / 2;
+    }
+
+    public int getDegree(int router) {
+	return starts[router + 1] - starts[router];
+    }
+
+    /**
+     * @return The index of the i-th neighbour of a router, in name order.
+     */
+    public int getNeighbour(int router, int i) {
+	return neighbours[starts[router] + i];
+    }
+
+    /**
+     * @return The position of a router's first neighbour in
+     *         {@link #getNeighbours()}.
+     */
+    public int getStart(int router) {
+	return starts[router];
+    }
+
+    /**
+     * @return The position after a router's last neighbour in
+     *         {@link #getNeighbours()}.
+     */
+    public int getEnd(int router) {
+	return starts[router + 1];
+    }
+
+    /**
+     * @return The neighbours of every router, one after another, which must
+     *         not be modified.
+     */
+    public int[] getNeighbours() {
+	return neighbours;
+    }
+
+    /**
+     * Works out the first hop from a router to every other one along a
+     * breadth-first spanning tree, so that every route is a shortest one.
+     * Neighbours are visited in name order, so ties are always broken the same
+     * way.
+     *
+     * @param root
+     *            The index of the router to route from.
+     * @return The index of the neighbour to send to for each destination, the
+     *         root itself for the root, or -1 where the destination can't be
+     *         reached.
+     */
+    public int[] getNextHops(int root) {
+	int[] next = new int[routers.length];
+	Arrays.fill(next, -1);
+	int[] queue = new int[routers.length];
+	int head = 0;
+	int tail = 0;
+
+	next[root] = root;
+	for (int j = starts[root]; j < starts[root + 1]; j++) {
+	    int neighbour = neighbours[j];
+	    if (next[neighbour] == -1) {
+		next[neighbour] = neighbour;
+		queue[tail++] = neighbour;
+	    }
+	}
+
+	while (head < tail) {
+	    int router = queue[head++];
+	    for (int j = starts[router]; j < starts[router + 1]; j++) {
+		int neighbour = neighbours[j];
+		if (next[neighbour] == -1) {
+		    // The same first hop as the router it was reached from
+		    next[neighbour] = next[router];
+		    queue[tail++] = neighbour;
+		}
+	    }
+	}
+
+	return next;
+    }
+}
@@ -0,0 +1,110 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * Keeps track of the connected components of a Topology as it is built, with
+ * a union-find forest over the routers' connectivity indices. Adding a router
+ * or an edge takes close to constant time. Union-find can't split
+ * components, so removing a router or an edge only marks the forest as stale,
+ * and it is built again from the whole topology the next time it is asked
+ * about.
+ */
+class Connectivity {
+
+    private int[] parents;
+    private int[] sizes;
+    private int size;
+    private int componentCount;
+    private boolean isStale;
+
+    public Connectivity() {
+	parents = new int[16];
+	sizes = new int[16];
+	clear();
+    }
+
+    private void clear() {
+	size = 0;
+	componentCount = 0;
+	isStale = false;
+    }
+
+    /**
+     * Adds a router on its own.
+     *
+     * @return The router's connectivity index.
+     */
+    public int add() {
+	if (size == parents.length) {
+	    parents = Arrays.copyOf(parents, size * 2);
+	    sizes = Arrays.copyOf(sizes, size * 2);
+	}
+	parents[size] = size;
+	sizes[size] = 1;
+	componentCount++;
+	return size++;
+    }
+
+    /**
+     * Joins the components of two routers, by their connectivity indices.
+     */
+    public void union(int router1, int router2) {
+	if (isStale) {
+	    return;
+	}
+
+	int root1 = find(router1);
+	int root2 = find(router2);
+	if (root1 != root2) {
+	    // Hang the smaller tree off the larger one to keep trees shallow
+	    if (sizes[root1] < sizes[root2]) {
+		int swap = root1;
+		root1 = root2;
+		root2 = swap;
+	    }
+	    parents[root2] = root1;
+	    sizes[root1] += sizes[root2];
+	    componentCount--;
+	}
+    }
+
+    private int find(int router) {
+	while (parents[router] != router) {
+	    // Point every other router on the way at its grandparent
+	    parents[router] = parents[parents[router]];
+	    router = parents[router];
+	}
+	return router;
+    }
+
+    /**
+     * Marks the components as out of date, after something has been removed.
+     */
+    public void invalidate() {
+	isStale = true;
+    }
+
+    /**
+     * @return The number of connected components, working them out again
+     *         from the routers if anything has been removed since they were
+     *         last worked out.
+     */
+    public int getComponentCount(Topology topology) {
+	if (isStale) {
+	    clear();
+	    for (Router router : topology) {
+		router.setConnectivityIndex(add());
+	    }
+	    for (Router router : topology) {
+		for (Router neighbour : router.getConnections()) {
+		    if (neighbour.getTopology() == topology) {
+			union(router.getConnectivityIndex(),
+				neighbour.getConnectivityIndex());
+		    }
+		}
+	    }
+	}
+	return componentCount;
+    }
+}
@@ -1,38 +1,75 @@
 package network;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
-import java.util.Observable;
+public class Packet {
 
-public class Packet extends Observable {
-
-    private final String packetID;
+    private final long packetID;
     private final Router source;
     private final Router destination;
     private long hops;
-    private boolean isStale;
-    private final Deque<Router> history;
+    private Router current;
+    // Every hop is recorded in a StepLog trace if one is needed, so a packet
+    // only keeps which routers it has been to, not the order
+    private final VisitedSet visited;
 
-    public Packet(String packetID, Router source, Router destination) {
+    public Packet(long packetID, Router source, Router destination) {
 	this.packetID = packetID;
 	this.source = source;
 	this.destination = destination;
-	isStale = true;
 	hops = 0;
-	history = new ArrayDeque<>();
-	history.push(source);
+	current = source;
+	visited = new VisitedSet(source.getIndex());
     }
 
+    /**
+     * Rebuilds a packet that has been read back from a snapshot.
+     * 
+     * @param current
+     *            The router the packet is at.
+     * @param visited
+     *            The indices of the routers the packet has been to.
+     */
+    protected Packet(long packetID, Router source, Router destination,
+	    Router current, long hops, int[] visited) {
+	this(packetID, source, destination);
+	this.current = current;
+	this.hops = hops;
+	for (int router : visited) {
+	    this.visited.add(router);
+	}
+	this.visited.add(current.getIndex());
+    }
+
+    /**
+     * Rebuilds a packet from a recorded event, which only says where it
+     * started and where it is now.
+     *
+     * @param current
+     *            The router the packet is at.
+     * @param hops
+     *            The number of hops it has taken to get there.
+     */
+    public Packet(long packetID, Router source, Router destination,
+	    Router current, long hops) {
+	this(packetID, source, destination);
+	this.hops = hops;
+	this.current = current;
+	visited.add(current.getIndex());
+    }
+
+    /**
+     * Copies a packet, such as to flood it. The copy shares what it can of
+     * the set of routers the packet has been to, rather than copying it all.
+     */
     public Packet(Packet packet) {
 	this.packetID = packet.packetID;
 	this.source = packet.source;
 	this.destination = packet.destination;
-	this.isStale = packet.isStale;
 	this.hops = packet.hops;
-	this.history = new ArrayDeque<>(packet.history);
+	this.current = packet.current;
+	this.visited = new VisitedSet(packet.visited);
     }
 
-    public String getID() {
+    public long getID() {
 	return packetID;
     }
 
@@ -45,58 +82,49 @@ public class Packet extends Observable {
     }
 
     public boolean destinationReached() {
-	if (getCurrentRouter() == destination) {
-	    setChanged();
-	    notifyObservers();
-	    return true;
-	} else {
-	    return false;
-	}
+	return current == destination;
     }
 
     public long getHops() {
 	return hops;
     }
 
+    /**
+     * Sends the packet on during a step. It arrives in the router's next-step
+     * queue, and isn't taken out of the router it was at.
+     */
     public void sendTo(Router router) {
-	router.addPacket(this);
-	history.push(router);
+	router.receivePacket(this);
+	current = router;
+	visited.add(router.getIndex());
 	hops++;
-	isStale = true;
     }
 
-    public void unsend() {
-	if (hops > 0) {
-	    history.pop();
-	    history.peek().addPacket(this);
-	    hops--;
-	    isStale = false;
-	}
-    }
-
-    public boolean isStale() {
-	return isStale;
-    }
-
-    public void unstale() {
-	isStale = false;
+    public Router getCurrentRouter() {
+	return current;
     }
 
-    public Router getCurrentRouter() {
-	return history.peek();
+    /**
+     * @return The indices of the routers the packet has been to, in no
+     *         particular order.
+     */
+    protected int[] getVisited() {
+	return visited.toArray();
     }
 
+    /**
+     * Checks whether the packet has been to a router, in constant time.
+     * 
+     * @param router
+     *            A router in the same Topology as the packet.
+     */
     public boolean hasVisited(Router router) {
-	return history.contains(router);
+	return visited.contains(router.getIndex());
     }
 
     @Override
     public int hashCode() {
-	final int prime = 31;
-	int result = 1;
-	result = prime * result
-		+ ((packetID == null) ? 0 : packetID.hashCode());
-	return result;
+	return Long.hashCode(packetID);
     }
 
     @Override
@@ -108,12 +136,7 @@ public class Packet extends Observable {
 	if (getClass() != obj.getClass())
 	    return false;
 	Packet other = (Packet) obj;
-	if (packetID == null) {
-	    if (other.packetID != null)
-		return false;
-	} else if (!packetID.equals(other.packetID))
-	    return false;
-	return true;
+	return packetID == other.packetID;
     }
 
 }
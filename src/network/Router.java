@@ -1,19 +1,30 @@
 package network;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+
+import common.LongHashSet;
 
 public class Router implements Comparable<Router> {
 
     private final String name;
-    private final Set<Router> connections;
-    private final List<Packet> packets;
-    private final Set<String> seenPacketIDs;
+    private final Set<Router> connections; // Copied into a CompactGraph
+    // The packets held since the start of the step, and the ones sent here
+    // during it. They are swapped at the end of the step, when every packet
+    // held since the start has been sent on or let go.
+    private List<Packet> packets;
+    private List<Packet> arrivals;
+    // What the latest refresh did, kept so that steps don't allocate lists
+    private final List<Packet> delivered;
+    private final List<Packet> dropped;
+    private final LongHashSet seenPacketIDs;
+    private SeenPacketFilter seenPacketFilter; // Used instead if not null
+    private Topology topology; // The Topology this Router is part of, if any
     private RoutingTable routingTable;
+    private int index; // Position in its Topology's getRouters()
+    private int connectivityIndex; // Set by its Topology's Connectivity
 
     public Router(String name) throws IllegalArgumentException {
 	if (name.length() == 0) {
@@ -21,19 +32,76 @@ public class Router implements Comparable<Router> {
 	}
 
 	this.name = name;
-	connections = new HashSet<>();
+	connections = new TreeSet<>(); // In name order, however they were added
 	packets = new ArrayList<>();
-	seenPacketIDs = new HashSet<>();
+	arrivals = new ArrayList<>();
+	delivered = new ArrayList<>();
+	dropped = new ArrayList<>();
+	seenPacketIDs = new LongHashSet();
+	seenPacketFilter = null;
     }
 
     public String getName() {
 	return name;
     }
 
+    /**
+     * @return The router's position in the array returned by its Topology's
+     *         getRouters(), which is only up to date once that has been
+     *         called since the last router was added or removed.
+     */
+    public int getIndex() {
+	return index;
+    }
+
+    protected void setIndex(int index) {
+	this.index = index;
+    }
+
+    protected int getConnectivityIndex() {
+	return connectivityIndex;
+    }
+
+    protected void setConnectivityIndex(int connectivityIndex) {
+	this.connectivityIndex = connectivityIndex;
+    }
+
     public Set<Router> getConnections() {
 	return connections;
     }
 
+    /**
+     * @return The number of routers this one is connected to.
+     */
+    public int getDegree() {
+	return connections.size();
+    }
+
+    /**
+     * Gets a connection by its position in name order. For a router in a
+     * Topology this is read from the Topology's CompactGraph in constant time,
+     * so it is the quickest way to walk the connections while stepping.
+     * 
+     * @param i
+     *            The position of the connection, from 0 to getDegree() - 1.
+     * @return The connected router.
+     */
+    public Router getConnection(int i) {
+	if (topology == null) {
+	    int position = 0;
+	    for (Router connection : connections) {
+		if (position++ == i) {
+		    return connection;
+		}
+	    }
+	    throw new IndexOutOfBoundsException("Connection " + i + " of "
+		    + connections.size());
+	}
+
+	CompactGraph graph = topology.getGraph();
+	return graph.getRouters()[graph.getNeighbour(index, i)];
+    }
+
     public List<Packet> getPackets() {
 	return packets;
     }
@@ -42,6 +110,10 @@ public class Router implements Comparable<Router> {
 	this.routingTable = routingTable;
     }
 
+    public RoutingTable getRoutingTable() {
+	return routingTable;
+    }
+
     public Router getNextHop(Router destination) {
 	return routingTable.getNext(destination);
     }
@@ -58,94 +130,212 @@ public class Router implements Comparable<Router> {
 	return connections.contains(router);
     }
 
-    public List<Packet> getNonStalePackets() {
-	List<Packet> nonStalePackets = new ArrayList<>();
-	for (Packet packet : packets) {
-	    if (!packet.isStale())
-		nonStalePackets.add(packet);
-	}
-
-	return nonStalePackets;
+    protected void setTopology(Topology topology) {
+	this.topology = topology;
     }
 
-    private List<Packet> getStalePackets() {
-	List<Packet> stalePackets = new ArrayList<>();
-	for (Packet packet : packets) {
-	    if (packet.isStale()) {
-		stalePackets.add(packet);
-	    }
-	}
+    protected Topology getTopology() {
+	return topology;
+    }
 
-	return stalePackets;
+    /**
+     * @return True if the router holds no packets and none have been sent to
+     *         it this step.
+     */
+    public boolean isIdle() {
+	return packets.isEmpty() && arrivals.isEmpty();
     }
 
+    /**
+     * Adds a packet to the ones the router holds, between steps.
+     */
     protected void addPacket(Packet packet) {
+	if (isIdle() && topology != null) {
+	    topology.activate(this);
+	}
 	packets.add(packet);
     }
 
+    /**
+     * Adds a packet sent to the router during a step, which it holds from the
+     * end of the step.
+     */
+    protected void receivePacket(Packet packet) {
+	if (isIdle() && topology != null) {
+	    topology.activate(this);
+	}
+	arrivals.add(packet);
+    }
+
+    /**
+     * Removes the packet itself rather than the first one with its ID, since
+     * a router can hold several copies of a flooded packet. This searches the
+     * router's queues, so a step doesn't use it: the packets held since the
+     * start of a step are all let go together at the end of it.
+     */
     public void dropPacket(Packet packet) {
-	if (packets.contains(packet)) {
-	    packets.remove(packet);
+	if (!remove(packets, packet)) {
+	    remove(arrivals, packet);
 	}
     }
 
+    private static boolean remove(List<Packet> queue, Packet packet) {
+	for (int i = 0; i < queue.size(); i++) {
+	    if (queue.get(i) == packet) {
+		queue.remove(i);
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Takes a packet out of this router and sends it to another one. A step
+     * sends packets with {@link Packet#sendTo(Router)} instead, which leaves
+     * them in this router's queue until the end of the step.
+     */
     public void sendPacket(Packet packet, Router destination) {
-	packets.remove(packet);
+	dropPacket(packet);
 	packet.sendTo(destination);
     }
 
+    /**
+     * Lets go of the packets held since the start of the step, which have all
+     * been sent on or dropped by now, and holds the ones that arrived during
+     * it instead.
+     */
+    protected void endStep() {
+	List<Packet> sent = packets;
+	sent.clear();
+	packets = arrivals;
+	arrivals = sent;
+    }
+
+    /**
+     * Drops the packets whose IDs the router has already seen.
+     * 
+     * @return The packets dropped. The list is reused by the next refresh or
+     *         drop, so it must be read before then.
+     */
     public List<Packet> dropRepeatedPackets() {
-	List<Packet> droppedPackets = new ArrayList<>();
+	dropped.clear();
 
-	for (Packet packet : packets) {
-	    if (seenPacketIDs.contains(packet.getID())) {
-		droppedPackets.add(packet);
+	int kept = 0;
+	for (int i = 0; i < packets.size(); i++) {
+	    Packet packet = packets.get(i);
+	    if (hasSeen(packet.getID())) {
+		dropped.add(packet);
+	    } else {
+		packets.set(kept++, packet);
 	    }
 	}
-	packets.removeAll(droppedPackets);
+	truncate(packets, kept);
 
-	return droppedPackets;
+	return dropped;
     }
 
-    public Map<String, List<Packet>> refreshPackets() {
-	Map<String, List<Packet>> result = new HashMap<>();
-	List<Packet> removedPackets = new ArrayList<>();
-	List<Packet> droppedPackets = new ArrayList<>();
-
-	for (Packet packet : packets) {
+    /**
+     * Takes out the packets that have reached this router as their
+     * destination, and marks every packet's ID as seen. A packet that has
+     * already been delivered here is dropped instead. The packets delivered
+     * and dropped are kept in lists that are reused by the next refresh, so
+     * they must be read before then.
+     * 
+     * @see #getDeliveredPackets()
+     * @see #getDroppedPackets()
+     */
+    public void refreshPackets() {
+	delivered.clear();
+	dropped.clear();
+
+	// Keep the packets still on their way in one pass, in the same order
+	int kept = 0;
+	for (int i = 0; i < packets.size(); i++) {
+	    Packet packet = packets.get(i);
 	    if (packet.destinationReached()) {
-		if (seenPacketIDs.contains(packet.getID())) {
-		    droppedPackets.add(packet);
+		if (hasSeen(packet.getID())) {
+		    dropped.add(packet);
 		} else {
-		    removedPackets.add(packet);
+		    delivered.add(packet);
 		}
 	    } else {
-		packet.unstale();
+		packets.set(kept++, packet);
 	    }
 
-	    seenPacketIDs.add(packet.getID());
+	    markSeen(packet.getID());
+	}
+	truncate(packets, kept);
+    }
+
+    private static void truncate(List<Packet> queue, int size) {
+	for (int i = queue.size() - 1; i >= size; i--) {
+	    queue.remove(i);
 	}
+    }
+
+    /**
+     * @return The packets delivered by the latest refresh.
+     */
+    public List<Packet> getDeliveredPackets() {
+	return delivered;
+    }
 
-	// TODO: Make this way less junk-y
-	packets.removeAll(droppedPackets);
-	result.put("dropped", droppedPackets);
-	packets.removeAll(removedPackets);
-	result.put("removed", removedPackets);
-	return result;
+    /**
+     * @return The packets dropped by the latest refresh or drop of repeats.
+     */
+    public List<Packet> getDroppedPackets() {
+	return dropped;
     }
 
-    public void unsendPackets() {
-	for (Packet packet : getStalePackets()) {
-	    packets.remove(packet);
-	    seenPacketIDs.remove(packet.getID());
-	    packet.unsend();
-	    packet.getCurrentRouter().seenPacketIDs.remove(packet.getID());
+    private boolean hasSeen(long packetID) {
+	return (seenPacketFilter == null) ? seenPacketIDs.contains(packetID)
+		: seenPacketFilter.contains(packetID);
+    }
+
+    private void markSeen(long packetID) {
+	if (seenPacketFilter == null) {
+	    seenPacketIDs.add(packetID);
+	} else {
+	    seenPacketFilter.add(packetID);
 	}
     }
 
+    /**
+     * @return Every packet ID this router has seen, or nothing if it keeps
+     *         them in a filter instead.
+     */
+    protected LongHashSet getSeenPacketIDs() {
+	return seenPacketIDs;
+    }
+
+    /**
+     * @return The filter of packet IDs seen, or null if they are all kept.
+     */
+    protected SeenPacketFilter getSeenPacketFilter() {
+	return seenPacketFilter;
+    }
+
+    /**
+     * Switches between keeping every packet ID seen and keeping them in a
+     * filter, forgetting every ID seen so far.
+     * 
+     * @param filter
+     *            The filter to use, or null to keep every ID.
+     */
+    protected void setSeenPacketFilter(SeenPacketFilter filter) {
+	seenPacketIDs.clear();
+	seenPacketFilter = filter;
+    }
+
     protected void resetPackets() {
 	packets.clear();
+	arrivals.clear();
+	delivered.clear();
+	dropped.clear();
 	seenPacketIDs.clear();
+	if (seenPacketFilter != null) {
+	    seenPacketFilter.clear();
+	}
     }
 
     @Override
@@ -158,6 +348,15 @@ public class Router implements Comparable<Router> {
 	return name.compareTo(router.name);
     }
 
+    /**
+     * Routers are equal only to themselves, but hash by name so that sets of
+     * Routers iterate in the same order on every run.
+     */
+    @Override
+    public int hashCode() {
+	return name.hashCode();
+    }
+
     @Override
     public String toString() {
 	return name;
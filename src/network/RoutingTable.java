@@ -1,23 +1,25 @@
 package network;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * The next hop from a router towards every other router in its Topology, kept
+ * as an array of router indices rather than a map.
+ */
 public class RoutingTable {
 
-    private final Map<Router, Router> table;
+    private final Router[] routers;
+    private final int[] next;
 
     public RoutingTable(Topology topology, Router root) {
-	table = new HashMap<>();
-	SpanningTree spanningTree = new SpanningTree(root);
-
-	table.put(root, root);
-	for (Router router : topology) {
-	    table.put(router, spanningTree.getNextHop(router));
-	}
+	CompactGraph graph = topology.getGraph();
+	routers = graph.getRouters();
+	next = graph.getNextHops(root.getIndex());
     }
 
     public Router getNext(Router destination) {
-	return table.get(destination);
+	int i = destination.getIndex();
+	if (i >= routers.length || routers[i] != destination || next[i] == -1) {
+	    return null;
+	}
+	return routers[next[i]];
     }
 }
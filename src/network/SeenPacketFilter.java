@@ -0,0 +1,182 @@
+package network;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An approximate set of the packet IDs a router has seen, for suppressing
+ * flooded duplicates in a fixed amount of memory. IDs are added to a Bloom
+ * filter until it holds its capacity; then it becomes the previous
+ * generation and an empty filter takes its place. An ID is remembered for at
+ * least capacity more IDs and at most twice that, after which it is
+ * forgotten.
+ * <p>
+ * While an ID is remembered, it is always found. An ID that was never added
+ * is wrongly found about once in a thousand checks when both filters are
+ * full, and such a packet is dropped as though it were a duplicate.
+ */
+class SeenPacketFilter {
+
+    private static final int BITS_PER_ID = 16;
+    private static final int HASH_COUNT = 8;
+    private static final int MAXIMUM_CAPACITY = 1 << 26; // 2^30 bits each
+
+    private final int capacity;
+    private long[] current;
+    private long[] previous;
+    private int count; // IDs added to current
+
+    /**
+     * @param capacity
+     *            The number of IDs in each generation.
+     * @throws IllegalArgumentException
+     *             If the capacity isn't positive, or is too big.
+     */
+    public SeenPacketFilter(int capacity) throws IllegalArgumentException {
+	this.capacity = checkCapacity(capacity);
+	// A power of two, so that bits can be picked with a mask
+	int words = 1;
+	while ((words << 6) < capacity * BITS_PER_ID) {
+	    words <<= 1;
+	}
+	current = new long[words];
+	previous = new long[words];
+	count = 0;
+    }
+
+    /**
+     * @return The capacity, if it is one a filter can have.
+     * @throws IllegalArgumentException
+     *             If the capacity isn't positive, or is too big.
+     */
+    public static int checkCapacity(int capacity)
+	    throws IllegalArgumentException {
+	if (capacity < 1 || capacity > MAXIMUM_CAPACITY) {
+	    throw new IllegalArgumentException(
+		    "A seen packet filter needs a capacity from 1 to "
+			    + MAXIMUM_CAPACITY);
+	}
+	return capacity;
+    }
+
+    public SeenPacketFilter(SeenPacketFilter filter) {
+	capacity = filter.capacity;
+	current = filter.current.clone();
+	previous = filter.previous.clone();
+	count = filter.count;
+    }
+
+    public int getCapacity() {
+	return capacity;
+    }
+
+    public boolean isEmpty() {
+	return count == 0 && isClear(previous);
+    }
+
+    private static boolean isClear(long[] bits) {
+	for (long word : bits) {
+	    if (word != 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    public boolean contains(long packetID) {
+	return contains(current, packetID) || contains(previous, packetID);
+    }
+
+    private static boolean contains(long[] bits, long packetID) {
+	long hash = mix(packetID);
+	int mask = (bits.length << 6) - 1;
+	for (int i = 0; i < HASH_COUNT; i++) {
+	    int bit = probe(hash, i) & mask;
+	    if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    public void add(long packetID) {
+	if (count == capacity) {
+	    long[] expired = previous;
+	    previous = current;
+	    Arrays.fill(expired, 0);
+	    current = expired;
+	    count = 0;
+	}
+
+	long hash = mix(packetID);
+	int mask = (current.length << 6) - 1;
+	for (int i = 0; i < HASH_COUNT; i++) {
+	    int bit = probe(hash, i) & mask;
+	    current[bit >>> 6] |= 1L << bit;
+	}
+	count++;
+    }
+
+    public void clear() {
+	Arrays.fill(current, 0);
+	Arrays.fill(previous, 0);
+	count = 0;
+    }
+
+    /**
+     * Spreads the bits of an ID, since IDs are consecutive.
+     */
+    private static long mix(long packetID) {
+	long hash = (packetID ^ (packetID >>> 30)) * 0xbf58476d1ce4e5b9L;
+	hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+	return hash ^ (hash >>> 31);
+    }
+
+    /**
+     * @return The i-th bit position for an ID, from the two halves of its
+     *         hash.
+     */
+    private static int probe(long hash, int i) {
+	return (int) hash + i * ((int) (hash >>> 32) | 1);
+    }
+
+    /**
+     * Writes the filter in binary; the capacity is written separately.
+     */
+    public void write(DataOutput out) throws IOException {
+	out.writeInt(count);
+	for (long word : current) {
+	    out.writeLong(word);
+	}
+	for (long word : previous) {
+	    out.writeLong(word);
+	}
+    }
+
+    /**
+     * Reads a filter written by {@link #write(DataOutput)}.
+     *
+     * @param capacity
+     *            The capacity of the filter that was written.
+     * @throws IOException
+     *             If the count is out of range.
+     */
+    public static SeenPacketFilter read(ByteBuffer in, int capacity)
+	    throws IOException {
+	SeenPacketFilter filter = new SeenPacketFilter(capacity);
+	filter.count = in.getInt();
+	if (filter.count < 0 || filter.count > capacity) {
+	    throw new IOException("Seen packet filter holds " + filter.count
+		    + " IDs out of " + capacity);
+	}
+	for (int i = 0; i < filter.current.length; i++) {
+	    filter.current[i] = in.getLong();
+	}
+	for (int i = 0; i < filter.previous.length; i++) {
+	    filter.previous[i] = in.getLong();
+	}
+	return filter;
+    }
+}
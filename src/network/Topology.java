@@ -1,36 +1,196 @@
 package network;
 
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Observable;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.TreeSet;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
+import common.Counter;
 import common.TopologyUpdateEvent;
 import common.TopologyUpdateEvent.TopologyUpdate;
 
 public class Topology extends Observable implements Iterable<Router> {
 
     private final Set<Router> network;
+    private Router[] routers; // Cached copy of network, null when stale
+    private CompactGraph graph; // Null when stale
+    // The routers holding packets, by index, or null until getRouters() is
+    // called again after the routers change
+    private boolean[] isActive;
+    private int[] active;
+    private int activeCount;
+    private Router[] activeRouters; // Reused by findActiveRouters()
+    private final Connectivity connectivity;
     private int edgeCount;
+    private int seenPacketFilterCapacity; // 0 if routers keep every ID seen
 
     public Topology() {
 	network = new TreeSet<>();
+	routers = null;
+	graph = null;
+	isActive = null;
+	active = null;
+	activeCount = 0;
+	activeRouters = null;
+	connectivity = new Connectivity();
 	edgeCount = 0;
+	seenPacketFilterCapacity = 0;
+    }
+
+    /**
+     * Creates a copy of a Topology with new routers of the same names,
+     * connected in the same way. Packets are not copied.
+     * 
+     * @param topology
+     *            The Topology to copy.
+     */
+    public Topology(Topology topology) {
+	this();
+	seenPacketFilterCapacity = topology.seenPacketFilterCapacity;
+
+	for (Router router : topology) {
+	    addRouter(new Router(router.getName()));
+	}
+
+	// The copies have the same names, so the same indices
+	Router[] routers = getRouters();
+	CompactGraph graph = topology.getGraph();
+	for (int i = 0; i < routers.length; i++) {
+	    for (int j = graph.getStart(i); j < graph.getEnd(i); j++) {
+		int neighbour = graph.getNeighbours()[j];
+		if (i < neighbour) {
+		    addEdge(routers[i], routers[neighbour]);
+		}
+	    }
+	}
     }
 
     public Set<Router> getNetwork() {
 	return network;
     }
 
+    /**
+     * @return The routers in the network, in the same order as iterating over
+     *         the Topology. The array is shared until the network changes, so
+     *         it must not be modified. Each router's index is its position in
+     *         the array.
+     */
+    public Router[] getRouters() {
+	if (routers == null) {
+	    routers = network.toArray(new Router[network.size()]);
+	    for (int i = 0; i < routers.length; i++) {
+		routers[i].setIndex(i);
+	    }
+	    isActive = null; // The indices have changed
+	}
+	return routers;
+    }
+
+    /**
+     * @return The connections between the routers as they are now, indexed
+     *         the same way as {@link #getRouters()}. The graph is shared until
+     *         the routers or edges change.
+     */
+    public CompactGraph getGraph() {
+	if (graph == null) {
+	    graph = new CompactGraph(getRouters());
+	}
+	return graph;
+    }
+
+    /**
+     * Finds the routers that are holding packets and puts them at the start
+     * of {@link #getActiveRouters()}, in the same order as iterating over the
+     * Topology. Every other router is idle and has nothing to do in a step.
+     * This takes time in proportion to the number of active routers, not to
+     * the size of the topology.
+     * 
+     * @return The number of active routers.
+     */
+    public int findActiveRouters() {
+	indexActiveRouters();
+	int count = 0;
+	for (int i = 0; i < activeCount; i++) {
+	    int index = active[i];
+	    if (routers[index].isIdle()) {
+		isActive[index] = false;
+	    } else {
+		active[count++] = index;
+	    }
+	}
+	activeCount = count;
+
+	// Routers are activated in whatever order packets reach them
+	Arrays.sort(active, 0, activeCount);
+	for (int i = 0; i < activeCount; i++) {
+	    activeRouters[i] = routers[active[i]];
+	}
+	return activeCount;
+    }
+
+    /**
+     * @return An array reused from step to step, which starts with the
+     *         routers found by the last call to {@link #findActiveRouters()}.
+     */
+    public Router[] getActiveRouters() {
+	indexActiveRouters();
+	return activeRouters;
+    }
+
+    /**
+     * Called by a Router in this Topology when it goes from holding no packets
+     * to holding or receiving some. Routers are only dropped from the active
+     * routers once findActiveRouters() finds them idle.
+     */
+    protected void activate(Router router) {
+	indexActiveRouters();
+	int index = router.getIndex();
+	if (!isActive[index]) {
+	    isActive[index] = true;
+	    active[activeCount++] = index;
+	}
+    }
+
+    /**
+     * Works out which routers are active from scratch, if the routers have
+     * changed since it was last done.
+     */
+    private void indexActiveRouters() {
+	Router[] routers = getRouters();
+	if (isActive == null) {
+	    isActive = new boolean[routers.length];
+	    active = new int[routers.length];
+	    activeRouters = new Router[routers.length];
+	    activeCount = 0;
+	    for (int i = 0; i < routers.length; i++) {
+		if (!routers[i].isIdle()) {
+		    isActive[i] = true;
+		    active[activeCount++] = i;
+		}
+	    }
+	}
+    }
+
     public boolean addRouter(Router router) {
 	if (!network.add(router)) {
 	    return false;
 	} else {
+	    routers = null;
+	    graph = null;
+	    router.setTopology(this);
+	    router.setConnectivityIndex(connectivity.add());
+	    if (seenPacketFilterCapacity > 0) {
+		router.setSeenPacketFilter(new SeenPacketFilter(
+			seenPacketFilterCapacity));
+	    } else if (router.getSeenPacketFilter() != null) {
+		router.setSeenPacketFilter(null);
+	    }
+	    if (!router.getConnections().isEmpty()) {
+		connectivity.invalidate(); // It was connected before it was added
+	    }
 	    setChanged();
 	    notifyObservers(new TopologyUpdateEvent(
 		    TopologyUpdate.ROUTER_ADDED, router, network.size()));
@@ -40,6 +200,10 @@ public class Topology extends Observable implements Iterable<Router> {
 
     public boolean removeRouter(Router router) {
 	if (network.remove(router)) {
+	    routers = null;
+	    graph = null;
+	    connectivity.invalidate();
+	    router.setTopology(null);
 	    for (Router neighbour : router.getConnections()) {
 		neighbour.disconnectFrom(router);
 	    }
@@ -55,6 +219,13 @@ public class Topology extends Observable implements Iterable<Router> {
 
     public void addEdge(Router router1, Router router2) {
 	if (router1.connectTo(router2)) {
+	    graph = null;
+	    if (router1.getTopology() == this && router2.getTopology() == this) {
+		connectivity.union(router1.getConnectivityIndex(),
+			router2.getConnectivityIndex());
+	    } else {
+		connectivity.invalidate();
+	    }
 	    edgeCount++;
 	    setChanged();
 	    notifyObservers(new TopologyUpdateEvent(TopologyUpdate.EDGE_ADDED,
@@ -65,6 +236,8 @@ public class Topology extends Observable implements Iterable<Router> {
     public void removeEdge(Router router1, Router router2) {
 	if (router1.disconnectFrom(router2)) {
 	    router2.disconnectFrom(router1);
+	    graph = null;
+	    connectivity.invalidate();
 	    edgeCount--;
 	    setChanged();
 	    notifyObservers(new TopologyUpdateEvent(
@@ -81,74 +254,128 @@ public class Topology extends Observable implements Iterable<Router> {
 	return network.isEmpty();
     }
 
+    public int getEdgeCount() {
+	return edgeCount;
+    }
+
     public boolean hasEdges() {
 	return edgeCount > 0;
     }
 
-    public boolean isValid() {
-	if (network.size() < 2) {
-	    return false;
-	}
-
-	Set<Router> visited = new HashSet<>();
-	visited.add(routerAtIndex(0));
-	boolean routersAdded = true;
-
-	while (routersAdded) {
-	    routersAdded = false;
-	    Collection<Router> alreadyVisited = new HashSet<>(visited);
-	    for (Router router : alreadyVisited) {
-		routersAdded |= visited.addAll(router.getConnections());
-	    }
-	}
+    /**
+     * @return The number of groups of routers that are connected to each
+     *         other but not to any other router. This is kept up to date as
+     *         routers and edges are added, and only worked out again from
+     *         scratch after something has been removed.
+     */
+    public int getComponentCount() {
+	return connectivity.getComponentCount(this);
+    }
 
-	return visited.containsAll(network);
+    /**
+     * @return True if there are at least two routers and every router can
+     *         reach every other one.
+     */
+    public boolean isValid() {
+	return network.size() >= 2 && getComponentCount() == 1;
     }
 
-    private Router routerAtIndex(int index) {
-	int count = 0;
-	for (Router router : network) {
-	    if (count == index)
-		return router;
-	    else
-		count++;
+    /**
+     * Injects a batch of packets at once, without telling observers about
+     * them. The packets are numbered in order from the packet count.
+     * 
+     * @param sources
+     *            The index in {@link #getRouters()} of the router to inject
+     *            each packet at.
+     * @param destinations
+     *            The index of the router each packet is for.
+     * @param count
+     *            The number of packets to inject.
+     * @param packetCount
+     *            The number of packets injected so far, which is advanced
+     *            past the new packets.
+     * @return The injected packets.
+     */
+    public Packet[] injectPackets(int[] sources, int[] destinations,
+	    int count, Counter packetCount) {
+	Router[] routers = getRouters();
+	Packet[] packets = new Packet[count];
+	for (int i = 0; i < count; i++) {
+	    Router source = routers[sources[i]];
+	    packets[i] = new Packet(packetCount.longValue(), source,
+		    routers[destinations[i]]);
+	    source.addPacket(packets[i]);
+	    packetCount.increment();
 	}
-
-	return null;
+	return packets;
     }
 
-    public Packet injectPacket(String packetID) {
-	int destIndex = ThreadLocalRandom.current().nextInt(0, network.size());
-	Router dest = routerAtIndex(destIndex);
-
-	int srcIndex;
-	do {
-	    srcIndex = ThreadLocalRandom.current().nextInt(0, network.size());
-	} while (srcIndex == destIndex);
-	Router src = routerAtIndex(srcIndex);
-
-	Packet packet = new Packet(packetID, src, dest);
-	src.addPacket(packet);
+    public void injectPacketCopy(Packet packet, Router router) {
+	router.addPacket(packet);
+    }
 
-	setChanged();
-	notifyObservers(new TopologyUpdateEvent(TopologyUpdate.PACKET_INJECTED,
-		packet));
+    /**
+     * Adds a packet to the ones sent to a router during the step being taken,
+     * for playing back a step that has been recorded.
+     */
+    public void receivePacketCopy(Packet packet, Router router) {
+	router.receivePacket(packet);
+    }
 
-	return packet;
+    /**
+     * Ends a step. Every router lets go of the packets it held since the
+     * start of the step, which must all have been delivered, dropped or sent
+     * on, and holds the ones sent to it during the step instead.
+     */
+    public void endStep() {
+	indexActiveRouters();
+	for (int i = 0; i < activeCount; i++) {
+	    routers[active[i]].endStep();
+	}
     }
 
-    public void injectPacketCopy(Packet packet, Router router) {
-	router.addPacket(packet);
+    /**
+     * @return The number of packet IDs in each generation of the routers'
+     *         seen packet filters, or 0 if they keep every ID they see.
+     */
+    public int getSeenPacketFilterCapacity() {
+	return seenPacketFilterCapacity;
+    }
 
-	setChanged();
-	notifyObservers(new TopologyUpdateEvent(TopologyUpdate.PACKET_INJECTED,
-		packet));
+    /**
+     * Has every router remember the packet IDs it has seen in a fixed-size,
+     * approximate filter instead of keeping every one, or go back to keeping
+     * every one. Either way the routers forget the IDs seen so far.
+     * 
+     * @param capacity
+     *            The number of IDs in each generation of the filter, or 0 to
+     *            keep every ID.
+     * @throws IllegalArgumentException
+     *             If the capacity is negative or too big.
+     * @see SeenPacketFilter
+     */
+    public void setSeenPacketFilterCapacity(int capacity)
+	    throws IllegalArgumentException {
+	if (capacity != 0) {
+	    SeenPacketFilter.checkCapacity(capacity);
+	}
+	seenPacketFilterCapacity = capacity;
+	for (Router router : network) {
+	    router.setSeenPacketFilter((capacity == 0) ? null
+		    : new SeenPacketFilter(capacity));
+	}
     }
 
     public void resetPackets() {
 	for (Router router : network) {
 	    router.resetPackets();
 	}
+	if (isActive != null) {
+	    for (int i = 0; i < activeCount; i++) {
+		isActive[active[i]] = false;
+	    }
+	    activeCount = 0;
+	}
     }
 
     public Object[] toArray() {
@@ -0,0 +1,151 @@
+package network;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * Reads and writes Topologies as XML files of the form:
+ *
+ * <pre>
+ * &lt;topology&gt;
+ *     &lt;router name="A" /&gt;
+ *     &lt;router name="B" /&gt;
+ *     &lt;edge source="A" destination="B" /&gt;
+ * &lt;/topology&gt;
+ * </pre>
+ */
+public class TopologyFile {
+
+    private static final String TOPOLOGY = "topology";
+    private static final String ROUTER = "router";
+    private static final String EDGE = "edge";
+    private static final String NAME = "name";
+    private static final String SOURCE = "source";
+    private static final String DESTINATION = "destination";
+
+    private TopologyFile() {
+    }
+
+    /**
+     * Builds a new Topology from an XML file. The Topology is built before
+     * anything can observe it, so no update events are fired while loading.
+     *
+     * @param file
+     *            The file to read.
+     * @return The loaded Topology.
+     * @throws IOException
+     *             If the file can't be read or isn't a valid topology.
+     */
+    public static Topology load(File file) throws IOException {
+	Document document;
+	try {
+	    DocumentBuilder builder = DocumentBuilderFactory.newInstance()
+		    .newDocumentBuilder();
+	    document = builder.parse(file);
+	} catch (ParserConfigurationException | SAXException ex) {
+	    throw new IOException("Could not parse " + file, ex);
+	}
+
+	Element root = document.getDocumentElement();
+	if (!TOPOLOGY.equals(root.getTagName())) {
+	    throw new IOException(file + " is not a topology file");
+	}
+
+	Topology topology = new Topology();
+	Map<String, Router> routers = new HashMap<>();
+
+	NodeList routerElements = root.getElementsByTagName(ROUTER);
+	for (int i = 0; i < routerElements.getLength(); i++) {
+	    String name = ((Element) routerElements.item(i)).getAttribute(NAME);
+	    try {
+		Router router = new Router(name);
+		if (topology.addRouter(router)) {
+		    routers.put(name, router);
+		}
+	    } catch (IllegalArgumentException ex) {
+		throw new IOException("Router " + i + " has no name", ex);
+	    }
+	}
+
+	NodeList edgeElements = root.getElementsByTagName(EDGE);
+	for (int i = 0; i < edgeElements.getLength(); i++) {
+	    Element edge = (Element) edgeElements.item(i);
+	    Router source = routers.get(edge.getAttribute(SOURCE));
+	    Router destination = routers.get(edge.getAttribute(DESTINATION));
+
+	    if (source == null || destination == null) {
+		throw new IOException("Edge " + i
+			+ " refers to a router that does not exist");
+	    }
+	    topology.addEdge(source, destination);
+	}
+
+	return topology;
+    }
+
+    /**
+     * Writes a Topology to an XML file, replacing the file if it exists.
+     *
+     * @param topology
+     *            The Topology to save.
+     * @param file
+     *            The file to write.
+     * @throws IOException
+     *             If the file can't be written.
+     */
+    public static void save(Topology topology, File file) throws IOException {
+	try {
+	    Document document = DocumentBuilderFactory.newInstance()
+		    .newDocumentBuilder().newDocument();
+	    Element root = document.createElement(TOPOLOGY);
+	    document.appendChild(root);
+
+	    for (Router router : topology) {
+		Element element = document.createElement(ROUTER);
+		element.setAttribute(NAME, router.getName());
+		root.appendChild(element);
+	    }
+
+	    // Every edge is stored on both of its routers, only write it once
+	    Set<Router> written = new HashSet<>();
+	    for (Router router : topology) {
+		for (Router neighbour : router.getConnections()) {
+		    if (!written.contains(neighbour)) {
+			Element element = document.createElement(EDGE);
+			element.setAttribute(SOURCE, router.getName());
+			element.setAttribute(DESTINATION, neighbour.getName());
+			root.appendChild(element);
+		    }
+		}
+		written.add(router);
+	    }
+
+	    Transformer transformer = TransformerFactory.newInstance()
+		    .newTransformer();
+	    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+	    transformer.transform(new DOMSource(document), new StreamResult(
+		    file));
+	} catch (ParserConfigurationException | TransformerException ex) {
+	    throw new IOException("Could not write " + file, ex);
+	}
+    }
+}
@@ -0,0 +1,226 @@
+package network;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the packets in a Topology: which packets each router is
+ * holding and which packet IDs it has seen, or its filter of them. The
+ * routers and edges are not part of it, since changing them starts the
+ * simulation over. A state can be restored any number of times, and is only
+ * ever restored to the Topology it was captured from, or to one read back
+ * from the same snapshot.
+ */
+public class TopologyState {
+
+    private final Router[] routers; // Routers holding packets or with IDs seen
+    private final Packet[][] packets;
+    private final long[][] seenPacketIDs;
+    private final int seenPacketFilterCapacity;
+    private final SeenPacketFilter[] seenPacketFilters; // Null if capacity 0
+
+    private TopologyState(Router[] routers, Packet[][] packets,
+	    long[][] seenPacketIDs, int seenPacketFilterCapacity,
+	    SeenPacketFilter[] seenPacketFilters) {
+	this.routers = routers;
+	this.packets = packets;
+	this.seenPacketIDs = seenPacketIDs;
+	this.seenPacketFilterCapacity = seenPacketFilterCapacity;
+	this.seenPacketFilters = seenPacketFilters;
+    }
+
+    /**
+     * @param topology
+     *            The topology to capture.
+     * @return The current state of the topology's packets.
+     */
+    public static TopologyState capture(Topology topology) {
+	List<Router> routers = new ArrayList<>();
+	List<Packet[]> packets = new ArrayList<>();
+	List<long[]> seenPacketIDs = new ArrayList<>();
+	int capacity = topology.getSeenPacketFilterCapacity();
+	List<SeenPacketFilter> seenPacketFilters = new ArrayList<>();
+
+	for (Router router : topology.getRouters()) {
+	    SeenPacketFilter filter = router.getSeenPacketFilter();
+	    if (router.getPackets().isEmpty()
+		    && router.getSeenPacketIDs().isEmpty()
+		    && (filter == null || filter.isEmpty())) {
+		continue;
+	    }
+
+	    Packet[] copies = new Packet[router.getPackets().size()];
+	    for (int i = 0; i < copies.length; i++) {
+		copies[i] = new Packet(router.getPackets().get(i));
+	    }
+
+	    routers.add(router);
+	    packets.add(copies);
+	    seenPacketIDs.add(router.getSeenPacketIDs().toArray());
+	    if (capacity > 0) {
+		seenPacketFilters.add(new SeenPacketFilter(filter));
+	    }
+	}
+
+	return new TopologyState(routers.toArray(new Router[routers.size()]),
+		packets.toArray(new Packet[packets.size()][]),
+		seenPacketIDs.toArray(new long[seenPacketIDs.size()][]),
+		capacity, (capacity == 0) ? null : seenPacketFilters
+			.toArray(new SeenPacketFilter[routers.size()]));
+    }
+
+    /**
+     * Puts the topology's packets back the way they were when this state was
+     * captured. Routers are given new copies of the packets, so that the state
+     * can be restored again later.
+     * 
+     * @param topology
+     *            The topology this state was captured from.
+     */
+    public void restore(Topology topology) {
+	if (topology.getSeenPacketFilterCapacity() != seenPacketFilterCapacity) {
+	    topology.setSeenPacketFilterCapacity(seenPacketFilterCapacity);
+	}
+	topology.resetPackets();
+
+	for (int i = 0; i < routers.length; i++) {
+	    for (Packet packet : packets[i]) {
+		routers[i].addPacket(new Packet(packet));
+	    }
+	    for (long packetID : seenPacketIDs[i]) {
+		routers[i].getSeenPacketIDs().add(packetID);
+	    }
+	    if (seenPacketFilters != null) {
+		routers[i].setSeenPacketFilter(new SeenPacketFilter(
+			seenPacketFilters[i]));
+	    }
+	}
+    }
+
+    /**
+     * Writes this state in binary, referring to routers by their position in
+     * the topology.
+     * 
+     * @param out
+     *            Where to write the state.
+     * @param topology
+     *            The topology this state was captured from.
+     * @throws IOException
+     *             If the state can't be written.
+     */
+    public void write(DataOutput out, Topology topology) throws IOException {
+	Map<Router, Integer> indices = new HashMap<>();
+	for (Router router : topology.getRouters()) {
+	    indices.put(router, indices.size());
+	}
+
+	out.writeInt(seenPacketFilterCapacity);
+	out.writeInt(routers.length);
+	for (int i = 0; i < routers.length; i++) {
+	    out.writeInt(indices.get(routers[i]));
+
+	    out.writeInt(packets[i].length);
+	    for (Packet packet : packets[i]) {
+		out.writeLong(packet.getID());
+		out.writeInt(indices.get(packet.getSource()));
+		out.writeInt(indices.get(packet.getDestination()));
+		out.writeInt(indices.get(packet.getCurrentRouter()));
+		out.writeLong(packet.getHops());
+
+		int[] visited = packet.getVisited();
+		out.writeInt(visited.length);
+		for (int router : visited) {
+		    out.writeInt(router);
+		}
+	    }
+
+	    if (seenPacketFilters != null) {
+		seenPacketFilters[i].write(out);
+	    } else {
+		out.writeInt(seenPacketIDs[i].length);
+		for (long packetID : seenPacketIDs[i]) {
+		    out.writeLong(packetID);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Reads a state written by {@link #write(DataOutput, Topology)}.
+     * 
+     * @param in
+     *            The buffer to read from.
+     * @param topology
+     *            A topology with the same routers, in the same order, as the
+     *            one the state was written from.
+     * @return The state that was read.
+     * @throws IOException
+     *             If the buffer doesn't hold a valid state.
+     */
+    public static TopologyState read(ByteBuffer in, Topology topology)
+	    throws IOException {
+	Router[] network = topology.getRouters();
+	try {
+	    int capacity = in.getInt();
+	    if (capacity != 0) {
+		SeenPacketFilter.checkCapacity(capacity);
+	    }
+	    Router[] routers = new Router[in.getInt()];
+	    Packet[][] packets = new Packet[routers.length][];
+	    long[][] seenPacketIDs = new long[routers.length][];
+	    SeenPacketFilter[] seenPacketFilters = (capacity == 0) ? null
+		    : new SeenPacketFilter[routers.length];
+
+	    for (int i = 0; i < routers.length; i++) {
+		routers[i] = readRouter(in, network);
+
+		packets[i] = new Packet[in.getInt()];
+		for (int j = 0; j < packets[i].length; j++) {
+		    long packetID = in.getLong();
+		    Router source = readRouter(in, network);
+		    Router destination = readRouter(in, network);
+		    Router current = readRouter(in, network);
+		    long hops = in.getLong();
+
+		    int[] visited = new int[in.getInt()];
+		    for (int k = 0; k < visited.length; k++) {
+			visited[k] = readRouter(in, network).getIndex();
+		    }
+		    packets[i][j] = new Packet(packetID, source, destination,
+			    current, hops, visited);
+		}
+
+		if (seenPacketFilters != null) {
+		    seenPacketIDs[i] = new long[0];
+		    seenPacketFilters[i] = SeenPacketFilter.read(in, capacity);
+		    continue;
+		}
+		seenPacketIDs[i] = new long[in.getInt()];
+		for (int j = 0; j < seenPacketIDs[i].length; j++) {
+		    seenPacketIDs[i][j] = in.getLong();
+		}
+	    }
+
+	    return new TopologyState(routers, packets, seenPacketIDs,
+		    capacity, seenPacketFilters);
+	} catch (BufferUnderflowException | NegativeArraySizeException
+		| IllegalArgumentException ex) {
+	    throw new IOException("Corrupt topology state", ex);
+	}
+    }
+
+    private static Router readRouter(ByteBuffer in, Router[] network)
+	    throws IOException {
+	int index = in.getInt();
+	if (index < 0 || index >= network.length) {
+	    throw new IOException("No router at index " + index);
+	}
+	return network[index];
+    }
+}
@@ -0,0 +1,217 @@
+package network;
+
+import java.util.Arrays;
+
+/**
+ * The routers a packet has been to, by index in its Topology's getRouters().
+ * A short path is kept in a small open-addressing hash table of ints, and
+ * once the table would take more room than a bit for every router up to the
+ * highest index seen, or grows past a few dozen routers, the set switches to
+ * a bitset. Either way adding a router or checking for one takes constant
+ * time, however long the path is.
+ * <p>
+ * Copies share the table or bitset until one of them writes to it. The
+ * bitset is split into fixed-size chunks, and each set copies a chunk only
+ * when it first adds a router to it, so the many copies made by flooding cost
+ * a chunk each for the routers they go on to visit, rather than the whole
+ * set. A shared table is copied whole, but it is never big.
+ */
+class VisitedSet {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int MAXIMUM_TABLE_CAPACITY = 64;
+    private static final int CHUNK_SHIFT = 9; // 512 routers per chunk
+    private static final int CHUNK_WORDS = 1 << (CHUNK_SHIFT - 6);
+
+    private int[] table; // Null once the set is a bitset
+    // Null while the set is a table, and empty chunks are null
+    private long[][] chunks;
+    private boolean[] owned; // Chunks no other set shares
+    private Share share; // Whether the table or chunk array is shared
+    private int size;
+    private int max;
+
+    /**
+     * Marks the table or chunk array that one or more sets refer to as shared
+     * once any of them has been copied, so that each copies it before writing.
+     */
+    private static class Share {
+	private boolean isShared = false;
+    }
+
+    /**
+     * @param first
+     *            The index of the first router visited.
+     */
+    public VisitedSet(int first) {
+	table = new int[INITIAL_CAPACITY];
+	Arrays.fill(table, EMPTY);
+	chunks = null;
+	owned = null;
+	share = new Share();
+	size = 0;
+	max = 0;
+	add(first);
+    }
+
+    /**
+     * Copies a set in constant time, sharing its table or chunks until either
+     * set writes to them.
+     */
+    public VisitedSet(VisitedSet set) {
+	table = set.table;
+	chunks = set.chunks;
+	owned = null;
+	share = set.share;
+	share.isShared = true;
+	size = set.size;
+	max = set.max;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public boolean contains(int router) {
+	if (chunks != null) {
+	    int chunk = router >>> CHUNK_SHIFT;
+	    return chunk < chunks.length && chunks[chunk] != null
+		    && (chunks[chunk][word(router)] & (1L << router)) != 0;
+	}
+
+	int mask = table.length - 1;
+	for (int slot = hash(router) & mask;; slot = (slot + 1) & mask) {
+	    if (table[slot] == router) {
+		return true;
+	    } else if (table[slot] == EMPTY) {
+		return false;
+	    }
+	}
+    }
+
+    public void add(int router) {
+	if (contains(router)) {
+	    return;
+	}
+	max = Math.max(max, router);
+	size++;
+
+	if (chunks == null && size * 2 > table.length) {
+	    grow();
+	}
+	if (chunks != null) {
+	    set(router);
+	} else {
+	    if (share.isShared) {
+		table = table.clone();
+		share = new Share();
+	    }
+	    insert(table, router);
+	}
+    }
+
+    private void set(int router) {
+	int chunk = router >>> CHUNK_SHIFT;
+	if (share.isShared) {
+	    // None of the chunks are this set's to write to any more
+	    chunks = Arrays.copyOf(chunks, Math.max(chunk + 1, chunks.length));
+	    owned = new boolean[chunks.length];
+	    share = new Share();
+	} else if (chunk >= chunks.length) {
+	    chunks = Arrays.copyOf(chunks, chunk + 1);
+	    owned = Arrays.copyOf(owned, chunks.length);
+	}
+	if (!owned[chunk]) {
+	    chunks[chunk] = (chunks[chunk] == null) ? new long[CHUNK_WORDS]
+		    : chunks[chunk].clone();
+	    owned[chunk] = true;
+	}
+	chunks[chunk][word(router)] |= 1L << router;
+    }
+
+    private static int word(int router) {
+	return (router >>> 6) & (CHUNK_WORDS - 1);
+    }
+
+    /**
+     * Doubles the table, or turns it into a bitset if that would be no bigger
+     * or the table would be too big to copy cheaply.
+     */
+    private void grow() {
+	int capacity = table.length * 2;
+	share = new Share();
+	if (capacity > MAXIMUM_TABLE_CAPACITY
+		|| (max >>> 6) + 1 <= capacity / 2) {
+	    chunks = new long[(max >>> CHUNK_SHIFT) + 1][];
+	    owned = new boolean[chunks.length];
+	    for (int router : table) {
+		if (router != EMPTY) {
+		    set(router);
+		}
+	    }
+	    table = null;
+	} else {
+	    int[] grown = new int[capacity];
+	    Arrays.fill(grown, EMPTY);
+	    for (int router : table) {
+		if (router != EMPTY) {
+		    insert(grown, router);
+		}
+	    }
+	    table = grown;
+	}
+    }
+
+    private static void insert(int[] table, int router) {
+	int mask = table.length - 1;
+	int slot = hash(router) & mask;
+	while (table[slot] != EMPTY) {
+	    slot = (slot + 1) & mask;
+	}
+	table[slot] = router;
+    }
+
+    private static int hash(int router) {
+	int hash = router * 0x9e3779b9;
+	return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return Whether the set refers to the same table or chunk array as
+     *         another.
+     */
+    boolean sharesWith(VisitedSet set) {
+	return table == set.table && chunks == set.chunks;
+    }
+
+    /**
+     * @return The indices of the routers in the set, in no particular order.
+     */
+    public int[] toArray() {
+	int[] routers = new int[size];
+	int i = 0;
+	if (chunks != null) {
+	    for (int chunk = 0; chunk < chunks.length; chunk++) {
+		if (chunks[chunk] == null) {
+		    continue;
+		}
+		for (int word = 0; word < CHUNK_WORDS; word++) {
+		    long remaining = chunks[chunk][word];
+		    while (remaining != 0) {
+			routers[i++] = (chunk << CHUNK_SHIFT) + (word << 6)
+				+ Long.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+		    }
+		}
+	    }
+	} else {
+	    for (int router : table) {
+		if (router != EMPTY) {
+		    routers[i++] = router;
+		}
+	    }
+	}
+	return routers;
+    }
+}
@@ -0,0 +1,169 @@
+package simulation;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import simulation.StepEvents.Type;
+
+/**
+ * Writes the metrics of a run to CSV files as it goes: a row for every packet
+ * that reaches its destination, and a row of totals for every step. Each
+ * step's rows are written as soon as it is taken, so nothing builds up in
+ * memory however long the run is. Steps skipped as idle by the event engine
+ * have no row.
+ * <p>
+ * A packet moves one hop every step after the one it was injected in, and is
+ * delivered in the step after it arrives, so its injection step is worked out
+ * from its delivery step and hops rather than kept with every packet.
+ */
+public class CsvExporter implements StepListener, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer packets;
+    private final Writer steps;
+    private final StringBuilder row;
+    private IOException failure;
+
+    /**
+     * Creates the CSV files, replacing them if they exist, and writes their
+     * headers. The exporter still has to be added to the simulation as a
+     * StepListener.
+     *
+     * @param packetFile
+     *            The file to write a row to for every delivered packet, or
+     *            null to leave them out.
+     * @param stepFile
+     *            The file to write a row of totals to for every step, or null
+     *            to leave them out.
+     * @throws IOException
+     *             If a file can't be created.
+     */
+    public CsvExporter(File packetFile, File stepFile) throws IOException {
+	packets = (packetFile == null) ? null : open(packetFile);
+	try {
+	    steps = (stepFile == null) ? null : open(stepFile);
+	} catch (IOException ex) {
+	    if (packets != null) {
+		packets.close();
+	    }
+	    throw ex;
+	}
+	row = new StringBuilder();
+	failure = null;
+
+	write(packets, "id,source,destination,hops,injection_step,"
+		+ "delivery_step\n");
+	write(steps, "step,injected,delivered,dropped,transmitted,"
+		+ "delivered_hops\n");
+    }
+
+    private static Writer open(File file) throws IOException {
+	return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+		file), StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    @Override
+    public void stepTaken(StepDelta delta) {
+	StepEvents events = delta.getEvents();
+	String step = delta.getStepNumberString();
+	int injected = 0;
+	int delivered = 0;
+	int dropped = 0;
+	int transmitted = 0;
+	long deliveredHops = 0;
+
+	for (int i = 0; i < events.size(); i++) {
+	    Type type = events.getType(i);
+	    if (type == Type.INJECTED) {
+		injected++;
+	    } else if (type == Type.SENT) {
+		transmitted++;
+	    } else if (type == Type.DROPPED) {
+		dropped++;
+	    } else {
+		delivered++;
+		long hops = events.getHops(i);
+		deliveredHops += hops;
+
+		if (packets != null) {
+		    row.setLength(0);
+		    row.append(events.getPacketID(i)).append(',');
+		    appendField(events.getSource(i).getName());
+		    row.append(',');
+		    appendField(events.getDestination(i).getName());
+		    row.append(',').append(hops).append(',')
+			    .append(delta.getStepNumber() - hops - 1)
+			    .append(',').append(step).append('\n');
+		    write(packets, row);
+		}
+	    }
+	}
+
+	if (steps != null) {
+	    row.setLength(0);
+	    row.append(step).append(',').append(injected).append(',')
+		    .append(delivered).append(',').append(dropped).append(',')
+		    .append(transmitted).append(',').append(deliveredHops)
+		    .append('\n');
+	    write(steps, row);
+	}
+    }
+
+    /**
+     * Appends a field to the row, quoting it if it has anything in it that
+     * CSV treats specially.
+     */
+    private void appendField(String field) {
+	if (field.indexOf(',') < 0 && field.indexOf('"') < 0
+		&& field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+	    row.append(field);
+	} else {
+	    row.append('"').append(field.replace("\"", "\"\"")).append('"');
+	}
+    }
+
+    /**
+     * Writes to a file, keeping the first failure to be thrown from close()
+     * since it can't be thrown from stepTaken().
+     */
+    private void write(Writer writer, CharSequence text) {
+	if (writer == null || failure != null) {
+	    return;
+	}
+	try {
+	    writer.append(text);
+	} catch (IOException ex) {
+	    failure = ex;
+	}
+    }
+
+    /**
+     * Writes out what is left and closes the files.
+     *
+     * @throws IOException
+     *             If any of the rows couldn't be written.
+     */
+    @Override
+    public void close() throws IOException {
+	try {
+	    if (packets != null) {
+		packets.close();
+	    }
+	} finally {
+	    if (steps != null) {
+		steps.close();
+	    }
+	}
+
+	if (failure != null) {
+	    throw failure;
+	}
+    }
+}
@@ -0,0 +1,128 @@
+package simulation;
+
+import java.util.PriorityQueue;
+
+/**
+ * Drives a Simulation from a queue of timestamped events instead of taking
+ * every step in turn. Packet injections and hop arrivals are scheduled for
+ * the step they happen in, and the scheduler jumps straight from one event to
+ * the next, skipping the idle steps in between. With a large rate most steps
+ * have no packets in flight, so a run takes time in proportion to the packets
+ * routed rather than to the number of steps. Traffic that might inject
+ * packets in any step, such as Poisson arrivals, leaves no steps to skip.
+ * <p>
+ * Every packet takes exactly one step to make a hop, so all of the arrivals
+ * due in a step are held in one event rather than one per packet. The steps
+ * that are taken are the same as the step engine would take, so the metrics
+ * of a run are identical either way.
+ */
+public class EventScheduler {
+
+    private enum EventType {
+	INJECTION, ARRIVAL
+    }
+
+    private static class Event implements Comparable<Event> {
+
+	private final long step;
+	private final EventType type;
+
+	public Event(long step, EventType type) {
+	    this.step = step;
+	    this.type = type;
+	}
+
+	@Override
+	public int compareTo(Event other) {
+	    int order = Long.compare(step, other.step);
+	    return (order != 0) ? order : type.compareTo(other.type);
+	}
+    }
+
+    private final Simulation simulation;
+    private final PriorityQueue<Event> events;
+    private long stepNumber;
+
+    /**
+     * @param simulation
+     *            The simulation to drive, from the step it is at. It must not
+     *            be stepped by anything else while the scheduler is in use.
+     */
+    public EventScheduler(Simulation simulation) {
+	this.simulation = simulation;
+	events = new PriorityQueue<>();
+	stepNumber = simulation.getStepNumber().longValue();
+
+	events.add(new Event(stepNumber + simulation.getStepsUntilInjection()
+		+ 1, EventType.INJECTION));
+	if (!simulation.isIdle()) {
+	    events.add(new Event(stepNumber + 1, EventType.ARRIVAL));
+	}
+    }
+
+    /**
+     * @return The number of the last step taken or skipped.
+     */
+    public long getStepNumber() {
+	return stepNumber;
+    }
+
+    /**
+     * @return The step the next event happens in, or Long.MAX_VALUE if no
+     *         events are left.
+     */
+    public long getNextEventStep() {
+	return events.isEmpty() ? Long.MAX_VALUE : events.peek().step;
+    }
+
+    /**
+     * Runs every event up to and including a step, then skips any idle steps
+     * left up to it.
+     * 
+     * @param lastStep
+     *            The step to run until.
+     * @param metrics
+     *            The metrics to record the steps taken and skipped in.
+     */
+    public void runUntil(long lastStep, SimulationMetrics metrics) {
+	while (getNextEventStep() <= lastStep) {
+	    long skipped = events.peek().step - stepNumber - 1;
+	    metrics.recordIdleSteps(skipped);
+	    metrics.record(next());
+	}
+
+	metrics.recordIdleSteps(lastStep - stepNumber);
+	simulation.skipIdleSteps(lastStep - stepNumber);
+	stepNumber = lastStep;
+    }
+
+    /**
+     * Skips ahead to the step of the next event and takes it, scheduling the
+     * events that follow from it.
+     * 
+     * @return What happened during the step.
+     */
+    public StepResult next() {
+	Event event = events.poll();
+	simulation.skipIdleSteps(event.step - stepNumber - 1);
+	stepNumber = event.step;
+
+	boolean injects = (event.type == EventType.INJECTION);
+	while (!events.isEmpty() && events.peek().step == stepNumber) {
+	    injects |= (events.poll().type == EventType.INJECTION);
+	}
+
+	StepResult result = simulation.step();
+
+	if (injects) {
+	    events.add(new Event(stepNumber
+		    + simulation.getStepsUntilInjection() + 1,
+		    EventType.INJECTION));
+	}
+	if (!simulation.isIdle()) {
+	    events.add(new Event(stepNumber + 1, EventType.ARRIVAL));
+	}
+
+	return result;
+    }
+}
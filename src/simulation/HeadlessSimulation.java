@@ -0,0 +1,231 @@
+package simulation;
+
+import java.io.IOException;
+
+import network.Topology;
+import network.TopologyFile;
+import algorithm.RoutingAlgorithm;
+
+import common.RandomStreams;
+
+/**
+ * Runs a simulation from the command line without a GUI, then prints the
+ * final metrics. Nothing observes the simulation while it runs, so no update
+ * events are built for any of the steps.
+ * <p>
+ * Usage:
+ *
+ * <pre>
+ * java simulation.HeadlessSimulation --topology network.xml
+ *     --algorithm SHORTEST_PATH [--rate 1] [--traffic poisson:2.5]
+ *     [--steps 1] [--parallel false]
+ *     [--replications 1] [--threads &lt;cores&gt;] [--seed &lt;random&gt;]
+ *     [--engine step|event] [--resume snapshot.bin] [--snapshot snapshot.bin]
+ *     [--trace run.trace] [--packet-csv packets.csv] [--step-csv steps.csv]
+ *     [--config run.properties] [--save-config run.properties]
+ * </pre>
+ */
+public class HeadlessSimulation {
+
+    private final RunConfiguration configuration;
+    private final SimulationMetrics metrics;
+
+    public HeadlessSimulation(RunConfiguration configuration) {
+	this.configuration = configuration;
+	metrics = new SimulationMetrics();
+    }
+
+    /**
+     * Loads the configured topology, or the snapshot being resumed, and runs
+     * the configured number of steps.
+     *
+     * @return The metrics of the finished run.
+     * @throws IOException
+     *             If the topology or snapshot can't be loaded, or the
+     *             snapshot can't be saved.
+     * @throws IllegalStateException
+     *             If the algorithm doesn't exist or the topology isn't a
+     *             valid, connected network.
+     */
+    public SimulationMetrics run() throws IOException, IllegalStateException {
+	if (configuration.getResumeFile() != null) {
+	    return run(SimulationSnapshot.open(configuration.getResumeFile())
+		    .restore(new RandomStreams(configuration.getSeed())));
+	}
+	return run(TopologyFile.load(configuration.getTopologyFile()));
+    }
+
+    /**
+     * Runs the configured number of steps on a topology, in a new Simulation
+     * with its own instance of the routing algorithm.
+     *
+     * @param topology
+     *            The topology to simulate, which must not be used by anything
+     *            else while the run is going.
+     * @return The metrics of the finished run.
+     * @throws IOException
+     *             If a snapshot of the run can't be saved.
+     * @throws IllegalStateException
+     *             If the algorithm doesn't exist or the topology isn't a
+     *             valid, connected network.
+     */
+    public SimulationMetrics run(Topology topology) throws IOException,
+	    IllegalStateException {
+	return run(topology, new RandomStreams(configuration.getSeed()));
+    }
+
+    /**
+     * Runs the configured number of steps on a topology, in a new Simulation
+     * with its own instance of the routing algorithm.
+     *
+     * @param topology
+     *            The topology to simulate, which must not be used by anything
+     *            else while the run is going.
+     * @param randomStreams
+     *            Where the run's randomness comes from.
+     * @return The metrics of the finished run.
+     * @throws IOException
+     *             If a snapshot of the run can't be saved.
+     * @throws IllegalStateException
+     *             If the algorithm doesn't exist or the topology isn't a
+     *             valid, connected network.
+     */
+    public SimulationMetrics run(Topology topology,
+	    RandomStreams randomStreams) throws IOException,
+	    IllegalStateException {
+	RoutingAlgorithm algorithm = RoutingAlgorithm.create(configuration
+		.getAlgorithm());
+	if (algorithm == null) {
+	    throw new IllegalStateException("Unknown routing algorithm "
+		    + configuration.getAlgorithm());
+	}
+	topology.setSeenPacketFilterCapacity(configuration
+		.getSeenFilterCapacity());
+	Simulation simulation = new Simulation(topology, algorithm,
+		configuration.createTrafficGenerator());
+	simulation.setRandomStreams(randomStreams);
+	return run(simulation);
+    }
+
+    /**
+     * Runs the configured number of steps of a simulation, then saves a
+     * snapshot of it if one was asked for.
+     *
+     * @param simulation
+     *            The simulation to run, which must not be used by anything
+     *            else while the run is going.
+     * @return The metrics of the steps taken in this run.
+     * @throws IOException
+     *             If the trace, CSV files or snapshot can't be saved.
+     * @throws IllegalStateException
+     *             If the topology isn't a valid, connected network.
+     */
+    public SimulationMetrics run(Simulation simulation) throws IOException,
+	    IllegalStateException {
+	simulation.getRoutingAlgorithm().setParallel(configuration.isParallel());
+	simulation.setJournalled(false);
+	if (!simulation.isReady()) {
+	    throw new IllegalStateException(
+		    "The topology must have at least two routers, all connected");
+	}
+
+	metrics.reset();
+	StepLog trace = null;
+	if (configuration.getTraceFile() != null) {
+	    trace = new StepLog(configuration.getTraceFile(), simulation);
+	    simulation.addStepListener(trace);
+	}
+	CsvExporter exporter = null;
+
+	try {
+	    if (configuration.getPacketCsvFile() != null
+		    || configuration.getStepCsvFile() != null) {
+		exporter = new CsvExporter(configuration.getPacketCsvFile(),
+			configuration.getStepCsvFile());
+		simulation.addStepListener(exporter);
+	    }
+
+	    if (configuration.isEventDriven()) {
+		EventScheduler scheduler = new EventScheduler(simulation);
+		scheduler.runUntil(scheduler.getStepNumber()
+			+ configuration.getSteps(), metrics);
+	    } else {
+		for (long i = 0; i < configuration.getSteps(); i++) {
+		    metrics.record(simulation.step());
+		}
+	    }
+	} finally {
+	    try {
+		if (exporter != null) {
+		    simulation.removeStepListener(exporter);
+		    exporter.close();
+		}
+	    } finally {
+		if (trace != null) {
+		    simulation.removeStepListener(trace);
+		    trace.close();
+		}
+	    }
+	}
+
+	if (configuration.getSnapshotFile() != null) {
+	    SimulationSnapshot.save(simulation, configuration.getSnapshotFile());
+	}
+
+	return metrics;
+    }
+
+    public static void main(String[] args) {
+	RunConfiguration configuration;
+	try {
+	    configuration = RunConfiguration.fromArguments(args);
+	} catch (IllegalArgumentException | IOException ex) {
+	    System.err.println(ex.getMessage());
+	    System.err.println("Usage: HeadlessSimulation --topology <file> "
+		    + "--algorithm <name> [--rate <n>] [--traffic <spec>] "
+		    + "[--steps <n>] "
+		    + "[--parallel <true|false>] [--replications <n>] "
+		    + "[--threads <n>] [--seed <n>] [--engine <step|event>] "
+		    + "[--resume <file>] [--snapshot <file>] [--trace <file>] "
+		    + "[--packet-csv <file>] [--step-csv <file>] "
+		    + "[--seen-filter <n>] "
+		    + "[--config <file>] "
+		    + "[--save-config <file>]");
+	    System.exit(2);
+	    return;
+	}
+
+	try {
+	    if (configuration.getSavedConfiguration() != null) {
+		configuration.save(configuration.getSavedConfiguration());
+	    }
+
+	    System.out.println("Seed:                " + configuration.getSeed());
+
+	    long start = System.nanoTime();
+	    if (configuration.getReplications() > 1) {
+		MetricsSummary summary = new ReplicationRunner(configuration)
+			.run();
+		System.out.println(summary);
+	    } else {
+		SimulationMetrics metrics = new HeadlessSimulation(
+			configuration).run();
+		System.out.println(metrics);
+	    }
+	    double seconds = (System.nanoTime() - start) / 1e9;
+
+	    long steps = configuration.getSteps()
+		    * configuration.getReplications();
+	    System.out.println(String.format("Wall time:           %.3f s",
+		    seconds));
+	    System.out.println(String.format("Steps per second:    %.1f",
+		    steps / seconds));
+	} catch (InterruptedException ex) {
+	    System.err.println("Interrupted");
+	    System.exit(1);
+	} catch (IOException | IllegalStateException ex) {
+	    System.err.println(ex.getMessage());
+	    System.exit(1);
+	}
+    }
+}
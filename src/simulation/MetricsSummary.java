@@ -0,0 +1,75 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Aggregates the metrics of several replications of the same simulation,
+ * giving the mean, standard deviation and range of each metric.
+ */
+public class MetricsSummary {
+
+    private final List<SimulationMetrics> replications;
+
+    public MetricsSummary() {
+	replications = new ArrayList<>();
+    }
+
+    public void add(SimulationMetrics metrics) {
+	replications.add(metrics);
+    }
+
+    public int getReplicationCount() {
+	return replications.size();
+    }
+
+    public List<SimulationMetrics> getReplications() {
+	return replications;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder();
+	sb.append(String.format("%-20s %14s %14s %14s %14s%n", "Replications: "
+		+ replications.size(), "Mean", "Std. Dev.", "Min", "Max"));
+
+	appendRow(sb, "Packets injected",
+		SimulationMetrics::getPacketsInjected);
+	appendRow(sb, "Packets delivered",
+		SimulationMetrics::getPacketsDelivered);
+	appendRow(sb, "Packets dropped",
+		SimulationMetrics::getPacketsDropped);
+	appendRow(sb, "Total transmissions",
+		SimulationMetrics::getPacketsTransmitted);
+	appendRow(sb, "Average hops",
+		SimulationMetrics::getAverageHops);
+
+	return sb.toString().trim();
+    }
+
+    private void appendRow(StringBuilder sb, String name,
+	    ToDoubleFunction<SimulationMetrics> metric) {
+	double sum = 0;
+	double min = Double.POSITIVE_INFINITY;
+	double max = Double.NEGATIVE_INFINITY;
+	for (SimulationMetrics metrics : replications) {
+	    double value = metric.applyAsDouble(metrics);
+	    sum += value;
+	    min = Math.min(min, value);
+	    max = Math.max(max, value);
+	}
+	double mean = sum / replications.size();
+
+	double squares = 0;
+	for (SimulationMetrics metrics : replications) {
+	    double difference = metric.applyAsDouble(metrics) - mean;
+	    squares += difference * difference;
+	}
+	double deviation = (replications.size() > 1) ? Math.sqrt(squares
+		/ (replications.size() - 1)) : 0;
+
+	sb.append(String.format("%-20s %14.5f %14.5f %14.5f %14.5f%n", name
+		+ ":", mean, deviation, min, max));
+    }
+}
@@ -0,0 +1,63 @@
+package simulation;
+
+import network.Router;
+
+/**
+ * An unchanging record of a packet at the moment something happened to it
+ * during a step, so that listeners can look at it later without the packet
+ * having moved on in the meantime.
+ */
+public class PacketRecord {
+
+    private final long packetID;
+    private final Router source;
+    private final Router destination;
+    private final Router previous;
+    private final Router router;
+    private final long hops;
+
+    /**
+     * @param events
+     *            The events of a step.
+     * @param index
+     *            The index of the event to record.
+     */
+    public PacketRecord(StepEvents events, int index) {
+	packetID = events.getPacketID(index);
+	source = events.getSource(index);
+	destination = events.getDestination(index);
+	previous = events.getPrevious(index);
+	router = events.getRouter(index);
+	hops = events.getHops(index);
+    }
+
+    public long getPacketID() {
+	return packetID;
+    }
+
+    public Router getSource() {
+	return source;
+    }
+
+    public Router getDestination() {
+	return destination;
+    }
+
+    /**
+     * @return The router the packet was at before it was sent this step.
+     */
+    public Router getPrevious() {
+	return previous;
+    }
+
+    /**
+     * @return The router the packet is at.
+     */
+    public Router getRouter() {
+	return router;
+    }
+
+    public long getHops() {
+	return hops;
+    }
+}
@@ -0,0 +1,95 @@
+package simulation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import network.Topology;
+import network.TopologyFile;
+
+import common.RandomStreams;
+
+/**
+ * Runs several independent replications of the same configuration at once on
+ * a thread pool within one JVM, then aggregates their metrics. Every
+ * replication gets its own Simulation, its own copy of the topology and its
+ * own instance of the routing algorithm, all forked from the same snapshot
+ * if one is being resumed. Their seeds are all derived from the
+ * configured seed, so the whole set of replications can be repeated.
+ */
+public class ReplicationRunner {
+
+    private final RunConfiguration configuration;
+
+    public ReplicationRunner(RunConfiguration configuration) {
+	this.configuration = configuration;
+    }
+
+    /**
+     * Runs the configured number of replications on the configured number of
+     * threads.
+     *
+     * @return The metrics of every replication, in the order they were
+     *         started.
+     * @throws IOException
+     *             If the topology or snapshot can't be loaded.
+     * @throws IllegalStateException
+     *             If a replication can't be run.
+     * @throws InterruptedException
+     *             If the thread is interrupted while waiting for the
+     *             replications to finish.
+     */
+    public MetricsSummary run() throws IOException, IllegalStateException,
+	    InterruptedException {
+	RandomStreams randomStreams = new RandomStreams(configuration.getSeed());
+
+	List<Callable<SimulationMetrics>> replications = new ArrayList<>();
+	if (configuration.getResumeFile() != null) {
+	    // Fork every replication from the same snapshot
+	    SimulationSnapshot snapshot = SimulationSnapshot.open(configuration
+		    .getResumeFile());
+	    for (int i = 0; i < configuration.getReplications(); i++) {
+		RandomStreams replicationStreams = randomStreams
+			.forReplication(i);
+		replications.add(() -> new HeadlessSimulation(configuration)
+			.run(snapshot.restore(replicationStreams)));
+	    }
+	} else {
+	    Topology topology = TopologyFile.load(configuration
+		    .getTopologyFile());
+	    for (int i = 0; i < configuration.getReplications(); i++) {
+		Topology copy = new Topology(topology);
+		RandomStreams replicationStreams = randomStreams
+			.forReplication(i);
+		replications.add(() -> new HeadlessSimulation(configuration)
+			.run(copy, replicationStreams));
+	    }
+	}
+
+	ExecutorService executor = Executors.newFixedThreadPool(configuration
+		.getThreads());
+	try {
+	    MetricsSummary summary = new MetricsSummary();
+	    for (Future<SimulationMetrics> result : executor
+		    .invokeAll(replications)) {
+		summary.add(result.get());
+	    }
+	    return summary;
+	} catch (ExecutionException ex) {
+	    if (ex.getCause() instanceof IllegalStateException) {
+		throw (IllegalStateException) ex.getCause();
+	    } else if (ex.getCause() instanceof IOException) {
+		throw (IOException) ex.getCause();
+	    }
+	    throw new IllegalStateException("A replication failed", ex
+		    .getCause());
+	} finally {
+	    executor.shutdownNow();
+	}
+    }
+}
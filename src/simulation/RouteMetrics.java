@@ -0,0 +1,150 @@
+package simulation;
+
+import java.util.Arrays;
+
+import network.Router;
+
+/**
+ * The number of packets delivered between each source and destination, and
+ * the hops they took. Routes are kept in parallel arrays in the order they
+ * were first delivered along, with an open-addressing index over them, so
+ * recording a delivery allocates nothing and copying the totals is a few
+ * array copies.
+ */
+public class RouteMetrics {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Router[] sources;
+    private Router[] destinations;
+    private long[] deliveries;
+    private long[] hops;
+    private int size;
+    private int[] slots; // One more than the index of a route, 0 if empty
+
+    public RouteMetrics() {
+	reset();
+    }
+
+    public RouteMetrics(RouteMetrics metrics) {
+	sources = metrics.sources.clone();
+	destinations = metrics.destinations.clone();
+	deliveries = metrics.deliveries.clone();
+	hops = metrics.hops.clone();
+	size = metrics.size;
+	slots = metrics.slots.clone();
+    }
+
+    /**
+     * Adds a delivered packet to the totals for its route.
+     */
+    public void record(Router source, Router destination, long hops) {
+	record(source, destination, 1, hops);
+    }
+
+    private void record(Router source, Router destination, long count,
+	    long hops) {
+	int mask = slots.length - 1;
+	int slot = hash(source, destination) & mask;
+	while (slots[slot] != 0) {
+	    int i = slots[slot] - 1;
+	    if (sources[i] == source && destinations[i] == destination) {
+		deliveries[i] += count;
+		this.hops[i] += hops;
+		return;
+	    }
+	    slot = (slot + 1) & mask;
+	}
+
+	if (size == sources.length) {
+	    int capacity = sources.length * 2;
+	    sources = Arrays.copyOf(sources, capacity);
+	    destinations = Arrays.copyOf(destinations, capacity);
+	    deliveries = Arrays.copyOf(deliveries, capacity);
+	    this.hops = Arrays.copyOf(this.hops, capacity);
+	}
+	sources[size] = source;
+	destinations[size] = destination;
+	deliveries[size] = count;
+	this.hops[size] = hops;
+	slots[slot] = ++size;
+
+	if (size * 2 > slots.length) {
+	    rehash(slots.length * 2);
+	}
+    }
+
+    private void rehash(int capacity) {
+	slots = new int[capacity];
+	int mask = capacity - 1;
+	for (int i = 0; i < size; i++) {
+	    int slot = hash(sources[i], destinations[i]) & mask;
+	    while (slots[slot] != 0) {
+		slot = (slot + 1) & mask;
+	    }
+	    slots[slot] = i + 1;
+	}
+    }
+
+    private static int hash(Router source, Router destination) {
+	int hash = System.identityHashCode(source) * 31
+		+ System.identityHashCode(destination);
+	hash *= 0x9e3779b9;
+	return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Adds another set of totals to these ones.
+     */
+    public void add(RouteMetrics other) {
+	for (int i = 0; i < other.size; i++) {
+	    record(other.sources[i], other.destinations[i],
+		    other.deliveries[i], other.hops[i]);
+	}
+    }
+
+    public void reset() {
+	sources = new Router[INITIAL_CAPACITY / 2];
+	destinations = new Router[INITIAL_CAPACITY / 2];
+	deliveries = new long[INITIAL_CAPACITY / 2];
+	hops = new long[INITIAL_CAPACITY / 2];
+	size = 0;
+	slots = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @return The number of routes that have had a packet delivered along
+     *         them.
+     */
+    public int size() {
+	return size;
+    }
+
+    public Router getSource(int route) {
+	return sources[checkRoute(route)];
+    }
+
+    public Router getDestination(int route) {
+	return destinations[checkRoute(route)];
+    }
+
+    public long getDeliveries(int route) {
+	return deliveries[checkRoute(route)];
+    }
+
+    /**
+     * @return The total number of hops taken by the packets delivered along
+     *         a route.
+     */
+    public long getHops(int route) {
+	return hops[checkRoute(route)];
+    }
+
+    private int checkRoute(int route) {
+	if (route < 0 || route >= size) {
+	    throw new IndexOutOfBoundsException("Route " + route + " of "
+		    + size);
+	}
+	return route;
+    }
+}
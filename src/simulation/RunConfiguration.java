@@ -0,0 +1,577 @@
+package simulation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import traffic.TrafficGenerator;
+import traffic.UniformTraffic;
+
+import common.RandomStreams;
+
+/**
+ * The settings for a headless simulation run. A configuration can be built
+ * from command-line arguments, or loaded from and saved to a properties file
+ * so that a run can be repeated later.
+ */
+public class RunConfiguration {
+
+    private static final String TOPOLOGY = "topology";
+    private static final String ALGORITHM = "algorithm";
+    private static final String RATE = "rate";
+    private static final String TRAFFIC = "traffic";
+    private static final String STEPS = "steps";
+    private static final String PARALLEL = "parallel";
+    private static final String REPLICATIONS = "replications";
+    private static final String THREADS = "threads";
+    private static final String SEED = "seed";
+    private static final String ENGINE = "engine";
+    private static final String RESUME = "resume";
+    private static final String SNAPSHOT = "snapshot";
+    private static final String TRACE = "trace";
+    private static final String PACKET_CSV = "packetCsv";
+    private static final String STEP_CSV = "stepCsv";
+    private static final String SEEN_FILTER = "seenFilter";
+
+    private File topologyFile;
+    private String algorithm;
+    private long rate;
+    private String traffic;
+    private long steps;
+    private boolean parallel;
+    private int replications;
+    private int threads;
+    private long seed;
+    private boolean seedGiven;
+    private boolean eventDriven;
+    private File resumeFile;
+    private File snapshotFile;
+    private File traceFile;
+    private File packetCsvFile;
+    private File stepCsvFile;
+    private int seenFilterCapacity;
+    private File savedConfiguration;
+
+    public RunConfiguration() {
+	topologyFile = null;
+	algorithm = null;
+	rate = 1;
+	traffic = null;
+	steps = 1;
+	parallel = false;
+	replications = 1;
+	threads = Runtime.getRuntime().availableProcessors();
+	seed = RandomStreams.randomSeed();
+	seedGiven = false;
+	eventDriven = false;
+	resumeFile = null;
+	snapshotFile = null;
+	traceFile = null;
+	packetCsvFile = null;
+	stepCsvFile = null;
+	seenFilterCapacity = 0;
+	savedConfiguration = null;
+    }
+
+    /**
+     * Builds a configuration from command-line arguments. A
+     * <code>--config</code> file is read first, and any other arguments
+     * override what it contains.
+     *
+     * @param args
+     *            The command-line arguments.
+     * @return The configuration.
+     * @throws IllegalArgumentException
+     *             If an argument is unknown, is missing its value, or has an
+     *             invalid value.
+     * @throws IOException
+     *             If a <code>--config</code> file can't be read.
+     */
+    public static RunConfiguration fromArguments(String[] args)
+	    throws IllegalArgumentException, IOException {
+	RunConfiguration configuration = new RunConfiguration();
+
+	for (int i = 0; i < args.length; i += 2) {
+	    if (args[i].equals("--config")) {
+		configuration.load(new File(value(args, i)));
+	    }
+	}
+
+	for (int i = 0; i < args.length; i += 2) {
+	    String value = value(args, i);
+
+	    switch (args[i]) {
+	    case "--config":
+		break;
+	    case "--topology":
+		configuration.topologyFile = new File(value);
+		break;
+	    case "--algorithm":
+		configuration.algorithm = value;
+		break;
+	    case "--rate":
+		configuration.setRate(parsePositive(args[i], value));
+		break;
+	    case "--traffic":
+		configuration.setTraffic(value);
+		break;
+	    case "--steps":
+		configuration.setSteps(parsePositive(args[i], value));
+		break;
+	    case "--parallel":
+		configuration.parallel = parseBoolean(args[i], value);
+		break;
+	    case "--replications":
+		configuration.replications = parseCount(args[i], value);
+		break;
+	    case "--threads":
+		configuration.threads = parseCount(args[i], value);
+		break;
+	    case "--seed":
+		configuration.setSeed(parseSeed(args[i], value));
+		break;
+	    case "--engine":
+		configuration.eventDriven = parseEngine(args[i], value);
+		break;
+	    case "--resume":
+		configuration.resumeFile = new File(value);
+		break;
+	    case "--snapshot":
+		configuration.snapshotFile = new File(value);
+		break;
+	    case "--trace":
+		configuration.traceFile = new File(value);
+		break;
+	    case "--packet-csv":
+		configuration.packetCsvFile = new File(value);
+		break;
+	    case "--step-csv":
+		configuration.stepCsvFile = new File(value);
+		break;
+	    case "--seen-filter":
+		configuration.seenFilterCapacity = parseCapacity(args[i], value);
+		break;
+	    case "--save-config":
+		configuration.savedConfiguration = new File(value);
+		break;
+	    default:
+		throw new IllegalArgumentException("Unknown option " + args[i]);
+	    }
+	}
+
+	if (configuration.resumeFile != null) {
+	    // Carry on exactly where the snapshot left off unless told not to
+	    if (!configuration.seedGiven) {
+		configuration.setSeed(SimulationSnapshot.open(
+			configuration.resumeFile).getSeed());
+	    }
+	} else {
+	    if (configuration.topologyFile == null) {
+		throw new IllegalArgumentException("No topology file given");
+	    }
+	    if (configuration.algorithm == null) {
+		throw new IllegalArgumentException(
+			"No routing algorithm given");
+	    }
+	}
+	if (configuration.snapshotFile != null
+		&& configuration.replications > 1) {
+	    throw new IllegalArgumentException(
+		    "Only a single replication can be saved as a snapshot");
+	}
+	if (configuration.traceFile != null && configuration.replications > 1) {
+	    throw new IllegalArgumentException(
+		    "Only a single replication can be traced");
+	}
+	if ((configuration.packetCsvFile != null
+		|| configuration.stepCsvFile != null)
+		&& configuration.replications > 1) {
+	    throw new IllegalArgumentException(
+		    "Only a single replication can be exported to CSV");
+	}
+
+	return configuration;
+    }
+
+    private static String value(String[] args, int index) {
+	if (index + 1 >= args.length) {
+	    throw new IllegalArgumentException(args[index] + " needs a value");
+	}
+	return args[index + 1];
+    }
+
+    private static long parsePositive(String option, String value) {
+	try {
+	    long parsed = Long.parseLong(value);
+	    if (parsed > 0) {
+		return parsed;
+	    }
+	} catch (NumberFormatException ex) {
+	    // Fall through to the error below
+	}
+	throw new IllegalArgumentException(option
+		+ " must be a positive integer greater than 0");
+    }
+
+    private static int parseCount(String option, String value) {
+	long count = parsePositive(option, value);
+	if (count > Integer.MAX_VALUE) {
+	    throw new IllegalArgumentException(option + " is too large");
+	}
+	return (int) count;
+    }
+
+    private static int parseCapacity(String option, String value) {
+	try {
+	    return value.equals("0") ? 0 : parseCount(option, value);
+	} catch (IllegalArgumentException ex) {
+	    throw new IllegalArgumentException(option
+		    + " must be 0 or a positive integer", ex);
+	}
+    }
+
+    private static long parseSeed(String option, String value) {
+	try {
+	    return Long.parseLong(value);
+	} catch (NumberFormatException ex) {
+	    throw new IllegalArgumentException(option + " must be an integer");
+	}
+    }
+
+    private static boolean parseBoolean(String option, String value) {
+	if (value.equalsIgnoreCase("true")) {
+	    return true;
+	} else if (value.equalsIgnoreCase("false")) {
+	    return false;
+	}
+	throw new IllegalArgumentException(option + " must be true or false");
+    }
+
+    private static boolean parseEngine(String option, String value) {
+	if (value.equalsIgnoreCase("event")) {
+	    return true;
+	} else if (value.equalsIgnoreCase("step")) {
+	    return false;
+	}
+	throw new IllegalArgumentException(option + " must be step or event");
+    }
+
+    /**
+     * Reads the settings stored in a properties file into this configuration.
+     *
+     * @param file
+     *            The file to read.
+     * @throws IOException
+     *             If the file can't be read.
+     */
+    public void load(File file) throws IOException {
+	Properties properties = new Properties();
+	try (InputStream in = new FileInputStream(file)) {
+	    properties.load(in);
+	}
+
+	if (properties.containsKey(TOPOLOGY)) {
+	    topologyFile = new File(properties.getProperty(TOPOLOGY));
+	}
+	algorithm = properties.getProperty(ALGORITHM, algorithm);
+	if (properties.containsKey(RATE)) {
+	    setRate(parsePositive(RATE, properties.getProperty(RATE)));
+	}
+	if (properties.containsKey(TRAFFIC)) {
+	    setTraffic(properties.getProperty(TRAFFIC));
+	}
+	if (properties.containsKey(STEPS)) {
+	    setSteps(parsePositive(STEPS, properties.getProperty(STEPS)));
+	}
+	if (properties.containsKey(PARALLEL)) {
+	    parallel = parseBoolean(PARALLEL, properties.getProperty(PARALLEL));
+	}
+	if (properties.containsKey(REPLICATIONS)) {
+	    replications = parseCount(REPLICATIONS,
+		    properties.getProperty(REPLICATIONS));
+	}
+	if (properties.containsKey(THREADS)) {
+	    threads = parseCount(THREADS, properties.getProperty(THREADS));
+	}
+	if (properties.containsKey(SEED)) {
+	    setSeed(parseSeed(SEED, properties.getProperty(SEED)));
+	}
+	if (properties.containsKey(ENGINE)) {
+	    eventDriven = parseEngine(ENGINE, properties.getProperty(ENGINE));
+	}
+	if (properties.containsKey(RESUME)) {
+	    resumeFile = new File(properties.getProperty(RESUME));
+	}
+	if (properties.containsKey(SNAPSHOT)) {
+	    snapshotFile = new File(properties.getProperty(SNAPSHOT));
+	}
+	if (properties.containsKey(TRACE)) {
+	    traceFile = new File(properties.getProperty(TRACE));
+	}
+	if (properties.containsKey(PACKET_CSV)) {
+	    packetCsvFile = new File(properties.getProperty(PACKET_CSV));
+	}
+	if (properties.containsKey(STEP_CSV)) {
+	    stepCsvFile = new File(properties.getProperty(STEP_CSV));
+	}
+	if (properties.containsKey(SEEN_FILTER)) {
+	    seenFilterCapacity = parseCapacity(SEEN_FILTER,
+		    properties.getProperty(SEEN_FILTER));
+	}
+    }
+
+    /**
+     * Writes this configuration to a properties file.
+     *
+     * @param file
+     *            The file to write.
+     * @throws IOException
+     *             If the file can't be written.
+     */
+    public void save(File file) throws IOException {
+	Properties properties = new Properties();
+	if (topologyFile != null) {
+	    properties.setProperty(TOPOLOGY, topologyFile.getPath());
+	}
+	if (algorithm != null) {
+	    properties.setProperty(ALGORITHM, algorithm);
+	}
+	properties.setProperty(RATE, Long.toString(rate));
+	if (traffic != null) {
+	    properties.setProperty(TRAFFIC, traffic);
+	}
+	properties.setProperty(STEPS, Long.toString(steps));
+	properties.setProperty(PARALLEL, Boolean.toString(parallel));
+	properties.setProperty(REPLICATIONS, Integer.toString(replications));
+	properties.setProperty(THREADS, Integer.toString(threads));
+	properties.setProperty(SEED, Long.toString(seed));
+	properties.setProperty(ENGINE, eventDriven ? "event" : "step");
+	if (resumeFile != null) {
+	    properties.setProperty(RESUME, resumeFile.getPath());
+	}
+	if (snapshotFile != null) {
+	    properties.setProperty(SNAPSHOT, snapshotFile.getPath());
+	}
+	if (traceFile != null) {
+	    properties.setProperty(TRACE, traceFile.getPath());
+	}
+	if (packetCsvFile != null) {
+	    properties.setProperty(PACKET_CSV, packetCsvFile.getPath());
+	}
+	if (stepCsvFile != null) {
+	    properties.setProperty(STEP_CSV, stepCsvFile.getPath());
+	}
+	properties.setProperty(SEEN_FILTER,
+		Integer.toString(seenFilterCapacity));
+
+	try (OutputStream out = new FileOutputStream(file)) {
+	    properties.store(out, "Network Simulator run configuration");
+	}
+    }
+
+    public File getTopologyFile() {
+	return topologyFile;
+    }
+
+    public void setTopologyFile(File topologyFile) {
+	this.topologyFile = topologyFile;
+    }
+
+    public String getAlgorithm() {
+	return algorithm;
+    }
+
+    public void setAlgorithm(String algorithm) {
+	this.algorithm = algorithm;
+    }
+
+    public long getRate() {
+	return rate;
+    }
+
+    public void setRate(long rate) {
+	this.rate = rate;
+    }
+
+    /**
+     * @return The specification of the traffic to inject, or null to inject
+     *         a single packet every rate steps.
+     * @see traffic.TrafficGenerator#create(String)
+     */
+    public String getTraffic() {
+	return traffic;
+    }
+
+    /**
+     * @throws IllegalArgumentException
+     *             If the specification is not valid.
+     */
+    public void setTraffic(String traffic) throws IllegalArgumentException {
+	if (traffic != null) {
+	    TrafficGenerator.create(traffic);
+	}
+	this.traffic = traffic;
+    }
+
+    /**
+     * @return The traffic generator for a new run, which must not be shared.
+     */
+    public TrafficGenerator createTrafficGenerator() {
+	return (traffic == null) ? new UniformTraffic(rate) : TrafficGenerator
+		.create(traffic);
+    }
+
+    public long getSteps() {
+	return steps;
+    }
+
+    public void setSteps(long steps) {
+	this.steps = steps;
+    }
+
+    /**
+     * @return Whether steps should be split across cores.
+     */
+    public boolean isParallel() {
+	return parallel;
+    }
+
+    public void setParallel(boolean parallel) {
+	this.parallel = parallel;
+    }
+
+    /**
+     * @return The number of independent replications to run.
+     */
+    public int getReplications() {
+	return replications;
+    }
+
+    public void setReplications(int replications) {
+	this.replications = replications;
+    }
+
+    /**
+     * @return The number of replications to run at once.
+     */
+    public int getThreads() {
+	return threads;
+    }
+
+    public void setThreads(int threads) {
+	this.threads = threads;
+    }
+
+    /**
+     * @return The seed that all of the run's randomness is derived from. If
+     *         none was given, it is the seed of the snapshot being resumed,
+     *         or a random one so that it can still be saved and the run
+     *         repeated.
+     */
+    public long getSeed() {
+	return seed;
+    }
+
+    public void setSeed(long seed) {
+	this.seed = seed;
+	seedGiven = true;
+    }
+
+    /**
+     * @return Whether the run jumps between events with an EventScheduler
+     *         rather than taking every step in turn.
+     */
+    public boolean isEventDriven() {
+	return eventDriven;
+    }
+
+    public void setEventDriven(boolean eventDriven) {
+	this.eventDriven = eventDriven;
+    }
+
+    /**
+     * @return The snapshot to carry on from instead of starting a new
+     *         simulation, or null to start a new one.
+     */
+    public File getResumeFile() {
+	return resumeFile;
+    }
+
+    public void setResumeFile(File resumeFile) {
+	this.resumeFile = resumeFile;
+    }
+
+    /**
+     * @return The file to save a snapshot of the simulation to once the run
+     *         is over, or null if no snapshot should be saved.
+     */
+    public File getSnapshotFile() {
+	return snapshotFile;
+    }
+
+    public void setSnapshotFile(File snapshotFile) {
+	this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * @return The file to stream every step's events to, or null if the run
+     *         shouldn't be traced.
+     */
+    public File getTraceFile() {
+	return traceFile;
+    }
+
+    public void setTraceFile(File traceFile) {
+	this.traceFile = traceFile;
+    }
+
+    /**
+     * @return The CSV file to write a row to for every delivered packet, or
+     *         null if there shouldn't be one.
+     */
+    public File getPacketCsvFile() {
+	return packetCsvFile;
+    }
+
+    public void setPacketCsvFile(File packetCsvFile) {
+	this.packetCsvFile = packetCsvFile;
+    }
+
+    /**
+     * @return The CSV file to write a row of totals to for every step, or
+     *         null if there shouldn't be one.
+     */
+    public File getStepCsvFile() {
+	return stepCsvFile;
+    }
+
+    public void setStepCsvFile(File stepCsvFile) {
+	this.stepCsvFile = stepCsvFile;
+    }
+
+    /**
+     * @return The number of packet IDs in each generation of the routers'
+     *         seen packet filters, or 0 for routers to keep every ID they
+     *         see. A resumed run keeps whatever its snapshot had.
+     * @see network.Topology#setSeenPacketFilterCapacity(int)
+     */
+    public int getSeenFilterCapacity() {
+	return seenFilterCapacity;
+    }
+
+    public void setSeenFilterCapacity(int seenFilterCapacity) {
+	this.seenFilterCapacity = seenFilterCapacity;
+    }
+
+    /**
+     * @return The file this configuration should be saved to once it has been
+     *         read, or null if it shouldn't be saved.
+     */
+    public File getSavedConfiguration() {
+	return savedConfiguration;
+    }
+}
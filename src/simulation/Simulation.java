@@ -1,12 +1,23 @@
 package simulation;
 
-import java.math.BigInteger;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import network.Topology;
+import network.TopologyState;
+import simulation.StepJournal.Checkpoint;
+import traffic.TrafficBatch;
+import traffic.TrafficGenerator;
+import traffic.UniformTraffic;
 import algorithm.RoutingAlgorithm;
 
+import common.Counter;
+import common.RandomStreams;
 import common.SimulationUpdateEvent;
 import common.SimulationUpdateEvent.SimulationUpdate;
 import common.TopologyUpdateEvent;
@@ -14,36 +25,121 @@ import common.TopologyUpdateEvent.TopologyUpdate;
 
 public class Simulation extends Observable implements Observer {
 
-    private static Simulation instance = new Simulation(1);
-    private long rate;
+    private static Simulation instance = new Simulation();
+    private TrafficGenerator traffic;
+    private final TrafficBatch injections;
     private boolean isReady;
+    private volatile boolean isRunning;
     private Topology topology;
     private RoutingAlgorithm algorithm;
+    private StepTrace trace; // Played back instead of routing, if set
+    private final List<Observer> topologyObservers;
+    private final List<StepListener> stepListeners;
+
+    private final Counter stepNumber;
+    private final Counter packetCount;
+    private RandomStreams randomStreams;
+    private final StepJournal journal;
+    private boolean isJournalled;
+    private final SimulationMetrics metrics;
+    private boolean firstStepAnnounced;
+
+    /**
+     * Creates a simulation with an empty topology, no routing algorithm, a
+     * rate of 1 and a random seed.
+     */
+    public Simulation() {
+	this(new Topology(), null, 1);
+    }
 
-    private BigInteger stepNumber;
-    private BigInteger packetCount;
+    /**
+     * Creates a simulation that is independent of every other one, so several
+     * can be run at once.
+     * 
+     * @param topology
+     *            The topology to simulate, which must not be shared with
+     *            another simulation.
+     * @param algorithm
+     *            The routing algorithm to use, which must not be shared with
+     *            another simulation.
+     * @param rate
+     *            The number of steps between packet injections.
+     */
+    public Simulation(Topology topology, RoutingAlgorithm algorithm,
+	    long rate) {
+	this(topology, algorithm, new UniformTraffic(rate));
+    }
 
-    private Simulation(long rate) {
-	this.rate = rate;
-	stepNumber = BigInteger.ZERO;
-	packetCount = BigInteger.ZERO;
-	isReady = false;
+    /**
+     * Creates a simulation that is independent of every other one, so several
+     * can be run at once.
+     * 
+     * @param topology
+     *            The topology to simulate, which must not be shared with
+     *            another simulation.
+     * @param algorithm
+     *            The routing algorithm to use, which must not be shared with
+     *            another simulation.
+     * @param traffic
+     *            The traffic to inject, which must not be shared with another
+     *            simulation.
+     */
+    public Simulation(Topology topology, RoutingAlgorithm algorithm,
+	    TrafficGenerator traffic) {
+	this.traffic = traffic;
+	injections = new TrafficBatch();
+	stepNumber = new Counter();
+	packetCount = new Counter();
+	randomStreams = new RandomStreams(RandomStreams.randomSeed());
+	journal = new StepJournal();
+	isJournalled = true;
+	metrics = new SimulationMetrics();
+	firstStepAnnounced = false;
+	topologyObservers = new ArrayList<>();
+	stepListeners = new CopyOnWriteArrayList<>();
 
-	topology = new Topology();
+	this.topology = topology;
 	topology.addObserver(this);
-	algorithm = null;
+	this.algorithm = algorithm;
+	if (algorithm != null) {
+	    algorithm.setRandomStreams(randomStreams);
+	}
+	isReady = (algorithm != null) && topology.isValid();
     }
 
+    /**
+     * @return The simulation shown by the GUI.
+     */
     public static Simulation getInstance() {
 	return instance;
     }
 
     public void setTopology(Topology topology) {
+	endReplay();
+	this.topology.deleteObserver(this);
+	for (Observer obs : topologyObservers) {
+	    this.topology.deleteObserver(obs);
+	}
+
 	this.topology = topology;
+	topology.addObserver(this);
+	for (Observer obs : topologyObservers) {
+	    topology.addObserver(obs);
+	}
+
+	if (!stepNumber.isZero()) {
+	    resetMetrics();
+	}
 
 	setChanged();
 	notifyObservers(new SimulationUpdateEvent(
 		SimulationUpdate.TOPOLOGY_RESET, null));
+
+	if (readyStateChanged()) {
+	    setChanged();
+	    notifyObservers(new SimulationUpdateEvent(
+		    SimulationUpdate.READY_STATE_CHANGED, isReady));
+	}
     }
 
     public Topology getTopology() {
@@ -51,6 +147,12 @@ public class Simulation extends Observable implements Observer {
     }
 
     public void setRoutingAlgorithm(RoutingAlgorithm algorithm) {
+	algorithm.setRandomStreams(randomStreams);
+	journal.clear(); // Earlier steps were taken by the old algorithm
+	if (endReplay() && hasStarted()) {
+	    resetMetrics();
+	}
+
 	if (this.algorithm == null) {
 	    this.algorithm = algorithm;
 
@@ -74,39 +176,172 @@ public class Simulation extends Observable implements Observer {
     }
 
     public void newTopology() {
-	this.topology = new Topology();
+	setTopology(new Topology());
+    }
 
-	if (stepNumber.compareTo(BigInteger.ONE) > 0) {
-	    resetMetrics();
+    /**
+     * Plays back a recorded run instead of routing packets, in the trace's
+     * own topology. Stepping, undoing and seeking all move through the trace
+     * until the topology or the routing algorithm is changed.
+     * 
+     * @param trace
+     *            The trace to play back, which is closed when the playback
+     *            ends.
+     */
+    public void replay(StepTrace trace) {
+	setTopology(trace.getTopology());
+	this.trace = trace;
+
+	if (readyStateChanged()) {
+	    setChanged();
+	    notifyObservers(new SimulationUpdateEvent(
+		    SimulationUpdate.READY_STATE_CHANGED, isReady));
 	}
+    }
 
-	setChanged();
-	notifyObservers(new SimulationUpdateEvent(
-		SimulationUpdate.TOPOLOGY_RESET, null));
+    /**
+     * @return True if a trace is being played back.
+     */
+    public boolean isReplaying() {
+	return trace != null;
+    }
+
+    /**
+     * @return True if a trace was being played back.
+     */
+    private boolean endReplay() {
+	if (trace == null) {
+	    return false;
+	}
+
+	try {
+	    trace.close();
+	} catch (IOException ex) {
+	    // Nothing more is read from it either way
+	}
+	trace = null;
+	return true;
     }
 
+    /**
+     * @return The number of steps between packet injections, or 0 if the
+     *         traffic isn't injected at a fixed rate.
+     */
     public long getRate() {
-	return rate;
+	return (traffic instanceof UniformTraffic) ? ((UniformTraffic) traffic)
+		.getRate() : 0;
     }
 
+    /**
+     * Injects a single packet every rate steps from now on.
+     */
     public void setRate(long rate) {
-	this.rate = rate;
+	setTrafficGenerator(new UniformTraffic(rate));
 
 	setChanged();
 	notifyObservers(new SimulationUpdateEvent(
 		SimulationUpdate.RATE_CHANGED, rate));
+    }
+
+    public TrafficGenerator getTrafficGenerator() {
+	return traffic;
+    }
+
+    /**
+     * @param traffic
+     *            The traffic to inject from now on, which must not be shared
+     *            with another simulation.
+     */
+    public void setTrafficGenerator(TrafficGenerator traffic) {
+	this.traffic = traffic;
+	journal.clear(); // Earlier steps were taken with the old traffic
+
+	if (stepNumber.compareTo(1) > 0) {
+	    resetMetrics();
+	}
+    }
+
+    public long getSeed() {
+	return randomStreams.getSeed();
+    }
+
+    /**
+     * Sets the seed that all of the simulation's randomness is derived from.
+     * Two simulations of the same topology, algorithm and traffic with the
+     * same seed take exactly the same steps.
+     * 
+     * @param seed
+     *            The new seed.
+     */
+    public void setSeed(long seed) {
+	setRandomStreams(new RandomStreams(seed));
+    }
+
+    /**
+     * Sets where all of the simulation's randomness comes from.
+     * 
+     * @param randomStreams
+     *            The new streams.
+     */
+    public void setRandomStreams(RandomStreams randomStreams) {
+	this.randomStreams = randomStreams;
+	if (algorithm != null) {
+	    algorithm.setRandomStreams(randomStreams);
+	}
 
-	if (stepNumber.compareTo(BigInteger.ONE) > 0) {
+	if (stepNumber.compareTo(1) > 0) {
 	    resetMetrics();
 	}
     }
 
+    /**
+     * Sets whether checkpoints are kept while stepping. They make undoing a
+     * step and seeking cheap, but cost time on every step that captures one,
+     * so runs that never go back can turn them off. Seeking still works
+     * without them, by starting over from step 0.
+     * 
+     * @param isJournalled
+     *            True to keep checkpoints, false to stop keeping them.
+     */
+    public void setJournalled(boolean isJournalled) {
+	this.isJournalled = isJournalled;
+	if (!isJournalled) {
+	    journal.clear();
+	}
+    }
+
     public boolean hasStarted() {
-	return stepNumber.compareTo(BigInteger.ZERO) != 0;
+	return !stepNumber.isZero();
+    }
+
+    public boolean isReady() {
+	return isReady;
+    }
+
+    /**
+     * @return Whether steps are being taken continuously in the background.
+     */
+    public boolean isRunning() {
+	return isRunning;
+    }
+
+    /**
+     * Records whether steps are being taken continuously in the background,
+     * telling observers if that has changed.
+     */
+    public void setRunning(boolean isRunning) {
+	if (this.isRunning != isRunning) {
+	    this.isRunning = isRunning;
+
+	    setChanged();
+	    notifyObservers(new SimulationUpdateEvent(
+		    SimulationUpdate.RUNNING_STATE_CHANGED, isRunning));
+	}
     }
 
     public boolean readyStateChanged() {
-	boolean newState = (algorithm != null) && topology.isValid();
+	boolean newState = (algorithm != null || trace != null)
+		&& topology.isValid();
 	if (newState != isReady) {
 	    isReady = newState;
 
@@ -116,67 +351,301 @@ public class Simulation extends Observable implements Observer {
 	}
     }
 
-    public BigInteger getStepNumber() {
+    /**
+     * @return The number of steps taken so far. This is the simulation's own
+     *         counter, so it must not be modified.
+     */
+    public Counter getStepNumber() {
 	return stepNumber;
     }
 
+    /**
+     * @return The running totals of every step taken since the simulation
+     *         started, or since it was resumed from a snapshot. They are put
+     *         back along with everything else when undoing or seeking. This
+     *         is the simulation's own copy, so it must not be modified.
+     */
+    public SimulationMetrics getMetrics() {
+	return metrics;
+    }
+
+    /**
+     * @return The number of packets injected so far. This is the
+     *         simulation's own counter, so it must not be modified.
+     */
+    public Counter getPacketCount() {
+	return packetCount;
+    }
+
+    /**
+     * Picks up a simulation from a snapshot, as though it had taken the steps
+     * that led to it. The routing tables are built again from the topology if
+     * the snapshot was taken after the first step.
+     * 
+     * @param stepNumber
+     *            The number of steps taken when the snapshot was taken.
+     * @param packetCount
+     *            The number of packets injected by then.
+     * @param state
+     *            The packets in the topology at that point.
+     */
+    protected void resume(long stepNumber, long packetCount,
+	    TopologyState state) {
+	journal.clear();
+	if (stepNumber > 0) {
+	    algorithm.buildRoutingTables(topology);
+	}
+	state.restore(topology);
+	this.stepNumber.reset();
+	this.stepNumber.add(stepNumber);
+	this.packetCount.reset();
+	this.packetCount.add(packetCount);
+	metrics.reset();
+    }
+
     public void resetMetrics() {
 	topology.resetPackets();
-	stepNumber = BigInteger.ZERO;
-	packetCount = BigInteger.ZERO;
+	stepNumber.reset();
+	packetCount.reset();
+	journal.clear();
+	metrics.reset();
+	firstStepAnnounced = false;
 
 	setChanged();
 	notifyObservers(new SimulationUpdateEvent(
 		SimulationUpdate.METRICS_RESET, null));
     }
 
-    public void step() {
-	if (stepNumber.equals(BigInteger.ZERO)) {
-	    algorithm.buildRoutingTables(topology);
-	}
+    /**
+     * Take a single step of the simulation, injecting any packets that are
+     * due.
+     * 
+     * @return What happened during the step.
+     */
+    public StepResult step() {
+	StepResult result = stepQuietly();
+	announceSteps(SimulationUpdate.STEP_TAKEN, result);
+	return result;
+    }
 
-	boolean doInject = stepNumber.mod(new BigInteger(rate + "")) == BigInteger.ZERO;
-	stepNumber = stepNumber.add(BigInteger.ONE);
+    /**
+     * Take a single step without telling observers about it, so that many
+     * steps can be taken in a row off the event dispatch thread. StepListeners
+     * are still told about every step. Observers can be brought up to date
+     * afterwards with {@link #stepsTaken(StepResult)}.
+     * 
+     * @return What happened during the step.
+     */
+    public StepResult stepQuietly() {
+	StepResult result = takeStep();
+
+	if (!stepListeners.isEmpty()) {
+	    StepDelta delta = new StepDelta(result);
+	    for (StepListener listener : stepListeners) {
+		listener.stepTaken(delta);
+	    }
+	}
 
-	StepResult result = algorithm.step(topology);
+	return result;
+    }
 
-	if (doInject) {
-	    result.addPacketInjectedMessage(topology.injectPacket(packetCount
-		    .toString()));
-	    packetCount = packetCount.add(BigInteger.ONE);
-	}
+    /**
+     * Tells observers that steps have been taken quietly since they were last
+     * told about one, with a STEPS_TAKEN update.
+     * 
+     * @param latest
+     *            What happened during the latest of the steps.
+     */
+    public void stepsTaken(StepResult latest) {
+	announceSteps(SimulationUpdate.STEPS_TAKEN, latest);
+    }
 
-	if (stepNumber.equals(BigInteger.ONE)) {
-	    // First step taken, trigger an update
+    private void announceSteps(SimulationUpdate action, StepResult latest) {
+	if (!firstStepAnnounced && hasStarted()) {
+	    firstStepAnnounced = true;
 	    setChanged();
 	    notifyObservers(new SimulationUpdateEvent(
 		    SimulationUpdate.FIRST_STEP_TAKEN, null));
 	}
 
-	setChanged();
-	notifyObservers(new SimulationUpdateEvent(SimulationUpdate.STEP_TAKEN,
-		result));
+	if (countObservers() > 0) {
+	    setChanged();
+	    notifyObservers(new SimulationUpdateEvent(action, latest));
+	}
+    }
+
+    private StepResult takeStep() {
+	if (trace != null) {
+	    stepNumber.increment();
+	    StepResult result = trace.step(stepNumber, packetCount);
+	    metrics.record(result);
+	    return result;
+	}
+
+	if (stepNumber.isZero()) {
+	    algorithm.buildRoutingTables(topology);
+	}
+
+	stepNumber.increment();
+
+	StepResult result = algorithm.step(topology, stepNumber);
+
+	injections.clear();
+	traffic.generate(stepNumber, topology.getRouters(), randomStreams,
+		injections);
+	if (injections.size() > 0) {
+	    result.addPacketsInjected(topology.injectPackets(
+		    injections.getSources(), injections.getDestinations(),
+		    injections.size(), packetCount));
+	}
+
+	metrics.record(result);
+	if (isJournalled && stepNumber.fitsInLong() && packetCount.fitsInLong()) {
+	    journal.stepTaken(stepNumber.longValue(), topology, metrics,
+		    packetCount.longValue());
+	}
+
+	return result;
+    }
+
+    /**
+     * @return The number of steps that can be taken before the next one that
+     *         might inject a packet, so 0 if the next step might.
+     */
+    public long getStepsUntilInjection() {
+	return traffic.getStepsUntilInjection(stepNumber);
+    }
+
+    /**
+     * @return True if no packets are in flight, so that steps taken before the
+     *         next injection would do nothing.
+     */
+    public boolean isIdle() {
+	return topology.findActiveRouters() == 0;
+    }
+
+    /**
+     * Advances the step number past steps in which nothing would happen,
+     * without taking them. Nothing is sent to observers, since nothing has
+     * changed apart from the step number.
+     * 
+     * @param count
+     *            The number of steps to skip.
+     * @throws IllegalStateException
+     *             If packets are in flight, or a packet might be injected
+     *             within the skipped steps.
+     */
+    public void skipIdleSteps(long count) throws IllegalStateException {
+	if (count == 0) {
+	    return;
+	}
+	if (!isIdle() || count > getStepsUntilInjection()) {
+	    throw new IllegalStateException("Steps to skip are not idle");
+	}
+	stepNumber.add(count);
+	metrics.recordIdleSteps(count);
     }
 
     public void undoStep() {
-	if (stepNumber.compareTo(BigInteger.ZERO) > 0) {
-	    algorithm.undoStep(topology);
+	if (!stepNumber.isZero() && stepNumber.fitsInLong()) {
+	    goTo(stepNumber.longValue() - 1);
 
 	    setChanged();
 	    notifyObservers(new SimulationUpdateEvent(
 		    SimulationUpdate.UNDO_STEP, null));
-	    stepNumber = stepNumber.subtract(BigInteger.ONE);
+	}
+    }
+
+    /**
+     * Goes back or forward to the end of a step. The simulation is put back
+     * to the last checkpoint at or before the step, and the steps after it
+     * are taken again without telling observers about them. Since the steps
+     * only depend on the seed, they come out exactly as they did the first
+     * time. When a trace is being played back, its keyframes are used
+     * instead of checkpoints.
+     * 
+     * @param target
+     *            The number of the step to go to, where 0 is the start.
+     * @throws IllegalArgumentException
+     *             If the step is negative.
+     * @throws IllegalStateException
+     *             If the simulation has gone past the range of a long.
+     */
+    public void seek(long target) throws IllegalArgumentException,
+	    IllegalStateException {
+	if (target < 0) {
+	    throw new IllegalArgumentException("Can't seek to step " + target);
+	}
+	if (!stepNumber.fitsInLong()) {
+	    throw new IllegalStateException("Too many steps taken to seek");
+	}
+	goTo(target);
+
+	setChanged();
+	notifyObservers(new SimulationUpdateEvent(SimulationUpdate.SEEK, null));
+    }
+
+    private void goTo(long target) {
+	if (trace != null) {
+	    trace.goTo(target, stepNumber, packetCount, metrics);
+	    if (stepNumber.isZero()) {
+		firstStepAnnounced = false;
+	    }
+	    return;
+	}
 
-	    if (stepNumber.mod(new BigInteger(rate + "")) == BigInteger.ZERO) {
-		packetCount = packetCount.subtract(BigInteger.ONE);
+	long current = stepNumber.longValue();
+	Map.Entry<Long, Checkpoint> checkpoint = journal.getCheckpoint(target);
+
+	if (target < current) {
+	    if (checkpoint == null) {
+		topology.resetPackets();
+		stepNumber.reset();
+		packetCount.reset();
+		metrics.reset();
+	    } else {
+		restore(checkpoint.getKey(), checkpoint.getValue());
 	    }
+	} else if (checkpoint != null && checkpoint.getKey() > current) {
+	    restore(checkpoint.getKey(), checkpoint.getValue());
+	}
+
+	while (stepNumber.compareTo(target) < 0) {
+	    takeStep();
 	}
+
+	if (stepNumber.isZero()) {
+	    firstStepAnnounced = false;
+	}
+    }
+
+    private void restore(long checkpointStep, Checkpoint checkpoint) {
+	checkpoint.getState().restore(topology);
+	metrics.reset();
+	metrics.add(checkpoint.getMetrics());
+	stepNumber.reset();
+	stepNumber.add(checkpointStep);
+	packetCount.reset();
+	packetCount.add(checkpoint.getPacketCount());
+    }
+
+    /**
+     * Adds a listener that is given what changed in every step taken from now
+     * on. Steps that are replayed by undoing or seeking aren't passed on.
+     */
+    public void addStepListener(StepListener listener) {
+	stepListeners.add(listener);
+    }
+
+    public void removeStepListener(StepListener listener) {
+	stepListeners.remove(listener);
     }
 
     @Override
     public void addObserver(Observer obs) {
 	super.addObserver(obs);
 	topology.addObserver(obs);
+	topologyObservers.add(obs);
     }
 
     @Override
@@ -187,7 +656,8 @@ public class Simulation extends Observable implements Observer {
 		    || event.getAction() == TopologyUpdate.ROUTER_REMOVED
 		    || event.getAction() == TopologyUpdate.EDGE_ADDED
 		    || event.getAction() == TopologyUpdate.EDGE_REMOVED) {
-		if (stepNumber.compareTo(BigInteger.ONE) > 0) {
+		endReplay(); // The trace no longer matches the topology
+		if (stepNumber.compareTo(1) > 0) {
 		    resetMetrics();
 		}
 
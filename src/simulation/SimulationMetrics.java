@@ -0,0 +1,146 @@
+package simulation;
+
+import simulation.StepEvents.Type;
+
+/**
+ * Running totals for a simulation, accumulated from the StepResult of every
+ * step taken. This is what the headless runner reports at the end of a run,
+ * since there are no GUI models around to keep track of anything.
+ */
+public class SimulationMetrics {
+
+    private long steps;
+    private long packetsInjected;
+    private long packetsDelivered;
+    private long packetsDropped;
+    private long packetsTransmitted;
+    private long deliveredHops;
+    private final RouteMetrics routes;
+
+    public SimulationMetrics() {
+	routes = new RouteMetrics();
+	reset();
+    }
+
+    public SimulationMetrics(SimulationMetrics metrics) {
+	steps = metrics.steps;
+	packetsInjected = metrics.packetsInjected;
+	packetsDelivered = metrics.packetsDelivered;
+	packetsDropped = metrics.packetsDropped;
+	packetsTransmitted = metrics.packetsTransmitted;
+	deliveredHops = metrics.deliveredHops;
+	routes = new RouteMetrics(metrics.routes);
+    }
+
+    /**
+     * Adds the outcome of a single step to the totals.
+     *
+     * @param result
+     *            The result of the step that was just taken.
+     */
+    public void record(StepResult result) {
+	steps++;
+	packetsInjected += result.getPacketsInjected();
+	packetsDelivered += result.getPacketsReceived();
+	packetsDropped += result.getPacketsDropped();
+	packetsTransmitted += result.getPacketsTransmitted();
+	deliveredHops += result.getHopsReceived();
+
+	StepEvents events = result.getEvents();
+	for (int i = 0; i < events.size(); i++) {
+	    if (events.getType(i) == Type.DELIVERED) {
+		routes.record(events.getSource(i), events.getDestination(i),
+			events.getHops(i));
+	    }
+	}
+    }
+
+    /**
+     * Adds another set of totals to these ones.
+     *
+     * @param other
+     *            The totals to add.
+     */
+    public void add(SimulationMetrics other) {
+	steps += other.steps;
+	packetsInjected += other.packetsInjected;
+	packetsDelivered += other.packetsDelivered;
+	packetsDropped += other.packetsDropped;
+	packetsTransmitted += other.packetsTransmitted;
+	deliveredHops += other.deliveredHops;
+	routes.add(other.routes);
+    }
+
+    /**
+     * Adds steps in which nothing happened to the totals.
+     *
+     * @param count
+     *            The number of idle steps.
+     */
+    public void recordIdleSteps(long count) {
+	steps += count;
+    }
+
+    public void reset() {
+	steps = 0;
+	packetsInjected = 0;
+	packetsDelivered = 0;
+	packetsDropped = 0;
+	packetsTransmitted = 0;
+	deliveredHops = 0;
+	routes.reset();
+    }
+
+    public long getSteps() {
+	return steps;
+    }
+
+    public long getPacketsInjected() {
+	return packetsInjected;
+    }
+
+    public long getPacketsDelivered() {
+	return packetsDelivered;
+    }
+
+    public long getPacketsDropped() {
+	return packetsDropped;
+    }
+
+    public long getPacketsTransmitted() {
+	return packetsTransmitted;
+    }
+
+    /**
+     * @return The deliveries along each route, which must not be modified.
+     */
+    public RouteMetrics getRoutes() {
+	return routes;
+    }
+
+    /**
+     * @return The average number of hops taken by delivered packets, or 0 if
+     *         nothing has been delivered yet.
+     */
+    public double getAverageHops() {
+	if (packetsDelivered == 0) {
+	    return 0;
+	}
+	return (deliveredHops + 0.0) / packetsDelivered;
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder();
+	sb.append("Total steps:         ").append(steps).append('\n');
+	sb.append("Packets injected:    ").append(packetsInjected).append('\n');
+	sb.append("Packets delivered:   ").append(packetsDelivered)
+		.append('\n');
+	sb.append("Packets dropped:     ").append(packetsDropped).append('\n');
+	sb.append("Total transmissions: ").append(packetsTransmitted)
+		.append('\n');
+	sb.append("Average hops:        ").append(
+		String.format("%.5f", getAverageHops()));
+	return sb.toString();
+    }
+}
@@ -0,0 +1,209 @@
+package simulation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import network.Router;
+import network.Topology;
+import network.TopologyState;
+import traffic.TrafficGenerator;
+import algorithm.RoutingAlgorithm;
+
+import common.BinaryStrings;
+import common.RandomStreams;
+
+/**
+ * A saved copy of everything needed to carry on a simulation: its settings,
+ * traffic and seed, the topology, the packets in flight and the step and
+ * packet counters. Routing tables aren't saved, since they take space in
+ * proportion to the square of the number of routers; they are rebuilt from
+ * the topology instead. Every step is derived from the seed and
+ * the step number, so the seed is all of the random state there is.
+ * <p>
+ * Snapshots are written as a compact binary file and read back through a
+ * memory-mapped buffer. Each call to {@link #restore()} builds a new,
+ * independent Simulation from the same buffer, so many what-if runs can be
+ * forked from one long warm-up without simulating it again.
+ */
+public class SimulationSnapshot {
+
+    private static final int MAGIC = 0x4e53494d; // "NSIM"
+    private static final int VERSION = 2;
+
+    private final ByteBuffer buffer;
+    private final long seed;
+
+    private SimulationSnapshot(ByteBuffer buffer) throws IOException {
+	this.buffer = buffer;
+	try {
+	    if (buffer.getInt(0) != MAGIC) {
+		throw new IOException("Not a simulation snapshot");
+	    }
+	    int version = buffer.getInt(4);
+	    if (version != VERSION) {
+		throw new IOException("Unsupported snapshot version "
+			+ version);
+	    }
+	    seed = buffer.getLong(8);
+	} catch (IndexOutOfBoundsException ex) {
+	    throw new IOException("Not a simulation snapshot", ex);
+	}
+    }
+
+    /**
+     * Writes a snapshot of a simulation to a file, replacing the file if it
+     * exists.
+     * 
+     * @param simulation
+     *            The simulation to save. It must have a routing algorithm.
+     * @param file
+     *            The file to write.
+     * @throws IOException
+     *             If the file can't be written, or the simulation has run
+     *             for too many steps to be saved.
+     */
+    public static void save(Simulation simulation, File file)
+	    throws IOException {
+	if (!simulation.getStepNumber().fitsInLong()
+		|| !simulation.getPacketCount().fitsInLong()) {
+	    throw new IOException("Too many steps taken to save a snapshot");
+	}
+
+	Topology topology = simulation.getTopology();
+	Router[] routers = topology.getRouters();
+
+	try (DataOutputStream out = new DataOutputStream(
+		new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+	    out.writeInt(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(simulation.getSeed());
+	    BinaryStrings.write(out, simulation.getTrafficGenerator()
+		    .toString());
+	    BinaryStrings.write(out, simulation.getRoutingAlgorithm()
+		    .toString());
+	    out.writeLong(simulation.getStepNumber().longValue());
+	    out.writeLong(simulation.getPacketCount().longValue());
+
+	    out.writeInt(routers.length);
+	    for (Router router : routers) {
+		BinaryStrings.write(out, router.getName());
+	    }
+
+	    StepLog.writeEdges(out, topology.getGraph());
+
+	    TopologyState.capture(topology).write(out, topology);
+	}
+    }
+
+    /**
+     * Maps a snapshot file into memory so that simulations can be restored
+     * from it.
+     * 
+     * @param file
+     *            The snapshot file.
+     * @return The snapshot.
+     * @throws IOException
+     *             If the file can't be read or isn't a snapshot.
+     */
+    public static SimulationSnapshot open(File file) throws IOException {
+	try (FileChannel channel = FileChannel.open(file.toPath(),
+		StandardOpenOption.READ)) {
+	    return new SimulationSnapshot(channel.map(
+		    FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+	}
+    }
+
+    /**
+     * @return The seed of the simulation the snapshot was taken from.
+     */
+    public long getSeed() {
+	return seed;
+    }
+
+    /**
+     * Builds a new Simulation in the state the snapshot was taken in, with
+     * its own topology and routing algorithm.
+     * 
+     * @return The restored simulation.
+     * @throws IOException
+     *             If the snapshot is corrupt.
+     */
+    public Simulation restore() throws IOException {
+	return restore(new RandomStreams(seed));
+    }
+
+    /**
+     * Builds a new Simulation in the state the snapshot was taken in, but
+     * with different randomness from then on, for forking several runs from
+     * the same point.
+     * 
+     * @param randomStreams
+     *            Where the restored simulation's randomness comes from.
+     * @return The restored simulation.
+     * @throws IOException
+     *             If the snapshot is corrupt.
+     */
+    public Simulation restore(RandomStreams randomStreams) throws IOException {
+	ByteBuffer in = buffer.duplicate();
+	in.position(16);
+
+	try {
+	    TrafficGenerator traffic = TrafficGenerator.create(BinaryStrings
+		    .read(in));
+	    String algorithmName = BinaryStrings.read(in);
+	    RoutingAlgorithm algorithm = RoutingAlgorithm.create(algorithmName);
+	    if (algorithm == null) {
+		throw new IOException("Unknown routing algorithm "
+			+ algorithmName);
+	    }
+	    long stepNumber = in.getLong();
+	    long packetCount = in.getLong();
+
+	    Topology topology = new Topology();
+	    Router[] routers = new Router[in.getInt()];
+	    for (int i = 0; i < routers.length; i++) {
+		routers[i] = new Router(BinaryStrings.read(in));
+		if (!topology.addRouter(routers[i])) {
+		    throw new IOException("Router " + routers[i]
+			    + " appears twice");
+		}
+	    }
+	    if (!Arrays.equals(topology.getRouters(), routers)) {
+		throw new IOException("Routers are out of order");
+	    }
+
+	    int edgeCount = in.getInt();
+	    for (int i = 0; i < edgeCount; i++) {
+		topology.addEdge(readRouter(in, routers),
+			readRouter(in, routers));
+	    }
+
+	    TopologyState state = TopologyState.read(in, topology);
+
+	    Simulation simulation = new Simulation(topology, algorithm, traffic);
+	    simulation.setRandomStreams(randomStreams);
+	    simulation.resume(stepNumber, packetCount, state);
+	    return simulation;
+	} catch (BufferUnderflowException | IllegalArgumentException
+		| NegativeArraySizeException ex) {
+	    throw new IOException("Corrupt snapshot", ex);
+	}
+    }
+
+    private static Router readRouter(ByteBuffer in, Router[] routers)
+	    throws IOException {
+	int index = in.getInt();
+	if (index < 0 || index >= routers.length) {
+	    throw new IOException("No router at index " + index);
+	}
+	return routers[index];
+    }
+}
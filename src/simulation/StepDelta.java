@@ -0,0 +1,113 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import simulation.StepEvents.Type;
+
+/**
+ * Everything that changed to the packets in a single step, handed to
+ * StepListeners in one batch once the step is over. A delta never changes
+ * after it has been made, so listeners can keep it or pass it to another
+ * thread.
+ * <p>
+ * A delta shares the step's events rather than copying them. The lists of
+ * PacketRecords are only built the first time they are asked for, so
+ * listeners that read the events directly cost nothing per packet.
+ */
+public class StepDelta {
+
+    private final long stepNumber;
+    private final String stepNumberString;
+    private final StepEvents events;
+    private List<PacketRecord> injected; // Guarded by this, null until built
+    private List<PacketRecord> delivered;
+    private List<PacketRecord> dropped;
+    private List<PacketRecord> moved;
+
+    public StepDelta(StepResult result) {
+	stepNumber = result.getStepNumber();
+	stepNumberString = result.getStepNumberString();
+	events = result.getEvents();
+    }
+
+    /**
+     * @return The step number, or Long.MAX_VALUE if the simulation has run
+     *         for longer than a long can count.
+     */
+    public long getStepNumber() {
+	return stepNumber;
+    }
+
+    public String getStepNumberString() {
+	return stepNumberString;
+    }
+
+    /**
+     * @return Every event of the step in the order they happened, which must
+     *         not be modified.
+     */
+    public StepEvents getEvents() {
+	return events;
+    }
+
+    public synchronized List<PacketRecord> getInjected() {
+	buildRecords();
+	return injected;
+    }
+
+    /**
+     * @return The packets that reached their destination.
+     */
+    public synchronized List<PacketRecord> getDelivered() {
+	buildRecords();
+	return delivered;
+    }
+
+    public synchronized List<PacketRecord> getDropped() {
+	buildRecords();
+	return dropped;
+    }
+
+    /**
+     * @return The packets sent from one router to another, including new
+     *         flooding copies.
+     */
+    public synchronized List<PacketRecord> getMoved() {
+	buildRecords();
+	return moved;
+    }
+
+    private void buildRecords() {
+	if (injected != null) {
+	    return;
+	}
+
+	List<PacketRecord> injected = new ArrayList<>();
+	List<PacketRecord> delivered = new ArrayList<>();
+	List<PacketRecord> dropped = new ArrayList<>();
+	List<PacketRecord> moved = new ArrayList<>();
+	for (int i = 0; i < events.size(); i++) {
+	    Type type = events.getType(i);
+	    if (type == Type.INJECTED) {
+		injected.add(new PacketRecord(events, i));
+	    } else if (type == Type.SENT) {
+		moved.add(new PacketRecord(events, i));
+	    } else if (type == Type.DELIVERED) {
+		delivered.add(new PacketRecord(events, i));
+	    } else {
+		dropped.add(new PacketRecord(events, i));
+	    }
+	}
+	this.injected = unmodifiable(injected);
+	this.delivered = unmodifiable(delivered);
+	this.dropped = unmodifiable(dropped);
+	this.moved = unmodifiable(moved);
+    }
+
+    private static List<PacketRecord> unmodifiable(List<PacketRecord> records) {
+	return records.isEmpty() ? Collections.<PacketRecord> emptyList()
+		: Collections.unmodifiableList(records);
+    }
+}
@@ -0,0 +1,229 @@
+package simulation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import network.Packet;
+import network.Router;
+
+/**
+ * The events of a single step, kept in parallel arrays of primitives and
+ * router references instead of an object or message per event. Nothing is
+ * allocated per event apart from growing the arrays, and messages are only
+ * rendered when something asks for them, such as the step log showing the
+ * step.
+ */
+public class StepEvents {
+
+    public enum Type {
+	INJECTED, SENT, DELIVERED, DROPPED
+    }
+
+    /**
+     * The number of bytes each event takes in binary.
+     */
+    static final int BINARY_SIZE = 1 + 8 + 4 * 4 + 8;
+
+    private static final Type[] TYPES = Type.values();
+    private static final int INITIAL_CAPACITY = 8;
+    private static final byte[] NO_BYTES = {};
+    private static final long[] NO_LONGS = {};
+    private static final Router[] NO_ROUTERS = {};
+
+    private byte[] types;
+    private long[] packetIDs;
+    private Router[] sources;
+    private Router[] destinations;
+    private Router[] previous;
+    private Router[] routers;
+    private long[] hops;
+    private int size;
+
+    public StepEvents() {
+	// Steps with no events share empty arrays until they have some
+	types = NO_BYTES;
+	packetIDs = NO_LONGS;
+	sources = NO_ROUTERS;
+	destinations = NO_ROUTERS;
+	previous = NO_ROUTERS;
+	routers = NO_ROUTERS;
+	hops = NO_LONGS;
+	size = 0;
+    }
+
+    /**
+     * Records an event, taking what is needed from the packet as it is now.
+     * 
+     * @param type
+     *            What happened to the packet.
+     * @param packet
+     *            The packet.
+     * @param previousRouter
+     *            The router the packet was at before this step, which is the
+     *            router it is at unless it has just been sent.
+     */
+    public void add(Type type, Packet packet, Router previousRouter) {
+	ensureCapacity(size + 1);
+	types[size] = (byte) type.ordinal();
+	packetIDs[size] = packet.getID();
+	sources[size] = packet.getSource();
+	destinations[size] = packet.getDestination();
+	previous[size] = previousRouter;
+	routers[size] = packet.getCurrentRouter();
+	hops[size] = packet.getHops();
+	size++;
+    }
+
+    /**
+     * Adds all of another step's events after these ones.
+     */
+    public void append(StepEvents events) {
+	ensureCapacity(size + events.size);
+	System.arraycopy(events.types, 0, types, size, events.size);
+	System.arraycopy(events.packetIDs, 0, packetIDs, size, events.size);
+	System.arraycopy(events.sources, 0, sources, size, events.size);
+	System.arraycopy(events.destinations, 0, destinations, size,
+		events.size);
+	System.arraycopy(events.previous, 0, previous, size, events.size);
+	System.arraycopy(events.routers, 0, routers, size, events.size);
+	System.arraycopy(events.hops, 0, hops, size, events.size);
+	size += events.size;
+    }
+
+    /**
+     * Writes the events in binary, with routers by their index in the
+     * Topology. The buffer must have room for {@link #BINARY_SIZE} bytes for
+     * every event.
+     */
+    void write(ByteBuffer out) {
+	for (int i = 0; i < size; i++) {
+	    out.put(types[i]);
+	    out.putLong(packetIDs[i]);
+	    out.putInt(sources[i].getIndex());
+	    out.putInt(destinations[i].getIndex());
+	    out.putInt(previous[i].getIndex());
+	    out.putInt(routers[i].getIndex());
+	    out.putLong(hops[i]);
+	}
+    }
+
+    /**
+     * Adds events read back from what {@link #write(ByteBuffer)} wrote.
+     * 
+     * @param count
+     *            The number of events to read.
+     * @param routers
+     *            The routers of the Topology the events happened in.
+     * @throws IOException
+     *             If an event is corrupt.
+     */
+    void read(ByteBuffer in, int count, Router[] routers) throws IOException {
+	ensureCapacity(size + count);
+	for (int i = 0; i < count; i++) {
+	    byte type = in.get();
+	    if (type < 0 || type >= TYPES.length) {
+		throw new IOException("Unknown event type " + type);
+	    }
+	    types[size] = type;
+	    packetIDs[size] = in.getLong();
+	    sources[size] = readRouter(in, routers);
+	    destinations[size] = readRouter(in, routers);
+	    previous[size] = readRouter(in, routers);
+	    this.routers[size] = readRouter(in, routers);
+	    hops[size] = in.getLong();
+	    size++;
+	}
+    }
+
+    private static Router readRouter(ByteBuffer in, Router[] routers)
+	    throws IOException {
+	int index = in.getInt();
+	if (index < 0 || index >= routers.length) {
+	    throw new IOException("No router at index " + index);
+	}
+	return routers[index];
+    }
+
+    private void ensureCapacity(int capacity) {
+	if (capacity > types.length) {
+	    int length = Math.max(capacity,
+		    Math.max(INITIAL_CAPACITY, types.length * 2));
+	    types = Arrays.copyOf(types, length);
+	    packetIDs = Arrays.copyOf(packetIDs, length);
+	    sources = Arrays.copyOf(sources, length);
+	    destinations = Arrays.copyOf(destinations, length);
+	    previous = Arrays.copyOf(previous, length);
+	    routers = Arrays.copyOf(routers, length);
+	    hops = Arrays.copyOf(hops, length);
+	}
+    }
+
+    /**
+     * @return The number of events.
+     */
+    public int size() {
+	return size;
+    }
+
+    public Type getType(int index) {
+	return TYPES[types[checkIndex(index)]];
+    }
+
+    public long getPacketID(int index) {
+	return packetIDs[checkIndex(index)];
+    }
+
+    public Router getSource(int index) {
+	return sources[checkIndex(index)];
+    }
+
+    public Router getDestination(int index) {
+	return destinations[checkIndex(index)];
+    }
+
+    /**
+     * @return The router the packet was at before the step.
+     */
+    public Router getPrevious(int index) {
+	return previous[checkIndex(index)];
+    }
+
+    /**
+     * @return The router the packet was at once the event had happened.
+     */
+    public Router getRouter(int index) {
+	return routers[checkIndex(index)];
+    }
+
+    public long getHops(int index) {
+	return hops[checkIndex(index)];
+    }
+
+    private int checkIndex(int index) {
+	if (index < 0 || index >= size) {
+	    throw new IndexOutOfBoundsException("Event " + index + " of "
+		    + size);
+	}
+	return index;
+    }
+
+    /**
+     * @return A description of an event, built when it is asked for.
+     */
+    public String getMessage(int index) {
+	switch (getType(index)) {
+	case INJECTED:
+	    return "P" + packetIDs[index] + " added to "
+		    + sources[index].getName();
+	case SENT:
+	    return previous[index].getName() + " sent P" + packetIDs[index]
+		    + " to " + routers[index].getName();
+	case DELIVERED:
+	    return "P" + packetIDs[index] + " reached its destination "
+		    + destinations[index].getName() + ".";
+	default:
+	    return routers[index].getName() + " dropped P" + packetIDs[index];
+	}
+    }
+}
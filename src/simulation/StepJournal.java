@@ -0,0 +1,133 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import network.Topology;
+import network.TopologyState;
+
+/**
+ * Keeps the checkpoints a Simulation needs to go back to an earlier step. A
+ * checkpoint holds the state of the topology, the running totals and the
+ * number of packets injected.
+ * Every step is reproducible from the seed, so nothing else about a step has
+ * to be kept: going back means restoring the last checkpoint at or before
+ * the target and taking the steps in between again.
+ * <p>
+ * A checkpoint is captured every <code>interval</code> steps. Once there are
+ * more than <code>maximumCheckpoints</code>, every other checkpoint in the
+ * older half is thrown away, so recent steps stay densely covered while
+ * memory stays bounded. Undoing a single step never replays more than
+ * <code>interval</code> steps.
+ */
+public class StepJournal {
+
+    public static final int DEFAULT_INTERVAL = 64;
+    public static final int DEFAULT_MAXIMUM_CHECKPOINTS = 128;
+
+    private final long interval;
+    private final int maximumCheckpoints;
+    private final TreeMap<Long, Checkpoint> checkpoints;
+
+    public StepJournal() {
+	this(DEFAULT_INTERVAL, DEFAULT_MAXIMUM_CHECKPOINTS);
+    }
+
+    /**
+     * @param interval
+     *            The number of steps between checkpoints.
+     * @param maximumCheckpoints
+     *            The number of checkpoints to keep before thinning them out.
+     */
+    public StepJournal(long interval, int maximumCheckpoints) {
+	this.interval = interval;
+	this.maximumCheckpoints = Math.max(2, maximumCheckpoints);
+	checkpoints = new TreeMap<>();
+    }
+
+    /**
+     * Called after every step taken, capturing a checkpoint if one is due.
+     * 
+     * @param stepNumber
+     *            The number of the step just taken.
+     * @param topology
+     *            The topology being simulated.
+     * @param metrics
+     *            The totals up to and including the step.
+     * @param packetCount
+     *            The number of packets injected up to and including the step.
+     */
+    public void stepTaken(long stepNumber, Topology topology,
+	    SimulationMetrics metrics, long packetCount) {
+	if (stepNumber % interval == 0 && !checkpoints.containsKey(stepNumber)) {
+	    checkpoints.put(stepNumber, new Checkpoint(TopologyState
+		    .capture(topology), new SimulationMetrics(metrics),
+		    packetCount));
+	    if (checkpoints.size() > maximumCheckpoints) {
+		thin();
+	    }
+	}
+    }
+
+    private void thin() {
+	List<Long> older = new ArrayList<>(checkpoints.headMap(
+		checkpoints.lastKey()).keySet());
+	older = older.subList(0, older.size() / 2);
+	for (int i = 1; i < older.size(); i += 2) {
+	    checkpoints.remove(older.get(i));
+	}
+    }
+
+    /**
+     * @param stepNumber
+     *            The step to go back to.
+     * @return The last checkpoint at or before the step, or null if there is
+     *         none, in which case the simulation has to start again from
+     *         step 0.
+     */
+    public Map.Entry<Long, Checkpoint> getCheckpoint(long stepNumber) {
+	return checkpoints.floorEntry(stepNumber);
+    }
+
+    /**
+     * @return The number of checkpoints being kept.
+     */
+    public int size() {
+	return checkpoints.size();
+    }
+
+    public void clear() {
+	checkpoints.clear();
+    }
+
+    public static class Checkpoint {
+
+	private final TopologyState state;
+	private final SimulationMetrics metrics;
+	private final long packetCount;
+
+	public Checkpoint(TopologyState state, SimulationMetrics metrics,
+		long packetCount) {
+	    this.state = state;
+	    this.metrics = metrics;
+	    this.packetCount = packetCount;
+	}
+
+	public TopologyState getState() {
+	    return state;
+	}
+
+	/**
+	 * @return The totals at the checkpoint, which must not be modified.
+	 */
+	public SimulationMetrics getMetrics() {
+	    return metrics;
+	}
+
+	public long getPacketCount() {
+	    return packetCount;
+	}
+    }
+}
@@ -0,0 +1,16 @@
+package simulation;
+
+/**
+ * Told what changed in every step a Simulation takes, with one StepDelta per
+ * step no matter how many packets were involved.
+ */
+public interface StepListener {
+
+    /**
+     * Called on the thread that took the step, after the step has finished.
+     * 
+     * @param delta
+     *            What changed during the step.
+     */
+    void stepTaken(StepDelta delta);
+}
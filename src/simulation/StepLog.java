@@ -1,9 +1,321 @@
 package simulation;
 
-public class StepLog {
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
-    public StepLog() {
-	// TODO Auto-generated constructor stub
+import network.CompactGraph;
+import network.Router;
+
+import common.BinaryStrings;
+
+/**
+ * Streams the events of every step a Simulation takes to an append-only
+ * binary trace file. Steps are encoded straight into a small pool of direct
+ * buffers on the stepping thread, and full buffers are written to the file
+ * by a background thread. If the disk falls behind, stepping waits for a
+ * buffer to come back rather than holding more of the trace in memory.
+ * <p>
+ * A trace starts with a header, followed by a record for the topology and
+ * one for every step. The topology is written again whenever the simulation's
+ * routers or edges change, and events refer to routers by their index in the
+ * latest topology record. A step record holds the step number, the number of
+ * events and then every event at a fixed size. Steps are written in the order
+ * they are taken, so after undoing, seeking or resetting, a step number that
+ * has been written before replaces the earlier steps from that number on.
+ */
+public class StepLog implements StepListener, Closeable {
+
+    protected static final int MAGIC = 0x4e545243; // "NTRC"
+    protected static final int VERSION = 1;
+    protected static final byte TOPOLOGY_RECORD = 1;
+    protected static final byte STEP_RECORD = 2;
+    protected static final int EVENT_SIZE = 1 + 8 + 4 * 4 + 8;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BUFFER_COUNT = 4;
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final Simulation simulation;
+    private final FileChannel channel;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> full;
+    private final Thread writer;
+    private ByteBuffer buffer;
+    private boolean isClosed;
+
+    private long buffersSent; // Guarded by free
+    private long buffersWritten; // Guarded by free
+    private volatile IOException failure;
+
+    private CompactGraph graph; // As of the latest topology record
+
+    /**
+     * Creates a trace file, replacing it if it exists. The log still has to
+     * be added to the simulation as a StepListener.
+     *
+     * @param file
+     *            The file to write the trace to.
+     * @param simulation
+     *            The simulation being traced.
+     * @throws IOException
+     *             If the file can't be created.
+     */
+    public StepLog(File file, Simulation simulation) throws IOException {
+	this.simulation = simulation;
+	channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+		StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	free = new ArrayBlockingQueue<>(BUFFER_COUNT);
+	full = new ArrayBlockingQueue<>(BUFFER_COUNT + 1);
+	for (int i = 1; i < BUFFER_COUNT; i++) {
+	    free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+	}
+	buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	isClosed = false;
+	buffersSent = 0;
+	buffersWritten = 0;
+	failure = null;
+
+	buffer.putInt(MAGIC);
+	buffer.putInt(VERSION);
+
+	writer = new Thread(this::writeBuffers, "StepLog writer");
+	writer.setDaemon(true);
+	writer.start();
     }
 
+    /**
+     * Encodes the step into the current buffer. Called on the thread that
+     * took the step, while the simulation can't change.
+     */
+    @Override
+    public void stepTaken(StepDelta delta) {
+	if (isClosed) {
+	    return;
+	}
+
+	// A topology has a new graph whenever its routers or edges change
+	CompactGraph current = simulation.getTopology().getGraph();
+	if (current != graph) {
+	    writeTopology(current);
+	}
+
+	StepEvents events = delta.getEvents();
+	ensureRemaining(1 + 8 + 4);
+	buffer.put(STEP_RECORD);
+	buffer.putLong(delta.getStepNumber());
+	buffer.putInt(events.size());
+	for (int i = 0; i < events.size(); i++) {
+	    ensureRemaining(EVENT_SIZE);
+	    buffer.put((byte) events.getType(i).ordinal());
+	    buffer.putLong(events.getPacketID(i));
+	    buffer.putInt(events.getSource(i).getIndex());
+	    buffer.putInt(events.getDestination(i).getIndex());
+	    buffer.putInt(events.getPrevious(i).getIndex());
+	    buffer.putInt(events.getRouter(i).getIndex());
+	    buffer.putLong(events.getHops(i));
+	}
+    }
+
+    /**
+     * Writes the number of edges, then each edge once as the indices of the
+     * routers at either end, lowest first.
+     */
+    protected static void writeEdges(DataOutput out, CompactGraph graph)
+	    throws IOException {
+	int[] neighbours = graph.getNeighbours();
+	out.writeInt(graph.getEdgeCount());
+	for (int i = 0; i < graph.size(); i++) {
+	    for (int j = graph.getStart(i); j < graph.getEnd(i); j++) {
+		if (i < neighbours[j]) {
+		    out.writeInt(i);
+		    out.writeInt(neighbours[j]);
+		}
+	    }
+	}
+    }
+
+    private void writeTopology(CompactGraph graph) {
+	this.graph = graph;
+	Router[] routers = graph.getRouters();
+
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (DataOutputStream out = new DataOutputStream(bytes)) {
+	    out.writeByte(TOPOLOGY_RECORD);
+	    out.writeInt(routers.length);
+	    for (Router router : routers) {
+		BinaryStrings.write(out, router.getName());
+	    }
+
+	    writeEdges(out, graph);
+	} catch (IOException ex) {
+	    // Can't happen when writing to memory
+	    throw new IllegalStateException(ex);
+	}
+
+	// The record may be bigger than a buffer, so copy it over in pieces
+	ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+	while (record.hasRemaining()) {
+	    ensureRemaining(1);
+	    int length = Math.min(record.remaining(), buffer.remaining());
+	    ByteBuffer piece = record.duplicate();
+	    piece.limit(piece.position() + length);
+	    buffer.put(piece);
+	    record.position(record.position() + length);
+	}
+    }
+
+    private void ensureRemaining(int length) {
+	if (buffer.remaining() < length) {
+	    send();
+	}
+    }
+
+    /**
+     * Hands the current buffer to the writer and takes an empty one, waiting
+     * for the writer to finish with one if none are free.
+     */
+    private void send() {
+	buffer.flip();
+	synchronized (free) {
+	    buffersSent++;
+	}
+	put(full, buffer);
+	buffer = take(free);
+    }
+
+    private void writeBuffers() {
+	while (true) {
+	    ByteBuffer written = take(full);
+	    if (written == END) {
+		return;
+	    }
+
+	    try {
+		while (failure == null && written.hasRemaining()) {
+		    channel.write(written);
+		}
+	    } catch (IOException ex) {
+		failure = ex; // Keep taking buffers so stepping never blocks
+	    }
+	    written.clear();
+
+	    synchronized (free) {
+		buffersWritten++;
+		free.add(written);
+		free.notifyAll();
+	    }
+	}
+    }
+
+    /**
+     * Writes everything logged so far to the file, waiting until it has been
+     * written.
+     *
+     * @throws IOException
+     *             If the trace couldn't be written.
+     */
+    public void flush() throws IOException {
+	if (!isClosed && buffer.position() > 0) {
+	    send();
+	}
+
+	boolean interrupted = false;
+	synchronized (free) {
+	    while (buffersWritten < buffersSent) {
+		try {
+		    free.wait();
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	}
+	if (interrupted) {
+	    Thread.currentThread().interrupt();
+	}
+
+	if (failure != null) {
+	    throw failure;
+	}
+    }
+
+    /**
+     * Writes everything logged so far and closes the file. Steps taken after
+     * the log is closed are ignored.
+     *
+     * @throws IOException
+     *             If the trace couldn't be written.
+     */
+    @Override
+    public void close() throws IOException {
+	if (isClosed) {
+	    return;
+	}
+
+	try {
+	    flush();
+	} finally {
+	    isClosed = true;
+	    put(full, END);
+	    boolean interrupted = false;
+	    while (writer.isAlive()) {
+		try {
+		    writer.join();
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	    channel.close();
+	}
+    }
+
+    /**
+     * Takes from a queue, waiting through interrupts so that no buffer is
+     * lost, then restores the interrupt.
+     */
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue) {
+	boolean interrupted = false;
+	try {
+	    while (true) {
+		try {
+		    return queue.take();
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	} finally {
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    private static void put(BlockingQueue<ByteBuffer> queue, ByteBuffer buffer) {
+	boolean interrupted = false;
+	try {
+	    while (true) {
+		try {
+		    queue.put(buffer);
+		    return;
+		} catch (InterruptedException ex) {
+		    interrupted = true;
+		}
+	    }
+	} finally {
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
 }
@@ -1,73 +1,250 @@
 package simulation;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import network.Packet;
 import network.Router;
 
+import simulation.StepEvents.Type;
+
+import common.Counter;
+
 public class StepResult {
 
-    private final BigInteger stepNumber;
-    private BigInteger packetsTransmitted;
-    private final List<String> packetMessages;
+    private static final int HEADER_SIZE = 8 + 4 + 8 + 3 * 4 + 8 + 4;
+    private static final byte[] NO_BYTES = {};
+
+    private final long stepNumber;
+    private final BigInteger largeStepNumber; // Only set past long range
+    private long packetsTransmitted;
+    private int packetsInjected;
+    private int packetsReceived;
+    private int packetsDropped;
+    private long hopsReceived;
+    private final StepEvents events;
+    private String html; // Rendered the first time the step is shown
+
+    public StepResult(Counter stepNumber) {
+	if (stepNumber.fitsInLong()) {
+	    this.stepNumber = stepNumber.longValue();
+	    largeStepNumber = null;
+	} else {
+	    this.stepNumber = Long.MAX_VALUE;
+	    largeStepNumber = stepNumber.toBigInteger();
+	}
+	packetsTransmitted = 0;
+	events = new StepEvents();
+	html = null;
+    }
 
-    public StepResult(BigInteger stepNumber) {
+    private StepResult(long stepNumber, BigInteger largeStepNumber) {
 	this.stepNumber = stepNumber;
-	packetsTransmitted = BigInteger.ZERO;
-	packetMessages = new ArrayList<>();
+	this.largeStepNumber = largeStepNumber;
+	packetsTransmitted = 0;
+	events = new StepEvents();
+	html = null;
     }
 
-    public BigInteger getStepNumber() {
+    /**
+     * @return The step number, or Long.MAX_VALUE if the simulation has run
+     *         for longer than a long can count.
+     * @see #getStepNumberString()
+     */
+    public long getStepNumber() {
 	return stepNumber;
     }
 
-    public BigInteger getPacketsTransmitted() {
+    /**
+     * @return The exact step number, however large it is.
+     */
+    public String getStepNumberString() {
+	return (largeStepNumber == null) ? Long.toString(stepNumber)
+		: largeStepNumber.toString();
+    }
+
+    public long getPacketsTransmitted() {
 	return packetsTransmitted;
     }
 
+    public int getPacketsInjected() {
+	return packetsInjected;
+    }
+
+    public int getPacketsReceived() {
+	return packetsReceived;
+    }
+
+    public int getPacketsDropped() {
+	return packetsDropped;
+    }
+
+    /**
+     * @return The total number of hops taken by the packets that reached their
+     *         destination this step.
+     */
+    public long getHopsReceived() {
+	return hopsReceived;
+    }
+
+    /**
+     * @return A description of every event in the step, in order. The
+     *         messages are built from the events every time this is called.
+     */
     public List<String> getPacketMessages() {
-	return packetMessages;
+	List<String> messages = new ArrayList<>(events.size());
+	for (int i = 0; i < events.size(); i++) {
+	    messages.add(events.getMessage(i));
+	}
+	return messages;
+    }
+
+    /**
+     * @return The events of the step, which must not be modified.
+     */
+    public StepEvents getEvents() {
+	return events;
+    }
+
+    /**
+     * Adds everything recorded in another result for the same step to the end
+     * of this one.
+     * 
+     * @param result
+     *            The result to add.
+     */
+    public void append(StepResult result) {
+	events.append(result.events);
+	packetsTransmitted += result.packetsTransmitted;
+	packetsInjected += result.packetsInjected;
+	packetsReceived += result.packetsReceived;
+	packetsDropped += result.packetsDropped;
+	hopsReceived += result.hopsReceived;
     }
 
     public void addPacketReceivedMessage(Packet packet) {
-	packetMessages.add(new String("P" + packet.getID()
-		+ " reached its destination "
-		+ packet.getDestination().getName() + "."));
+	packetsReceived++;
+	hopsReceived += packet.getHops();
+	events.add(Type.DELIVERED, packet, packet.getCurrentRouter());
     }
 
     public void addPacketSentMessage(Packet packet, Router source) {
-	packetMessages
-		.add(new String(source.getName() + " sent P" + packet.getID()
-			+ " to " + packet.getCurrentRouter().getName()));
-	packetsTransmitted = packetsTransmitted.add(BigInteger.ONE);
+	packetsTransmitted++;
+	events.add(Type.SENT, packet, source);
     }
 
     public void addPacketInjectedMessage(Packet packet) {
-	packetMessages.add(new String("P" + packet.getID() + " added to "
-		+ packet.getSource().getName()));
+	packetsInjected++;
+	events.add(Type.INJECTED, packet, packet.getSource());
+    }
+
+    public void addPacketsInjected(Packet[] packets) {
+	for (Packet packet : packets) {
+	    addPacketInjectedMessage(packet);
+	}
     }
 
     public void addPacketDroppedMessage(Packet packet) {
-	packetMessages.add(new String(packet.getCurrentRouter().getName()
-		+ " dropped P" + packet.getID()));
+	packetsDropped++;
+	events.add(Type.DROPPED, packet, packet.getCurrentRouter());
+    }
+
+    /**
+     * @return The number of bytes {@link #write(ByteBuffer)} takes.
+     */
+    public int getBinarySize() {
+	int size = HEADER_SIZE + events.size() * StepEvents.BINARY_SIZE;
+	if (largeStepNumber != null) {
+	    size += largeStepNumber.toByteArray().length;
+	}
+	return size;
+    }
+
+    /**
+     * Writes the step in binary, with routers by their index in the Topology,
+     * so that it can be kept out of memory without being rendered.
+     * 
+     * @param out
+     *            A buffer with room for {@link #getBinarySize()} bytes.
+     */
+    public void write(ByteBuffer out) {
+	out.putLong(stepNumber);
+	byte[] large = (largeStepNumber == null) ? NO_BYTES : largeStepNumber
+		.toByteArray();
+	out.putInt(large.length);
+	out.put(large);
+	out.putLong(packetsTransmitted);
+	out.putInt(packetsInjected);
+	out.putInt(packetsReceived);
+	out.putInt(packetsDropped);
+	out.putLong(hopsReceived);
+	out.putInt(events.size());
+	events.write(out);
+    }
+
+    /**
+     * Reads back a step written by {@link #write(ByteBuffer)}.
+     * 
+     * @param routers
+     *            The routers of the Topology the step was taken in.
+     * @throws IOException
+     *             If the step is corrupt.
+     */
+    public static StepResult read(ByteBuffer in, Router[] routers)
+	    throws IOException {
+	try {
+	    long stepNumber = in.getLong();
+	    int length = in.getInt();
+	    if (length < 0 || length > in.remaining()) {
+		throw new IOException("Corrupt step number of length "
+			+ length);
+	    }
+	    BigInteger largeStepNumber = null;
+	    if (length > 0) {
+		byte[] large = new byte[length];
+		in.get(large);
+		largeStepNumber = new BigInteger(large);
+	    }
+
+	    StepResult result = new StepResult(stepNumber, largeStepNumber);
+	    result.packetsTransmitted = in.getLong();
+	    result.packetsInjected = in.getInt();
+	    result.packetsReceived = in.getInt();
+	    result.packetsDropped = in.getInt();
+	    result.hopsReceived = in.getLong();
+	    int count = in.getInt();
+	    if (count < 0
+		    || (long) count * StepEvents.BINARY_SIZE > in.remaining()) {
+		throw new IOException("Corrupt step with " + count + " events");
+	    }
+	    result.events.read(in, count, routers);
+	    return result;
+	} catch (BufferUnderflowException ex) {
+	    throw new IOException("Unexpected end of step", ex);
+	}
     }
 
     @Override
     public String toString() {
-	return toHTML();
+	if (html == null) {
+	    html = toHTML();
+	}
+	return html;
     }
 
     private String toHTML() {
-	StringBuilder sb = new StringBuilder("<b>Step " + stepNumber.toString()
+	StringBuilder sb = new StringBuilder("<b>Step " + getStepNumberString()
 		+ ":</b><ul style=\"margin-left:5px; list-style-type:none;\">");
-	for (String message : packetMessages) {
-	    sb.append("<li>" + message + "</li>");
+	for (int i = 0; i < events.size(); i++) {
+	    sb.append("<li>").append(events.getMessage(i)).append("</li>");
 	}
 	sb.append("</ul>");
 
-	if (stepNumber.compareTo(BigInteger.ONE) > 0) {
+	if (stepNumber > 1) {
 	    sb.append("<hr style=\"display: inline-block; width:80%;\">");
 	}
 
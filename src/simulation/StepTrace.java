@@ -0,0 +1,543 @@
+package simulation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import network.Packet;
+import network.Router;
+import network.Topology;
+import simulation.StepEvents.Type;
+
+import common.Counter;
+
+/**
+ * Plays back a trace written by a StepLog without running a routing
+ * algorithm. Opening a trace reads it through once, keeping the file offset
+ * of every step record and, every so often, a keyframe of the packets in
+ * flight and the metrics so far. Getting to any step then means restoring the
+ * keyframe before it and applying the events of the few steps in between,
+ * read straight from their offsets.
+ * <p>
+ * The packets are played back in the trace's own topology, which is built
+ * from its latest topology record. A topology record starts the trace over,
+ * since the simulation it came from was reset when its topology changed.
+ */
+public class StepTrace implements Closeable {
+
+    private static final Type[] TYPES = Type.values();
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final int HEADER_SIZE = 8 + 4;
+    // A keyframe is taken once the events since the last one outnumber the
+    // packets it held by this much, so keyframes never take up more than a
+    // small part of the size of the trace
+    private static final int KEYFRAME_RATIO = 32;
+    private static final int MIN_KEYFRAME_EVENTS = 1 << 16;
+
+    private final FileChannel channel;
+    private Topology topology;
+    private Router[] routers; // In the order of the topology record
+    private long[] steps;
+    private long[] offsets;
+    private int stepCount;
+    private final List<Keyframe> keyframes;
+    private ByteBuffer record;
+
+    private StepTrace(FileChannel channel) {
+	this.channel = channel;
+	steps = new long[1024];
+	offsets = new long[1024];
+	stepCount = 0;
+	keyframes = new ArrayList<>();
+	record = ByteBuffer.allocate(HEADER_SIZE);
+    }
+
+    /**
+     * Opens a trace and reads it through to index it. A step record that was
+     * still being written when the file was read is left out.
+     *
+     * @param file
+     *            The trace file.
+     * @return The trace, positioned at step 0.
+     * @throws IOException
+     *             If the file can't be read or isn't a trace.
+     */
+    public static StepTrace open(File file) throws IOException {
+	FileChannel channel = FileChannel.open(file.toPath(),
+		StandardOpenOption.READ);
+	StepTrace trace = new StepTrace(channel);
+	try {
+	    trace.scan();
+	} catch (IOException | RuntimeException ex) {
+	    channel.close();
+	    throw ex;
+	}
+	return trace;
+    }
+
+    /**
+     * @return The topology the trace is played back in. Its packets are only
+     *         meant to be changed by the trace.
+     */
+    public Topology getTopology() {
+	return topology;
+    }
+
+    /**
+     * @return The number of the last step in the trace that has any events.
+     */
+    public long getLastStep() {
+	return (stepCount == 0) ? 0 : steps[stepCount - 1];
+    }
+
+    private void scan() throws IOException {
+	Reader in = new Reader();
+	if (!in.ensure(8) || in.buffer.getInt() != StepLog.MAGIC) {
+	    throw new IOException("Not a trace file");
+	}
+	int version = in.buffer.getInt();
+	if (version != StepLog.VERSION) {
+	    throw new IOException("Unsupported trace version " + version);
+	}
+
+	long size = channel.size();
+	Counter stepNumber = new Counter();
+	Counter packetCount = new Counter();
+	SimulationMetrics metrics = new SimulationMetrics();
+	long eventsSinceKeyframe = 0;
+
+	while (in.ensure(1)) {
+	    byte type = in.buffer.get();
+	    if (type == StepLog.TOPOLOGY_RECORD) {
+		if (!readTopology(in)) {
+		    break;
+		}
+		stepCount = 0;
+		stepNumber.reset();
+		packetCount.reset();
+		metrics.reset();
+		keyframes.clear();
+		keyframes.add(new Keyframe(topology, 0, 0, metrics));
+		eventsSinceKeyframe = 0;
+	    } else if (type == StepLog.STEP_RECORD) {
+		long offset = in.getPosition();
+		if (!in.ensure(HEADER_SIZE)) {
+		    break;
+		}
+		long step = in.buffer.getLong();
+		int count = in.buffer.getInt();
+		if (topology == null || step < 1 || count < 0) {
+		    throw new IOException("Corrupt step record at " + offset);
+		}
+		if (offset + HEADER_SIZE + (long) count * StepLog.EVENT_SIZE > size) {
+		    break; // Still being written
+		}
+
+		if (stepNumber.compareTo(step) >= 0) {
+		    // The step was taken again after going back, so it and the
+		    // steps after it replace the ones written before
+		    truncate(step - 1);
+		    goTo(step - 1, stepNumber, packetCount, metrics);
+		    eventsSinceKeyframe = 0;
+		}
+
+		metrics.recordIdleSteps(step - stepNumber.longValue() - 1);
+		stepNumber.reset();
+		stepNumber.add(step);
+		StepResult result = new StepResult(stepNumber);
+		for (int i = 0; i < count; i++) {
+		    if (!in.ensure(StepLog.EVENT_SIZE)) {
+			throw new IOException("Unexpected end of file");
+		    }
+		    applyEvent(in.buffer, result, packetCount);
+		}
+		topology.endStep();
+		metrics.record(result);
+		addStep(step, offset);
+
+		eventsSinceKeyframe += count;
+		int lastSize = keyframes.get(keyframes.size() - 1).size();
+		if (eventsSinceKeyframe >= Math.max(MIN_KEYFRAME_EVENTS,
+			(long) KEYFRAME_RATIO * lastSize)) {
+		    keyframes.add(new Keyframe(topology, step, packetCount
+			    .longValue(), metrics));
+		    eventsSinceKeyframe = 0;
+		}
+	    } else {
+		throw new IOException("Corrupt record type " + type + " at "
+			+ (in.getPosition() - 1));
+	    }
+	}
+
+	if (topology == null) {
+	    throw new IOException("The trace has no topology");
+	}
+	topology.resetPackets();
+    }
+
+    /**
+     * Reads a topology record, leaving the current topology alone if the
+     * record was still being written.
+     *
+     * @return False if the file ended before the end of the record.
+     */
+    private boolean readTopology(Reader in) throws IOException {
+	if (!in.ensure(4)) {
+	    return false;
+	}
+	int size = in.buffer.getInt();
+	if (size < 0) {
+	    throw new IOException("Corrupt topology of " + size + " routers");
+	}
+
+	Topology topology = new Topology();
+	Router[] routers = new Router[size];
+	for (int i = 0; i < size; i++) {
+	    if (!in.ensure(4)) {
+		return false;
+	    }
+	    int length = in.buffer.getInt();
+	    if (length < 0 || length > READ_BUFFER_SIZE) {
+		throw new IOException("Corrupt router name of length " + length);
+	    }
+	    if (!in.ensure(length)) {
+		return false;
+	    }
+	    byte[] name = new byte[length];
+	    in.buffer.get(name);
+	    try {
+		routers[i] = new Router(new String(name, StandardCharsets.UTF_8));
+	    } catch (IllegalArgumentException ex) {
+		throw new IOException(ex.getMessage(), ex);
+	    }
+	    if (!topology.addRouter(routers[i])) {
+		throw new IOException("Router " + routers[i] + " is repeated");
+	    }
+	}
+
+	if (!in.ensure(4)) {
+	    return false;
+	}
+	int edges = in.buffer.getInt();
+	for (int i = 0; i < edges; i++) {
+	    if (!in.ensure(8)) {
+		return false;
+	    }
+	    topology.addEdge(getRouter(routers, in.buffer.getInt()),
+		    getRouter(routers, in.buffer.getInt()));
+	}
+
+	this.topology = topology;
+	this.routers = routers;
+	return true;
+    }
+
+    private static Router getRouter(Router[] routers, int index)
+	    throws IOException {
+	if (index < 0 || index >= routers.length) {
+	    throw new IOException("Corrupt router index " + index);
+	}
+	return routers[index];
+    }
+
+    private void addStep(long step, long offset) {
+	if (stepCount == steps.length) {
+	    steps = Arrays.copyOf(steps, stepCount * 2);
+	    offsets = Arrays.copyOf(offsets, stepCount * 2);
+	}
+	steps[stepCount] = step;
+	offsets[stepCount] = offset;
+	stepCount++;
+    }
+
+    /**
+     * Forgets the steps and keyframes after a step.
+     */
+    private void truncate(long step) {
+	stepCount = firstIndexAfter(step);
+	while (keyframes.get(keyframes.size() - 1).step > step) {
+	    keyframes.remove(keyframes.size() - 1);
+	}
+    }
+
+    /**
+     * @return The index of the first step record for a step after the given
+     *         one, or stepCount if there isn't one.
+     */
+    private int firstIndexAfter(long step) {
+	int index = Arrays.binarySearch(steps, 0, stepCount, step);
+	return (index >= 0) ? index + 1 : -index - 1;
+    }
+
+    /**
+     * @return The latest keyframe at or before a step.
+     */
+    private Keyframe getKeyframe(long step) {
+	int low = 0;
+	int high = keyframes.size() - 1;
+	while (low < high) {
+	    int middle = (low + high + 1) >>> 1;
+	    if (keyframes.get(middle).step <= step) {
+		low = middle;
+	    } else {
+		high = middle - 1;
+	    }
+	}
+	return keyframes.get(low);
+    }
+
+    /**
+     * Plays back the step the counter has just been moved on to, applying its
+     * events to the topology.
+     *
+     * @param stepNumber
+     *            The number of the step.
+     * @param packetCount
+     *            The number of packets injected so far, which is counted up
+     *            for every injection.
+     * @return The events of the step, which has none if nothing was recorded
+     *         for it.
+     * @throws IllegalStateException
+     *             If the trace can't be read.
+     */
+    protected StepResult step(Counter stepNumber, Counter packetCount)
+	    throws IllegalStateException {
+	StepResult result = new StepResult(stepNumber);
+	if (stepNumber.fitsInLong()) {
+	    int index = Arrays.binarySearch(steps, 0, stepCount, stepNumber
+		    .longValue());
+	    if (index >= 0) {
+		readStep(index, result, packetCount);
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Goes back or forward to the end of a step, from the keyframe before it
+     * or from where the counters are now if that is closer.
+     *
+     * @throws IllegalStateException
+     *             If the trace can't be read.
+     */
+    protected void goTo(long target, Counter stepNumber, Counter packetCount,
+	    SimulationMetrics metrics) throws IllegalStateException {
+	Keyframe keyframe = getKeyframe(target);
+	if (stepNumber.compareTo(target) > 0
+		|| stepNumber.compareTo(keyframe.step) < 0) {
+	    keyframe.restore(topology, stepNumber, packetCount, metrics);
+	}
+
+	for (int i = firstIndexAfter(stepNumber.longValue()); i < stepCount
+		&& steps[i] <= target; i++) {
+	    metrics.recordIdleSteps(steps[i] - stepNumber.longValue() - 1);
+	    stepNumber.reset();
+	    stepNumber.add(steps[i]);
+	    StepResult result = new StepResult(stepNumber);
+	    readStep(i, result, packetCount);
+	    metrics.record(result);
+	}
+	metrics.recordIdleSteps(target - stepNumber.longValue());
+	stepNumber.reset();
+	stepNumber.add(target);
+    }
+
+    private void readStep(int index, StepResult result, Counter packetCount)
+	    throws IllegalStateException {
+	try {
+	    readFully(HEADER_SIZE, offsets[index]);
+	    record.getLong();
+	    int count = record.getInt();
+	    long length = HEADER_SIZE + (long) count * StepLog.EVENT_SIZE;
+	    if (length > Integer.MAX_VALUE) {
+		throw new IOException("Step " + steps[index] + " is too big to read");
+	    }
+	    if (record.capacity() < length) {
+		record = ByteBuffer.allocate((int) length);
+	    }
+	    readFully((int) length, offsets[index]);
+	    record.position(HEADER_SIZE);
+	    for (int i = 0; i < count; i++) {
+		applyEvent(record, result, packetCount);
+	    }
+	    topology.endStep();
+	} catch (IOException ex) {
+	    throw new IllegalStateException("The trace can't be read", ex);
+	}
+    }
+
+    private void readFully(int length, long position) throws IOException {
+	record.clear();
+	record.limit(length);
+	while (record.hasRemaining()) {
+	    if (channel.read(record, position + record.position()) < 0) {
+		throw new IOException("Unexpected end of file");
+	    }
+	}
+	record.flip();
+    }
+
+    /**
+     * Reads an event and applies it to the topology. Packets that are sent or
+     * injected arrive in their routers' next-step queues. Every packet held
+     * since the start of the step is delivered, dropped or sent on during it,
+     * so the routers let go of all of them when the step ends, and the other
+     * events only need recording.
+     */
+    private void applyEvent(ByteBuffer in, StepResult result,
+	    Counter packetCount) throws IOException {
+	int type = in.get();
+	if (type < 0 || type >= TYPES.length) {
+	    throw new IOException("Corrupt event type " + type);
+	}
+	long packetID = in.getLong();
+	Router source = getRouter(routers, in.getInt());
+	Router destination = getRouter(routers, in.getInt());
+	Router previous = getRouter(routers, in.getInt());
+	Router router = getRouter(routers, in.getInt());
+	Packet packet = new Packet(packetID, source, destination, router,
+		in.getLong());
+
+	switch (TYPES[type]) {
+	case INJECTED:
+	    topology.receivePacketCopy(packet, router);
+	    packetCount.increment();
+	    result.addPacketInjectedMessage(packet);
+	    break;
+	case SENT:
+	    topology.receivePacketCopy(packet, router);
+	    result.addPacketSentMessage(packet, previous);
+	    break;
+	case DELIVERED:
+	    result.addPacketReceivedMessage(packet);
+	    break;
+	case DROPPED:
+	    result.addPacketDroppedMessage(packet);
+	    break;
+	}
+    }
+
+    @Override
+    public void close() throws IOException {
+	channel.close();
+    }
+
+    /**
+     * Reads the trace from start to end through a single buffer.
+     */
+    private class Reader {
+	private final ByteBuffer buffer;
+	private long next; // The offset of the first byte not read yet
+
+	public Reader() {
+	    buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	    buffer.flip();
+	    next = 0;
+	}
+
+	/**
+	 * @return The offset in the file of the next byte in the buffer.
+	 */
+	public long getPosition() {
+	    return next - buffer.remaining();
+	}
+
+	/**
+	 * Makes sure the buffer holds at least a number of bytes, reading more
+	 * if it doesn't.
+	 *
+	 * @return False if the file ends first.
+	 */
+	public boolean ensure(int length) throws IOException {
+	    if (buffer.remaining() >= length) {
+		return true;
+	    }
+
+	    buffer.compact();
+	    try {
+		while (buffer.position() < length) {
+		    int read = channel.read(buffer, next);
+		    if (read < 0) {
+			return false;
+		    }
+		    next += read;
+		}
+		return true;
+	    } finally {
+		buffer.flip();
+	    }
+	}
+    }
+
+    /**
+     * The packets in flight and the metrics at the end of a step.
+     */
+    private static class Keyframe {
+	private final long step;
+	private final long packetCount;
+	private final SimulationMetrics metrics;
+	private final long[] packetIDs;
+	private final Router[] sources;
+	private final Router[] destinations;
+	private final Router[] routers;
+	private final long[] hops;
+
+	public Keyframe(Topology topology, long step, long packetCount,
+		SimulationMetrics metrics) {
+	    this.step = step;
+	    this.packetCount = packetCount;
+	    this.metrics = new SimulationMetrics(metrics);
+
+	    List<Packet> packets = new ArrayList<>();
+	    List<Router> at = new ArrayList<>();
+	    int count = topology.findActiveRouters();
+	    Router[] active = topology.getActiveRouters();
+	    for (int i = 0; i < count; i++) {
+		Router router = active[i];
+		for (Packet packet : router.getPackets()) {
+		    packets.add(packet);
+		    at.add(router);
+		}
+	    }
+	    packetIDs = new long[packets.size()];
+	    sources = new Router[packets.size()];
+	    destinations = new Router[packets.size()];
+	    routers = at.toArray(new Router[at.size()]);
+	    hops = new long[packets.size()];
+	    for (int i = 0; i < packets.size(); i++) {
+		Packet packet = packets.get(i);
+		packetIDs[i] = packet.getID();
+		sources[i] = packet.getSource();
+		destinations[i] = packet.getDestination();
+		hops[i] = packet.getHops();
+	    }
+	}
+
+	public int size() {
+	    return packetIDs.length;
+	}
+
+	public void restore(Topology topology, Counter stepNumber,
+		Counter packetCount, SimulationMetrics metrics) {
+	    topology.resetPackets();
+	    for (int i = 0; i < packetIDs.length; i++) {
+		Packet packet = new Packet(packetIDs[i], sources[i],
+			destinations[i], routers[i], hops[i]);
+		topology.injectPacketCopy(packet, routers[i]);
+	    }
+	    stepNumber.reset();
+	    stepNumber.add(step);
+	    packetCount.reset();
+	    packetCount.add(this.packetCount);
+	    metrics.reset();
+	    metrics.add(this.metrics);
+	}
+    }
+}
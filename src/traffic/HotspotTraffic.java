@@ -0,0 +1,82 @@
+package traffic;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import network.Router;
+
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Injects packets like {@link PoissonTraffic}, but sends a fixed fraction of
+ * them to a few hotspot routers, such as servers or gateways. The rest go to
+ * destinations chosen uniformly at random.
+ */
+public class HotspotTraffic extends TrafficGenerator {
+
+    protected static final String NAME = "hotspot";
+
+    private final double mean;
+    private final double fraction;
+    private final String[] hotspotNames;
+
+    private Router[] cachedRouters;
+    private int[] hotspots;
+
+    /**
+     * @param mean
+     *            The average number of packets to inject each step.
+     * @param fraction
+     *            The fraction of packets that go to a hotspot.
+     * @param hotspotNames
+     *            The names of the hotspot routers.
+     */
+    public HotspotTraffic(double mean, double fraction, String... hotspotNames) {
+	this.mean = checkRate("The mean", mean);
+	this.fraction = checkProbability("The fraction", fraction);
+	if (hotspotNames.length == 0) {
+	    throw new IllegalArgumentException("No hotspots given");
+	}
+	this.hotspotNames = hotspotNames.clone();
+	cachedRouters = null;
+    }
+
+    protected static HotspotTraffic parse(String parameters) {
+	String[] values = split(NAME, parameters, 3);
+	return new HotspotTraffic(parseRate("The mean", values[0]),
+		parseRate("The fraction", values[1]),
+		values[2].split(","));
+    }
+
+    @Override
+    public void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch) {
+	if (routers != cachedRouters) {
+	    Map<String, Integer> indices = indexByName(routers);
+	    hotspots = new int[hotspotNames.length];
+	    for (int i = 0; i < hotspots.length; i++) {
+		hotspots[i] = indexOf(indices, hotspotNames[i]);
+	    }
+	    cachedRouters = routers;
+	}
+
+	SplittableRandom random = randomStreams.forInjection(step);
+	for (int i = poisson(random, mean); i > 0; i--) {
+	    if (random.nextDouble() < fraction) {
+		int destination = hotspots[random.nextInt(hotspots.length)];
+		int source = random.nextInt(routers.length - 1);
+		batch.add((source >= destination) ? source + 1 : source,
+			destination);
+	    } else {
+		addRandomPair(routers.length, random, batch);
+	    }
+	}
+    }
+
+    @Override
+    public String toString() {
+	return NAME + ":" + mean + ":" + fraction + ":"
+		+ String.join(",", hotspotNames);
+    }
+}
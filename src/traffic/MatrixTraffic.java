@@ -0,0 +1,165 @@
+package traffic;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import network.Router;
+
+import common.AliasTable;
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Injects traffic given by an explicit traffic matrix: for each pair of
+ * routers listed, a Poisson-distributed number of packets is sent from the
+ * first to the second every step. Pairs that aren't listed send nothing.
+ * <p>
+ * Rather than drawing a number of packets for every pair, the total for the
+ * step is drawn once and each packet is given a pair from an alias table
+ * weighted by the means. The number sent by each pair is still Poisson
+ * distributed with its own mean, but a step costs time in proportion to the
+ * packets sent rather than to the size of the matrix.
+ */
+public class MatrixTraffic extends TrafficGenerator {
+
+    protected static final String NAME = "matrix";
+
+    private final String[] sourceNames;
+    private final String[] destinationNames;
+    private final double[] means;
+
+    private final AliasTable pairs; // Null if every mean is 0
+
+    private Router[] cachedRouters;
+    private int[] sources;
+    private int[] destinations;
+
+    /**
+     * @param sourceNames
+     *            The name of the source router of each pair.
+     * @param destinationNames
+     *            The name of the destination router of each pair.
+     * @param means
+     *            The average number of packets sent each step for each pair.
+     */
+    public MatrixTraffic(String[] sourceNames, String[] destinationNames,
+	    double[] means) {
+	if (sourceNames.length != destinationNames.length
+		|| sourceNames.length != means.length) {
+	    throw new IllegalArgumentException(
+		    "Every pair needs a source, destination and mean");
+	}
+	for (int i = 0; i < sourceNames.length; i++) {
+	    if (sourceNames[i].equals(destinationNames[i])) {
+		throw new IllegalArgumentException(sourceNames[i]
+			+ " can't send traffic to itself");
+	    }
+	    checkRate("The mean", means[i]);
+	}
+	this.sourceNames = sourceNames.clone();
+	this.destinationNames = destinationNames.clone();
+	this.means = means.clone();
+	double total = 0;
+	for (double mean : means) {
+	    total += mean;
+	}
+	pairs = (total > 0) ? new AliasTable(means) : null;
+	cachedRouters = null;
+    }
+
+    /**
+     * Parses the pairs of a matrix, either given inline as
+     * <code>A&gt;B=M;...</code> or read from a file named after an
+     * <code>@</code>, with a <code>source,destination,mean</code> line for
+     * each pair. Blank lines and lines starting with <code>#</code> are
+     * skipped.
+     */
+    protected static MatrixTraffic parse(String parameters) {
+	List<String[]> pairs = new ArrayList<>();
+	if (parameters.startsWith("@")) {
+	    List<String> lines;
+	    try {
+		lines = Files.readAllLines(Paths.get(parameters.substring(1)),
+			StandardCharsets.UTF_8);
+	    } catch (IOException ex) {
+		throw new IllegalArgumentException(
+			"Can't read the traffic matrix "
+				+ parameters.substring(1), ex);
+	    }
+	    for (String line : lines) {
+		line = line.trim();
+		if (!line.isEmpty() && !line.startsWith("#")) {
+		    pairs.add(parsePair(line.split(",")));
+		}
+	    }
+	} else {
+	    for (String pair : parameters.split(";")) {
+		pairs.add(parsePair(pair.split(">|=")));
+	    }
+	}
+
+	String[] sourceNames = new String[pairs.size()];
+	String[] destinationNames = new String[pairs.size()];
+	double[] means = new double[pairs.size()];
+	for (int i = 0; i < pairs.size(); i++) {
+	    sourceNames[i] = pairs.get(i)[0];
+	    destinationNames[i] = pairs.get(i)[1];
+	    means[i] = parseRate("The mean", pairs.get(i)[2]);
+	}
+	return new MatrixTraffic(sourceNames, destinationNames, means);
+    }
+
+    private static String[] parsePair(String[] values) {
+	if (values.length != 3) {
+	    throw new IllegalArgumentException(
+		    "Every pair needs a source, destination and mean");
+	}
+	for (int i = 0; i < values.length; i++) {
+	    values[i] = values[i].trim();
+	}
+	return values;
+    }
+
+    @Override
+    public void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch) {
+	if (routers != cachedRouters) {
+	    Map<String, Integer> indices = indexByName(routers);
+	    sources = new int[means.length];
+	    destinations = new int[means.length];
+	    for (int i = 0; i < means.length; i++) {
+		sources[i] = indexOf(indices, sourceNames[i]);
+		destinations[i] = indexOf(indices, destinationNames[i]);
+	    }
+	    cachedRouters = routers;
+	}
+
+	if (pairs == null) {
+	    return;
+	}
+	SplittableRandom random = randomStreams.forInjection(step);
+	for (int i = poisson(random, pairs.getTotal()); i > 0; i--) {
+	    int pair = pairs.sample(random);
+	    batch.add(sources[pair], destinations[pair]);
+	}
+    }
+
+    @Override
+    public String toString() {
+	StringBuilder sb = new StringBuilder(NAME + ":");
+	for (int i = 0; i < means.length; i++) {
+	    if (i > 0) {
+		sb.append(';');
+	    }
+	    sb.append(sourceNames[i] + ">" + destinationNames[i] + "="
+		    + means[i]);
+	}
+	return sb.toString();
+    }
+}
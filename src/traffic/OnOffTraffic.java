@@ -0,0 +1,97 @@
+package traffic;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import network.Router;
+
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Bursty traffic, where every router is a source that is either on or off.
+ * Time is split into bursts of a fixed number of steps, and each router is on
+ * for a whole burst with a given probability. While it is on, a router sends
+ * a fixed number of packets to random destinations every step.
+ * <p>
+ * Which routers are on is drawn from the stream for the burst rather than
+ * carried over from the previous step, so any step can be taken again on its
+ * own.
+ */
+public class OnOffTraffic extends TrafficGenerator {
+
+    protected static final String NAME = "onoff";
+
+    private final double probability;
+    private final long burstLength;
+    private final long packetsPerStep;
+
+    private Router[] cachedRouters;
+    private long cachedBurst;
+    private int[] sources; // The routers that are on in the cached burst
+
+    /**
+     * @param probability
+     *            The probability that a router is on during a burst.
+     * @param burstLength
+     *            The number of steps in a burst.
+     * @param packetsPerStep
+     *            The number of packets each router sends per step while it is
+     *            on.
+     */
+    public OnOffTraffic(double probability, long burstLength,
+	    long packetsPerStep) {
+	this.probability = checkProbability("The probability", probability);
+	this.burstLength = checkPositive("The burst length", burstLength);
+	this.packetsPerStep = checkPositive("The packets per step",
+		packetsPerStep);
+	cachedRouters = null;
+    }
+
+    protected static OnOffTraffic parse(String parameters) {
+	String[] values = split(NAME, parameters, 3);
+	return new OnOffTraffic(parseRate("The probability", values[0]),
+		parsePositive("The burst length", values[1]),
+		parsePositive("The packets per step", values[2]));
+    }
+
+    @Override
+    public void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch) {
+	long stepBits = step.fitsInLong() ? step.longValue() : step
+		.toBigInteger().longValue();
+	long burst = (stepBits - 1) / burstLength;
+	if (routers != cachedRouters || burst != cachedBurst) {
+	    chooseSources(routers, burst, randomStreams);
+	}
+
+	SplittableRandom random = randomStreams.forInjection(step);
+	for (int source : sources) {
+	    for (long i = 0; i < packetsPerStep; i++) {
+		addRandomDestination(source, routers.length, random, batch);
+	    }
+	}
+    }
+
+    private void chooseSources(Router[] routers, long burst,
+	    RandomStreams randomStreams) {
+	SplittableRandom random = randomStreams.forBurst(burst);
+	int[] on = new int[routers.length];
+	int count = 0;
+	for (int i = 0; i < routers.length; i++) {
+	    if (random.nextDouble() < probability) {
+		on[count++] = i;
+	    }
+	}
+
+	sources = Arrays.copyOf(on, count);
+	cachedRouters = routers;
+	cachedBurst = burst;
+    }
+
+    @Override
+    public String toString() {
+	return NAME + ":" + probability + ":" + burstLength + ":"
+		+ packetsPerStep;
+    }
+}
@@ -0,0 +1,46 @@
+package traffic;
+
+import java.util.SplittableRandom;
+
+import network.Router;
+
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Injects a Poisson-distributed number of packets every step, each between two
+ * routers chosen at random, so that packets arrive independently at a steady
+ * average rate.
+ */
+public class PoissonTraffic extends TrafficGenerator {
+
+    protected static final String NAME = "poisson";
+
+    private final double mean;
+
+    /**
+     * @param mean
+     *            The average number of packets to inject each step.
+     */
+    public PoissonTraffic(double mean) {
+	this.mean = checkRate("The mean", mean);
+    }
+
+    protected static PoissonTraffic parse(String parameters) {
+	return new PoissonTraffic(parseRate("The mean", parameters));
+    }
+
+    @Override
+    public void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch) {
+	SplittableRandom random = randomStreams.forInjection(step);
+	for (int i = poisson(random, mean); i > 0; i--) {
+	    addRandomPair(routers.length, random, batch);
+	}
+    }
+
+    @Override
+    public String toString() {
+	return NAME + ":" + mean;
+    }
+}
@@ -0,0 +1,67 @@
+package traffic;
+
+import java.util.Arrays;
+
+/**
+ * The packets a TrafficGenerator has chosen to inject in a step, kept as
+ * parallel arrays of router indices so that thousands of packets can be
+ * chosen without creating an object for each one. A batch is reused from one
+ * step to the next.
+ */
+public class TrafficBatch {
+
+    private int[] sources;
+    private int[] destinations;
+    private int size;
+
+    public TrafficBatch() {
+	sources = new int[16];
+	destinations = new int[16];
+	size = 0;
+    }
+
+    /**
+     * Adds a packet to the batch.
+     * 
+     * @param source
+     *            The index of the router to inject the packet at.
+     * @param destination
+     *            The index of the router the packet is for.
+     */
+    public void add(int source, int destination) {
+	if (size == sources.length) {
+	    sources = Arrays.copyOf(sources, size * 2);
+	    destinations = Arrays.copyOf(destinations, size * 2);
+	}
+	sources[size] = source;
+	destinations[size] = destination;
+	size++;
+    }
+
+    public void clear() {
+	size = 0;
+    }
+
+    /**
+     * @return The number of packets in the batch.
+     */
+    public int size() {
+	return size;
+    }
+
+    /**
+     * @return The source indices, of which only the first {@link #size()} are
+     *         in use.
+     */
+    public int[] getSources() {
+	return sources;
+    }
+
+    /**
+     * @return The destination indices, of which only the first
+     *         {@link #size()} are in use.
+     */
+    public int[] getDestinations() {
+	return destinations;
+    }
+}
@@ -0,0 +1,252 @@
+package traffic;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import network.Router;
+
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Decides which packets are injected into the network in each step. A
+ * generator only picks the source and destination of each packet, by index
+ * into the topology's routers; the simulation then injects the whole batch at
+ * once.
+ * <p>
+ * Every choice must be drawn from the RandomStreams for the step, and must
+ * not depend on anything that happened in earlier steps, so that a step can
+ * be taken again exactly when undoing or seeking. Generators may cache
+ * whatever they derive from the topology or the streams, but every
+ * simulation needs its own instance.
+ * <p>
+ * Generators are created from a specification such as
+ * <code>poisson:2.5</code>, and {@link #toString()} gives the specification
+ * back, so that a generator can be saved with a run and recreated.
+ */
+public abstract class TrafficGenerator {
+
+    /**
+     * Creates a traffic generator from its specification. The forms are:
+     * <ul>
+     * <li><code>uniform:R</code> injects one packet every R steps, between
+     * two random routers.</li>
+     * <li><code>poisson:M</code> injects a Poisson-distributed number of
+     * packets each step, M on average, between random routers.</li>
+     * <li><code>onoff:P:L:N</code> turns every router on for bursts of L
+     * steps with probability P, sending N packets a step to random
+     * destinations while it is on.</li>
+     * <li><code>hotspot:M:F:R1,R2,...</code> injects like
+     * <code>poisson:M</code>, but sends a fraction F of the packets to the
+     * named hotspot routers.</li>
+     * <li><code>matrix:A&gt;B=M;...</code> gives the average number of
+     * packets sent from A to B each step for any number of pairs.
+     * <code>matrix:@file</code> reads the pairs from a file with a
+     * <code>source,destination,mean</code> line for each.</li>
+     * <li><code>weighted:M:S:D</code> injects like <code>poisson:M</code>,
+     * but picks sources and destinations in proportion to weights given as
+     * <code>R1=W1,R2=W2,...</code>, or <code>*</code> for every router
+     * equally.</li>
+     * </ul>
+     * 
+     * @param specification
+     *            The specification of the generator.
+     * @return A new generator.
+     * @throws IllegalArgumentException
+     *             If the specification is not valid.
+     */
+    public static TrafficGenerator create(String specification)
+	    throws IllegalArgumentException {
+	int colon = specification.indexOf(':');
+	if (colon < 0) {
+	    throw new IllegalArgumentException("Invalid traffic "
+		    + specification);
+	}
+	String type = specification.substring(0, colon).toLowerCase();
+	String parameters = specification.substring(colon + 1);
+
+	switch (type) {
+	case UniformTraffic.NAME:
+	    return UniformTraffic.parse(parameters);
+	case PoissonTraffic.NAME:
+	    return PoissonTraffic.parse(parameters);
+	case OnOffTraffic.NAME:
+	    return OnOffTraffic.parse(parameters);
+	case HotspotTraffic.NAME:
+	    return HotspotTraffic.parse(parameters);
+	case MatrixTraffic.NAME:
+	    return MatrixTraffic.parse(parameters);
+	case WeightedTraffic.NAME:
+	    return WeightedTraffic.parse(parameters);
+	default:
+	    throw new IllegalArgumentException("Unknown traffic type " + type);
+	}
+    }
+
+    /**
+     * Chooses the packets to inject in a step.
+     * 
+     * @param step
+     *            The number of the step being taken, starting from 1.
+     * @param routers
+     *            The routers in the topology, which the batch refers to by
+     *            index. The array is the topology's own.
+     * @param randomStreams
+     *            Where the step's randomness comes from.
+     * @param batch
+     *            The empty batch to add the packets to.
+     */
+    public abstract void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch);
+
+    /**
+     * @param stepNumber
+     *            The number of steps taken so far.
+     * @return The number of steps that can be taken before the next one that
+     *         might inject a packet, so 0 if the next step might.
+     */
+    public long getStepsUntilInjection(Counter stepNumber) {
+	return 0;
+    }
+
+    /**
+     * @return The specification this generator can be created from again.
+     */
+    @Override
+    public abstract String toString();
+
+    /**
+     * Adds a packet between two different routers chosen uniformly at
+     * random.
+     */
+    protected static void addRandomPair(int routerCount,
+	    SplittableRandom random, TrafficBatch batch) {
+	int destination = random.nextInt(routerCount);
+	int source;
+	do {
+	    source = random.nextInt(routerCount);
+	} while (source == destination);
+	batch.add(source, destination);
+    }
+
+    /**
+     * Adds a packet from a router to a different one chosen uniformly at
+     * random.
+     */
+    protected static void addRandomDestination(int source, int routerCount,
+	    SplittableRandom random, TrafficBatch batch) {
+	int destination = random.nextInt(routerCount - 1);
+	batch.add(source, (destination >= source) ? destination + 1
+		: destination);
+    }
+
+    /**
+     * Draws from a Poisson distribution by multiplying uniform draws, in
+     * chunks so that large means don't underflow.
+     * 
+     * @return The number of events in an interval where mean are expected.
+     */
+    protected static int poisson(SplittableRandom random, double mean) {
+	int count = 0;
+	while (mean > 0) {
+	    double chunk = Math.min(mean, 30);
+	    mean -= chunk;
+
+	    double limit = Math.exp(-chunk);
+	    double product = random.nextDouble();
+	    while (product > limit) {
+		count++;
+		product *= random.nextDouble();
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * @return A map from each router's name to its index.
+     */
+    protected static Map<String, Integer> indexByName(Router[] routers) {
+	Map<String, Integer> indices = new HashMap<>();
+	for (int i = 0; i < routers.length; i++) {
+	    indices.put(routers[i].getName(), i);
+	}
+	return indices;
+    }
+
+    /**
+     * @return The index of the named router.
+     * @throws IllegalStateException
+     *             If there is no router with that name.
+     */
+    protected static int indexOf(Map<String, Integer> indices, String name)
+	    throws IllegalStateException {
+	Integer index = indices.get(name);
+	if (index == null) {
+	    throw new IllegalStateException("No router named " + name
+		    + " for the traffic to use");
+	}
+	return index;
+    }
+
+    protected static double checkRate(String name, double rate)
+	    throws IllegalArgumentException {
+	if (!(rate >= 0) || Double.isInfinite(rate)) {
+	    throw new IllegalArgumentException(name
+		    + " must be a number of at least 0");
+	}
+	return rate;
+    }
+
+    protected static double checkProbability(String name, double probability)
+	    throws IllegalArgumentException {
+	if (!(probability >= 0 && probability <= 1)) {
+	    throw new IllegalArgumentException(name
+		    + " must be between 0 and 1");
+	}
+	return probability;
+    }
+
+    protected static long checkPositive(String name, long value)
+	    throws IllegalArgumentException {
+	if (value < 1) {
+	    throw new IllegalArgumentException(name
+		    + " must be a positive integer greater than 0");
+	}
+	return value;
+    }
+
+    protected static double parseRate(String name, String value)
+	    throws IllegalArgumentException {
+	try {
+	    return checkRate(name, Double.parseDouble(value));
+	} catch (NumberFormatException ex) {
+	    throw new IllegalArgumentException(name
+		    + " must be a number of at least 0");
+	}
+    }
+
+    protected static long parsePositive(String name, String value)
+	    throws IllegalArgumentException {
+	try {
+	    return checkPositive(name, Long.parseLong(value));
+	} catch (NumberFormatException ex) {
+	    throw new IllegalArgumentException(name
+		    + " must be a positive integer greater than 0");
+	}
+    }
+
+    /**
+     * Splits a generator's parameters on colons, checking there are the
+     * right number of them.
+     */
+    protected static String[] split(String name, String parameters, int count)
+	    throws IllegalArgumentException {
+	String[] values = parameters.split(":", count);
+	if (values.length != count) {
+	    throw new IllegalArgumentException(name + " traffic needs " + count
+		    + " parameters");
+	}
+	return values;
+    }
+}
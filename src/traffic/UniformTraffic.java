@@ -0,0 +1,52 @@
+package traffic;
+
+import network.Router;
+
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Injects a single packet between two random routers in the first step and
+ * every <code>rate</code> steps after that.
+ */
+public class UniformTraffic extends TrafficGenerator {
+
+    protected static final String NAME = "uniform";
+
+    private final long rate;
+
+    /**
+     * @param rate
+     *            The number of steps between packet injections.
+     */
+    public UniformTraffic(long rate) {
+	this.rate = checkPositive("The rate", rate);
+    }
+
+    protected static UniformTraffic parse(String parameters) {
+	return new UniformTraffic(parsePositive("The rate", parameters));
+    }
+
+    public long getRate() {
+	return rate;
+    }
+
+    @Override
+    public void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch) {
+	if (step.mod(rate) == 1 % rate) {
+	    addRandomPair(routers.length, randomStreams.forInjection(step),
+		    batch);
+	}
+    }
+
+    @Override
+    public long getStepsUntilInjection(Counter stepNumber) {
+	return (rate - stepNumber.mod(rate)) % rate;
+    }
+
+    @Override
+    public String toString() {
+	return NAME + ":" + rate;
+    }
+}
@@ -0,0 +1,196 @@
+package traffic;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import network.Router;
+
+import common.AliasTable;
+import common.Counter;
+import common.RandomStreams;
+
+/**
+ * Injects packets like {@link PoissonTraffic}, but picks each packet's source
+ * and destination in proportion to per-router weights, such as the population
+ * served by each router. Sources and destinations are drawn from alias tables,
+ * so each packet costs constant time however many routers there are.
+ * <p>
+ * Either set of weights can be <code>*</code>, which weights every router
+ * equally. Otherwise only the routers listed are picked.
+ */
+public class WeightedTraffic extends TrafficGenerator {
+
+    protected static final String NAME = "weighted";
+    private static final String EVERY_ROUTER = "*";
+
+    private final double mean;
+    private final String[] sourceNames; // Null for every router
+    private final double[] sourceWeights;
+    private final String[] destinationNames;
+    private final double[] destinationWeights;
+
+    private Router[] cachedRouters;
+    private AliasTable sources;
+    private AliasTable destinations;
+
+    /**
+     * @param mean
+     *            The average number of packets to inject each step.
+     * @param sourceNames
+     *            The names of the routers that send packets, or null for
+     *            every router.
+     * @param sourceWeights
+     *            The weight of each source, or null for every router.
+     * @param destinationNames
+     *            The names of the routers that packets are sent to, or null
+     *            for every router.
+     * @param destinationWeights
+     *            The weight of each destination, or null for every router.
+     */
+    public WeightedTraffic(double mean, String[] sourceNames,
+	    double[] sourceWeights, String[] destinationNames,
+	    double[] destinationWeights) {
+	this.mean = checkRate("The mean", mean);
+	this.sourceNames = checkWeights(sourceNames, sourceWeights);
+	this.sourceWeights = (sourceWeights == null) ? null : sourceWeights
+		.clone();
+	this.destinationNames = checkWeights(destinationNames,
+		destinationWeights);
+	this.destinationWeights = (destinationWeights == null) ? null
+		: destinationWeights.clone();
+	cachedRouters = null;
+    }
+
+    private static String[] checkWeights(String[] names, double[] weights)
+	    throws IllegalArgumentException {
+	if ((names == null) != (weights == null)
+		|| (names != null && names.length != weights.length)) {
+	    throw new IllegalArgumentException(
+		    "Every weighted router needs a name and a weight");
+	}
+	if (names == null) {
+	    return null;
+	}
+	if (names.length == 0) {
+	    throw new IllegalArgumentException("No weighted routers given");
+	}
+	for (double weight : weights) {
+	    checkRate("A weight", weight);
+	}
+	return names.clone();
+    }
+
+    /**
+     * Parses <code>M:S:D</code>, where S and D are either <code>*</code> or
+     * <code>R1=W1,R2=W2,...</code>.
+     */
+    protected static WeightedTraffic parse(String parameters) {
+	String[] values = split(NAME, parameters, 3);
+	String[][] names = new String[2][];
+	double[][] weights = new double[2][];
+	for (int i = 0; i < 2; i++) {
+	    String list = values[i + 1].trim();
+	    if (list.equals(EVERY_ROUTER)) {
+		continue;
+	    }
+	    String[] entries = list.split(",");
+	    names[i] = new String[entries.length];
+	    weights[i] = new double[entries.length];
+	    for (int j = 0; j < entries.length; j++) {
+		String[] entry = entries[j].split("=");
+		if (entry.length != 2) {
+		    throw new IllegalArgumentException(
+			    "Every weighted router needs a name and a weight");
+		}
+		names[i][j] = entry[0].trim();
+		weights[i][j] = parseRate("A weight", entry[1].trim());
+	    }
+	}
+	return new WeightedTraffic(parseRate("The mean", values[0]),
+		names[0], weights[0], names[1], weights[1]);
+    }
+
+    @Override
+    public void generate(Counter step, Router[] routers,
+	    RandomStreams randomStreams, TrafficBatch batch) {
+	if (routers != cachedRouters) {
+	    double[] sourceTable = weigh(routers, sourceNames, sourceWeights);
+	    double[] destinationTable = weigh(routers, destinationNames,
+		    destinationWeights);
+	    // Otherwise drawing a destination other than the source would
+	    // never end
+	    int only = -1;
+	    for (int i = 0; i < routers.length; i++) {
+		if (destinationTable[i] > 0) {
+		    only = (only == -1) ? i : -2;
+		}
+	    }
+	    if (only >= 0 && sourceTable[only] > 0) {
+		throw new IllegalStateException(routers[only].getName()
+			+ " has no destination but itself");
+	    }
+	    sources = new AliasTable(sourceTable);
+	    destinations = new AliasTable(destinationTable);
+	    cachedRouters = routers;
+	}
+
+	SplittableRandom random = randomStreams.forInjection(step);
+	for (int i = poisson(random, mean); i > 0; i--) {
+	    int source = sources.sample(random);
+	    int destination;
+	    do {
+		destination = destinations.sample(random);
+	    } while (destination == source);
+	    batch.add(source, destination);
+	}
+    }
+
+    /**
+     * @return The weight of every router, by index.
+     * @throws IllegalStateException
+     *             If a named router isn't in the topology, or no router has
+     *             any weight.
+     */
+    private static double[] weigh(Router[] routers, String[] names,
+	    double[] weights) throws IllegalStateException {
+	double[] table = new double[routers.length];
+	if (names == null) {
+	    Arrays.fill(table, 1);
+	} else {
+	    Map<String, Integer> indices = indexByName(routers);
+	    for (int i = 0; i < names.length; i++) {
+		table[indexOf(indices, names[i])] += weights[i];
+	    }
+	}
+
+	double total = 0;
+	for (double weight : table) {
+	    total += weight;
+	}
+	if (!(total > 0)) {
+	    throw new IllegalStateException("No router has any weight");
+	}
+	return table;
+    }
+
+    @Override
+    public String toString() {
+	return NAME + ":" + mean + ":" + toString(sourceNames, sourceWeights)
+		+ ":" + toString(destinationNames, destinationWeights);
+    }
+
+    private static String toString(String[] names, double[] weights) {
+	if (names == null) {
+	    return EVERY_ROUTER;
+	}
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < names.length; i++) {
+	    if (i > 0) {
+		sb.append(',');
+	    }
+	    sb.append(names[i] + "=" + weights[i]);
+	}
+	return sb.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+public class CounterTest {
+
+    @Test
+    public void Counter_CounterInit_Zero() {
+	Counter counter = new Counter();
+	assertTrue(counter.isZero());
+	assertEquals("0", counter.toString());
+    }
+
+    @Test
+    public void Counter_Increment_StaysLong() {
+	Counter counter = new Counter();
+	for (int i = 0; i < 10; i++) {
+	    counter.increment();
+	}
+	assertTrue(counter.fitsInLong());
+	assertEquals(10, counter.longValue());
+	assertEquals(1, counter.mod(3));
+    }
+
+    @Test
+    public void Counter_IncrementPastMaxLong_SwitchesToBigInteger() {
+	Counter counter = new Counter(Long.MAX_VALUE);
+	counter.increment();
+	assertFalse(counter.fitsInLong());
+	assertEquals(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE),
+		counter.toBigInteger());
+	assertEquals(1, counter.compareTo(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void Counter_DecrementBackIntoRange_SwitchesToLong() {
+	Counter counter = new Counter(Long.MAX_VALUE);
+	counter.add(5);
+	counter.add(-5);
+	assertTrue(counter.fitsInLong());
+	assertEquals(Long.MAX_VALUE, counter.longValue());
+    }
+
+    @Test
+    public void Counter_ModPastMaxLong_MatchesBigInteger() {
+	Counter counter = new Counter(Long.MAX_VALUE);
+	counter.add(Long.MAX_VALUE);
+	long expected = BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(1)
+		.mod(BigInteger.valueOf(7)).longValue();
+	assertEquals(expected, counter.mod(7));
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void Counter_LongValuePastMaxLong_Throws() {
+	Counter counter = new Counter(Long.MAX_VALUE);
+	counter.increment();
+	counter.longValue();
+    }
+}
@@ -0,0 +1,46 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+    @Test
+    public void LongHashSet_AddMany_AllFound() {
+	LongHashSet set = new LongHashSet();
+	for (long value = 0; value < 1000; value++) {
+	    assertTrue(set.add(value * 3));
+	}
+	assertFalse(set.add(0));
+	assertFalse(set.add(2997));
+
+	assertEquals(1000, set.size());
+	assertTrue(set.contains(0));
+	assertTrue(set.contains(1500));
+	assertFalse(set.contains(1501));
+	assertFalse(set.contains(-3));
+
+	long[] values = set.toArray();
+	Arrays.sort(values);
+	assertEquals(0, values[0]);
+	assertEquals(2997, values[999]);
+    }
+
+    @Test
+    public void LongHashSet_Clear_Empty() {
+	LongHashSet set = new LongHashSet();
+	set.add(0);
+	set.add(Long.MIN_VALUE);
+	set.clear();
+
+	assertTrue(set.isEmpty());
+	assertFalse(set.contains(0));
+	assertFalse(set.contains(Long.MIN_VALUE));
+	assertEquals(0, set.toArray().length);
+    }
+}
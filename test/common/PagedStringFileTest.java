@@ -0,0 +1,60 @@
+package common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PagedStringFileTest {
+
+    private File dataFile;
+    private File indexFile;
+    private PagedStringFile strings;
+
+    @Before
+    public void setUp() throws Exception {
+	dataFile = File.createTempFile("strings", ".log");
+	indexFile = File.createTempFile("strings", ".index");
+	strings = new PagedStringFile(dataFile, indexFile);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	strings.close();
+	dataFile.delete();
+	indexFile.delete();
+    }
+
+    @Test
+    public void PagedStringFile_Add_ReadBackInAnyOrder() throws Exception {
+	for (int i = 0; i < 1000; i++) {
+	    strings.add("<b>Step " + i + "</b> \u00e9" + (i % 7 == 0 ? "" : i));
+	}
+	assertEquals(1000, strings.size());
+	for (int i = 999; i >= 0; i -= 13) {
+	    assertEquals("<b>Step " + i + "</b> \u00e9"
+		    + (i % 7 == 0 ? "" : i), strings.get(i));
+	}
+    }
+
+    @Test
+    public void PagedStringFile_RemoveLast_NextAddReplacesIt() throws Exception {
+	strings.add("first");
+	strings.add("second");
+	strings.add("");
+	strings.removeLast();
+	strings.removeLast();
+	strings.add("third");
+	assertEquals(2, strings.size());
+	assertEquals("first", strings.get(0));
+	assertEquals("third", strings.get(1));
+
+	strings.clear();
+	strings.add("fourth");
+	assertEquals(1, strings.size());
+	assertEquals("fourth", strings.get(0));
+    }
+}
@@ -0,0 +1,55 @@
+package network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CompactGraphTest {
+
+    private Topology topology;
+    private Router[] routers;
+
+    @Before
+    public void setUp() throws Exception {
+	// A root with two branches, A-A1 and B-B1, and E on its own
+	topology = new Topology();
+	for (String name : new String[] { "A", "A1", "B", "B1", "E", "R" }) {
+	    topology.addRouter(new Router(name));
+	}
+	routers = topology.getRouters();
+	topology.addEdge(routers[5], routers[0]);
+	topology.addEdge(routers[5], routers[2]);
+	topology.addEdge(routers[0], routers[1]);
+	topology.addEdge(routers[2], routers[3]);
+    }
+
+    @Test
+    public void CompactGraph_Neighbours_InNameOrder() {
+	CompactGraph graph = topology.getGraph();
+	assertEquals(4, graph.getEdgeCount());
+	assertEquals(2, graph.getDegree(5));
+	assertEquals(0, graph.getNeighbour(5, 0));
+	assertEquals(2, graph.getNeighbour(5, 1));
+	assertSame(routers[2], routers[5].getConnection(1));
+
+	topology.removeEdge(routers[5], routers[0]);
+	assertEquals(1, routers[5].getDegree());
+	assertSame(routers[2], routers[5].getConnection(0));
+    }
+
+    @Test
+    public void CompactGraph_NextHops_FollowShortestPaths() {
+	assertEquals("[0, 0, 2, 2, -1, 5]",
+		Arrays.toString(topology.getGraph().getNextHops(5)));
+
+	RoutingTable table = new RoutingTable(topology, routers[1]);
+	assertSame(routers[0], table.getNext(routers[3]));
+	assertSame(routers[1], table.getNext(routers[1]));
+	assertNull(table.getNext(routers[4]));
+    }
+}
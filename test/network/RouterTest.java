@@ -1,6 +1,8 @@
 package network;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
@@ -42,4 +44,33 @@ public class RouterTest {
 	assertTrue(routerB.getConnections().contains(routerA));
     }
 
+    @Test
+    public void Router_SendPacket_LeavesSource() {
+	routerA.connectTo(routerB);
+	Packet packet = new Packet(0, routerA, routerB);
+	routerA.addPacket(packet);
+
+	routerA.sendPacket(packet, routerB);
+	assertTrue(routerA.isIdle());
+	assertFalse(routerB.isIdle());
+    }
+
+    @Test
+    public void Router_SendDuringStep_ArrivesAtEndOfStep() {
+	routerA.connectTo(routerB);
+	Packet packet = new Packet(0, routerA, routerB);
+	routerA.addPacket(packet);
+
+	packet.sendTo(routerB);
+	assertEquals(1, routerA.getPackets().size());
+	assertTrue(routerB.getPackets().isEmpty());
+	assertFalse(routerB.isIdle());
+
+	routerA.endStep();
+	routerB.endStep();
+	assertTrue(routerA.isIdle());
+	assertSame(packet, routerB.getPackets().get(0));
+	assertTrue(packet.destinationReached());
+    }
+
 }
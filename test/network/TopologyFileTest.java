@@ -0,0 +1,94 @@
+package network;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TopologyFileTest {
+
+    private final int routerCount = 30;
+
+    private Topology topology;
+    private File file;
+    private File copy;
+
+    @Before
+    public void setUp() throws Exception {
+	topology = new Topology();
+	Router[] routers = new Router[routerCount];
+	for (int i = 0; i < routerCount; i++) {
+	    routers[i] = new Router("R" + i);
+	    topology.addRouter(routers[i]);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers[i], routers[(i + 1) % routerCount]);
+	    if (i % 3 == 0) {
+		topology.addEdge(routers[i], routers[(i + 7) % routerCount]);
+	    }
+	}
+	// A router on its own should survive too
+	topology.addRouter(new Router("Lonely"));
+
+	file = File.createTempFile("topology", ".xml");
+	copy = File.createTempFile("topology", ".xml");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	file.delete();
+	copy.delete();
+    }
+
+    private static List<String> describe(Topology topology) {
+	List<String> lines = new ArrayList<>();
+	for (Router router : topology) {
+	    StringBuilder line = new StringBuilder(router.getName()).append(':');
+	    for (Router neighbour : router.getConnections()) {
+		line.append(' ').append(neighbour.getName());
+	    }
+	    lines.add(line.toString());
+	}
+	return lines;
+    }
+
+    @Test
+    public void TopologyFile_SavedAndLoaded_SameRoutersAndEdges()
+	    throws IOException {
+	TopologyFile.save(topology, file);
+	Topology loaded = TopologyFile.load(file);
+
+	assertEquals(topology.size(), loaded.size());
+	assertEquals(describe(topology), describe(loaded));
+    }
+
+    @Test
+    public void TopologyFile_LoadedAndSavedAgain_SameFile()
+	    throws IOException {
+	TopologyFile.save(topology, file);
+	TopologyFile.save(TopologyFile.load(file), copy);
+
+	assertEquals(Files.readAllLines(file.toPath()),
+		Files.readAllLines(copy.toPath()));
+    }
+
+    @Test(expected = IOException.class)
+    public void TopologyFile_EdgeToMissingRouter_NotLoaded()
+	    throws IOException {
+	try (PrintWriter writer = new PrintWriter(file)) {
+	    writer.println("<topology>");
+	    writer.println("<router name=\"A\" />");
+	    writer.println("<edge source=\"A\" destination=\"B\" />");
+	    writer.println("</topology>");
+	}
+	TopologyFile.load(file);
+    }
+}
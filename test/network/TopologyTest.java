@@ -0,0 +1,78 @@
+package network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TopologyTest {
+
+    private final int routerCount = 10;
+
+    private Topology topology;
+    private Router[] routers;
+
+    @Before
+    public void setUp() throws Exception {
+	topology = new Topology();
+	routers = new Router[routerCount];
+	for (int i = 0; i < routerCount; i++) {
+	    routers[i] = new Router("R" + i);
+	    topology.addRouter(routers[i]);
+	}
+    }
+
+    @Test
+    public void Topology_AddEdges_ComponentsJoined() {
+	assertEquals(routerCount, topology.getComponentCount());
+	for (int i = 1; i < routerCount; i++) {
+	    assertFalse(topology.isValid());
+	    topology.addEdge(routers[i - 1], routers[i]);
+	    assertEquals(routerCount - i, topology.getComponentCount());
+	}
+	assertTrue(topology.isValid());
+    }
+
+    @Test
+    public void Topology_RemoveEdgesAndRouters_ComponentsSplit() {
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers[i], routers[(i + 1) % routerCount]);
+	}
+	topology.removeEdge(routers[0], routers[1]);
+	assertTrue(topology.isValid());
+
+	topology.removeEdge(routers[5], routers[6]);
+	assertEquals(2, topology.getComponentCount());
+	assertFalse(topology.isValid());
+
+	topology.removeRouter(routers[8]);
+	assertEquals(3, topology.getComponentCount());
+	topology.addEdge(routers[7], routers[9]);
+	topology.addEdge(routers[5], routers[6]);
+	assertEquals(1, topology.getComponentCount());
+	assertTrue(topology.isValid());
+    }
+
+    @Test
+    public void Topology_SeenPacketFilter_RestoredWithState() {
+	topology.setSeenPacketFilterCapacity(100);
+	topology.getRouters();
+	for (int i = 0; i < 50; i++) {
+	    routers[0].addPacket(new Packet(i, routers[1], routers[0],
+		    routers[0], 1));
+	}
+	routers[0].refreshPackets();
+	TopologyState state = TopologyState.capture(topology);
+	assertTrue(routers[0].getSeenPacketIDs().isEmpty());
+
+	topology.setSeenPacketFilterCapacity(0);
+	state.restore(topology);
+	assertEquals(100, topology.getSeenPacketFilterCapacity());
+	routers[0].addPacket(new Packet(7, routers[0], routers[1]));
+	routers[0].addPacket(new Packet(50, routers[0], routers[1]));
+	assertEquals(1, routers[0].dropRepeatedPackets().size());
+	assertEquals(50, routers[0].getPackets().get(0).getID());
+    }
+}
@@ -0,0 +1,87 @@
+package network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class VisitedSetTest {
+
+    @Test
+    public void VisitedSet_ManyRouters_KeepsEveryOne() {
+	// Enough low indices to switch from the table to the bitset
+	VisitedSet set = new VisitedSet(40);
+	for (int router = 0; router < 100; router += 3) {
+	    set.add(router);
+	}
+	set.add(40);
+	set.add(1000);
+
+	assertEquals(36, set.size());
+	assertTrue(set.contains(40));
+	assertTrue(set.contains(99));
+	assertTrue(set.contains(1000));
+	assertFalse(set.contains(98));
+	assertFalse(set.contains(5000));
+
+	int[] routers = set.toArray();
+	Arrays.sort(routers);
+	assertEquals(0, routers[0]);
+	assertEquals(1000, routers[routers.length - 1]);
+    }
+
+    @Test
+    public void VisitedSet_Copy_IsIndependent() {
+	VisitedSet set = new VisitedSet(7);
+	VisitedSet copy = new VisitedSet(set);
+	copy.add(8);
+
+	assertFalse(set.contains(8));
+	assertTrue(copy.contains(7));
+	assertEquals(1, set.size());
+	assertEquals(2, copy.size());
+    }
+
+    @Test
+    public void VisitedSet_CopiedTable_SharesUntilWritten() {
+	// Few routers spread over a big topology stay in the table
+	VisitedSet set = new VisitedSet(50000);
+	set.add(60000);
+	VisitedSet copy = new VisitedSet(set);
+	assertTrue(copy.sharesWith(set));
+
+	copy.add(70000);
+	assertFalse(copy.sharesWith(set));
+	set.add(80000);
+
+	assertTrue(copy.contains(60000));
+	assertFalse(copy.contains(80000));
+	assertFalse(set.contains(70000));
+	assertEquals(3, copy.size());
+	assertEquals(3, set.size());
+    }
+
+    @Test
+    public void VisitedSet_CopiedBitset_SharesUntilWritten() {
+	VisitedSet set = new VisitedSet(0);
+	for (int router = 1; router < 40; router++) {
+	    set.add(router);
+	}
+	VisitedSet copy = new VisitedSet(set);
+	copy.add(40);
+	copy.add(2000);
+	set.add(41);
+
+	assertTrue(copy.contains(39));
+	assertTrue(copy.contains(2000));
+	assertFalse(copy.contains(41));
+	assertFalse(set.contains(40));
+	assertFalse(set.contains(2000));
+	assertEquals(42, copy.size());
+	assertEquals(41, set.size());
+	assertEquals(41, set.toArray().length);
+    }
+}
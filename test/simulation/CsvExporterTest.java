@@ -0,0 +1,121 @@
+package simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import network.Router;
+import network.Topology;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simulation.StepEvents.Type;
+import algorithm.RoutingAlgorithm;
+
+public class CsvExporterTest {
+
+    private final int routerCount = 40;
+    private final int steps = 500;
+    private final long seed = 3110;
+
+    private Simulation simulation;
+    private File packetFile;
+    private File stepFile;
+
+    @Before
+    public void setUp() throws Exception {
+	Topology topology = new Topology();
+	List<Router> routers = new ArrayList<>();
+	for (int i = 0; i < routerCount; i++) {
+	    // A comma in the name has to be quoted
+	    Router router = new Router("R," + i);
+	    routers.add(router);
+	    topology.addRouter(router);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers.get(i),
+		    routers.get((i + 1) % routerCount));
+	}
+
+	simulation = new Simulation(topology,
+		RoutingAlgorithm.create("RANDOM_PATH"), 2);
+	simulation.setSeed(seed);
+	packetFile = File.createTempFile("packets", ".csv");
+	stepFile = File.createTempFile("steps", ".csv");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	packetFile.delete();
+	stepFile.delete();
+    }
+
+    private List<String> read(File file) throws Exception {
+	return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void CsvExporter_Run_TotalsMatchMetrics() throws Exception {
+	try (CsvExporter exporter = new CsvExporter(packetFile, stepFile)) {
+	    simulation.addStepListener(exporter);
+	    for (int i = 0; i < steps; i++) {
+		simulation.step();
+	    }
+	}
+
+	List<String> rows = read(stepFile);
+	assertEquals(steps + 1, rows.size());
+	long[] totals = new long[6];
+	for (String row : rows.subList(1, rows.size())) {
+	    String[] fields = row.split(",");
+	    for (int i = 0; i < totals.length; i++) {
+		totals[i] += Long.parseLong(fields[i]);
+	    }
+	}
+
+	SimulationMetrics metrics = simulation.getMetrics();
+	assertEquals(metrics.getPacketsInjected(), totals[1]);
+	assertEquals(metrics.getPacketsDelivered(), totals[2]);
+	assertEquals(metrics.getPacketsDropped(), totals[3]);
+	assertEquals(metrics.getPacketsTransmitted(), totals[4]);
+	assertEquals(metrics.getPacketsDelivered(), read(packetFile).size() - 1);
+    }
+
+    @Test
+    public void CsvExporter_DeliveredPacket_InjectionStepMatches()
+	    throws Exception {
+	Map<String, String> injected = new HashMap<>();
+	simulation.addStepListener(delta -> {
+	    StepEvents events = delta.getEvents();
+	    for (int i = 0; i < events.size(); i++) {
+		if (events.getType(i) == Type.INJECTED) {
+		    injected.put(events.getPacketID(i) + "",
+			    delta.getStepNumberString());
+		}
+	    }
+	});
+	try (CsvExporter exporter = new CsvExporter(packetFile, null)) {
+	    simulation.addStepListener(exporter);
+	    for (int i = 0; i < steps; i++) {
+		simulation.step();
+	    }
+	}
+
+	List<String> rows = read(packetFile);
+	assertEquals("id,source,destination,hops,injection_step,delivery_step",
+		rows.get(0));
+	for (String row : rows.subList(1, rows.size())) {
+	    // The quoted router names hold commas, so count from the end
+	    String[] fields = row.split(",");
+	    assertEquals(injected.get(fields[0]), fields[fields.length - 2]);
+	}
+    }
+}
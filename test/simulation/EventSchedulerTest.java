@@ -0,0 +1,77 @@
+package simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import network.Router;
+import network.Topology;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import algorithm.RoutingAlgorithm;
+
+public class EventSchedulerTest {
+
+    private final int routerCount = 100;
+    private final long steps = 2000;
+    private final long seed = 3110;
+
+    private Topology topology;
+
+    @Before
+    public void setUp() throws Exception {
+	topology = new Topology();
+	List<Router> routers = new ArrayList<>();
+	for (int i = 0; i < routerCount; i++) {
+	    Router router = new Router("R" + i);
+	    routers.add(router);
+	    topology.addRouter(router);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers.get(i),
+		    routers.get((i + 1) % routerCount));
+	    if (i % 5 == 0) {
+		topology.addEdge(routers.get(i),
+			routers.get((i + routerCount / 3) % routerCount));
+	    }
+	}
+    }
+
+    private Simulation newSimulation(String algorithmName, long rate) {
+	Simulation simulation = new Simulation(new Topology(topology),
+		RoutingAlgorithm.create(algorithmName), rate);
+	simulation.setSeed(seed);
+	return simulation;
+    }
+
+    private void assertSameMetrics(String algorithmName, long rate) {
+	SimulationMetrics stepped = new SimulationMetrics();
+	Simulation simulation = newSimulation(algorithmName, rate);
+	for (long i = 0; i < steps; i++) {
+	    stepped.record(simulation.step());
+	}
+
+	SimulationMetrics scheduled = new SimulationMetrics();
+	simulation = newSimulation(algorithmName, rate);
+	new EventScheduler(simulation).runUntil(steps, scheduled);
+
+	assertEquals(stepped.toString(), scheduled.toString());
+	assertEquals(steps, simulation.getStepNumber().longValue());
+    }
+
+    @Test
+    public void EventScheduler_LowRate_SameMetricsAsStepping() {
+	assertSameMetrics("RANDOM_PATH", 150);
+	assertSameMetrics("SHORTEST_PATH", 150);
+	assertSameMetrics("FLOODING", 150);
+    }
+
+    @Test
+    public void EventScheduler_EveryStep_SameMetricsAsStepping() {
+	assertSameMetrics("RANDOM_PATH", 1);
+	assertSameMetrics("FLOODING", 1);
+    }
+}
@@ -0,0 +1,98 @@
+package simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import network.Router;
+import network.Topology;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import algorithm.RoutingAlgorithm;
+
+public class SimulationSnapshotTest {
+
+    private final int routerCount = 60;
+    private final int warmUpSteps = 100;
+    private final int steps = 40;
+
+    private Topology topology;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+	topology = new Topology();
+	List<Router> routers = new ArrayList<>();
+	for (int i = 0; i < routerCount; i++) {
+	    Router router = new Router("R" + i);
+	    routers.add(router);
+	    topology.addRouter(router);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers.get(i),
+		    routers.get((i + 1) % routerCount));
+	    if (i % 4 == 0) {
+		topology.addEdge(routers.get(i),
+			routers.get((i + routerCount / 3) % routerCount));
+	    }
+	}
+
+	file = File.createTempFile("snapshot", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	file.delete();
+    }
+
+    private List<String> takeSteps(Simulation simulation) {
+	List<String> messages = new ArrayList<>();
+	for (int i = 0; i < steps; i++) {
+	    messages.addAll(simulation.step().getPacketMessages());
+	}
+	return messages;
+    }
+
+    private void assertRestoredSameAsOriginal(String algorithmName)
+	    throws IOException {
+	Simulation simulation = new Simulation(topology,
+		RoutingAlgorithm.create(algorithmName), 2);
+	simulation.setSeed(3110);
+	for (int i = 0; i < warmUpSteps; i++) {
+	    simulation.step();
+	}
+
+	SimulationSnapshot.save(simulation, file);
+	SimulationSnapshot snapshot = SimulationSnapshot.open(file);
+	Simulation first = snapshot.restore();
+	Simulation second = snapshot.restore();
+
+	List<String> expected = takeSteps(simulation);
+	assertEquals(expected, takeSteps(first));
+	assertEquals(expected, takeSteps(second));
+	assertEquals(simulation.getStepNumber(), first.getStepNumber());
+    }
+
+    @Test
+    public void SimulationSnapshot_Flooding_RestoredSameAsOriginal()
+	    throws IOException {
+	assertRestoredSameAsOriginal("FLOODING");
+    }
+
+    @Test
+    public void SimulationSnapshot_ShortestPath_RestoredSameAsOriginal()
+	    throws IOException {
+	assertRestoredSameAsOriginal("SHORTEST_PATH");
+    }
+
+    @Test(expected = IOException.class)
+    public void SimulationSnapshot_NotASnapshot_Rejected() throws IOException {
+	SimulationSnapshot.open(file);
+    }
+}
@@ -0,0 +1,196 @@
+package simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import network.Router;
+import network.Topology;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import traffic.PoissonTraffic;
+import traffic.TrafficGenerator;
+import traffic.UniformTraffic;
+import algorithm.RoutingAlgorithm;
+
+public class SimulationTest {
+
+    private final int routerCount = 300;
+    private final int steps = 40;
+    private final long seed = 3110;
+
+    private Topology topology;
+    private int peakActiveRouters; // Over the last run
+
+    @Before
+    public void setUp() throws Exception {
+	// A ring with a chord from every fifth router, big enough to be split
+	// into several partitions in parallel mode
+	topology = new Topology();
+	List<Router> routers = new ArrayList<>();
+	for (int i = 0; i < routerCount; i++) {
+	    Router router = new Router("R" + i);
+	    routers.add(router);
+	    topology.addRouter(router);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers.get(i),
+		    routers.get((i + 1) % routerCount));
+	    if (i % 5 == 0) {
+		topology.addEdge(routers.get(i),
+			routers.get((i + routerCount / 3) % routerCount));
+	    }
+	}
+    }
+
+    private List<String> run(String algorithmName, boolean parallel,
+	    long seed) {
+	return run(algorithmName, parallel, seed, new UniformTraffic(1));
+    }
+
+    private List<String> run(String algorithmName, boolean parallel,
+	    long seed, TrafficGenerator traffic) {
+	RoutingAlgorithm algorithm = RoutingAlgorithm.create(algorithmName);
+	algorithm.setParallel(parallel);
+	Simulation simulation = new Simulation(new Topology(topology),
+		algorithm, traffic);
+	simulation.setSeed(seed);
+
+	List<String> messages = new ArrayList<>();
+	peakActiveRouters = 0;
+	for (int i = 0; i < steps; i++) {
+	    messages.addAll(simulation.step().getPacketMessages());
+	    peakActiveRouters = Math.max(peakActiveRouters, simulation
+		    .getTopology().findActiveRouters());
+	}
+	return messages;
+    }
+
+    private List<String> runAfterSeek(String algorithmName, long stepsTaken,
+	    long target) {
+	Simulation simulation = new Simulation(new Topology(topology),
+		RoutingAlgorithm.create(algorithmName), 3);
+	simulation.setSeed(seed);
+	for (long i = 0; i < stepsTaken; i++) {
+	    simulation.step();
+	}
+	if (stepsTaken == target + 1) {
+	    simulation.undoStep();
+	} else {
+	    simulation.seek(target);
+	}
+
+	List<String> messages = new ArrayList<>();
+	for (int i = 0; i < steps; i++) {
+	    messages.addAll(simulation.step().getPacketMessages());
+	}
+	return messages;
+    }
+
+    @Test
+    public void Simulation_SameSeed_SameSteps() {
+	assertEquals(run("RANDOM_PATH", false, seed),
+		run("RANDOM_PATH", false, seed));
+    }
+
+    @Test
+    public void Simulation_DifferentSeed_DifferentSteps() {
+	assertFalse(run("RANDOM_PATH", false, seed).equals(
+		run("RANDOM_PATH", false, seed + 1)));
+    }
+
+    @Test
+    public void Simulation_RandomPathParallel_SameAsSequential() {
+	// Enough traffic to keep several partitions of routers busy
+	assertEquals(run("RANDOM_PATH", false, seed, new PoissonTraffic(8)),
+		run("RANDOM_PATH", true, seed, new PoissonTraffic(8)));
+	// Enough for at least two partitions of 64 routers
+	assertTrue(peakActiveRouters >= 128);
+    }
+
+    @Test
+    public void Simulation_ShortestPathParallel_SameAsSequential() {
+	assertEquals(run("SHORTEST_PATH", false, seed, new PoissonTraffic(8)),
+		run("SHORTEST_PATH", true, seed, new PoissonTraffic(8)));
+	assertTrue(peakActiveRouters >= 128);
+    }
+
+    @Test
+    public void Simulation_FloodingParallel_SameAsSequential() {
+	assertEquals(run("FLOODING", false, seed),
+		run("FLOODING", true, seed));
+	assertTrue(peakActiveRouters >= 128);
+    }
+
+    @Test
+    public void Simulation_FloodingUndo_SameAsNeverTaken() {
+	assertEquals(runAfterSeek("FLOODING", 90, 90),
+		runAfterSeek("FLOODING", 91, 90));
+    }
+
+    @Test
+    public void Simulation_SeekBack_SameAsNeverTaken() {
+	assertEquals(runAfterSeek("RANDOM_PATH", 70, 70),
+		runAfterSeek("RANDOM_PATH", 300, 70));
+    }
+
+    @Test
+    public void Simulation_SeekForward_SameAsStepping() {
+	assertEquals(runAfterSeek("SHORTEST_PATH", 150, 150),
+		runAfterSeek("SHORTEST_PATH", 0, 150));
+    }
+
+    @Test
+    public void Simulation_SeekBack_SameRouteMetrics() {
+	Simulation simulation = new Simulation(new Topology(topology),
+		RoutingAlgorithm.create("RANDOM_PATH"), 3);
+	simulation.setSeed(seed);
+	for (int i = 0; i < 200; i++) {
+	    simulation.step();
+	}
+	simulation.seek(70);
+
+	Simulation stepped = new Simulation(new Topology(topology),
+		RoutingAlgorithm.create("RANDOM_PATH"), 3);
+	stepped.setSeed(seed);
+	for (int i = 0; i < 70; i++) {
+	    stepped.step();
+	}
+	assertTrue(stepped.getMetrics().getRoutes().size() > 0);
+	assertEquals(routes(stepped), routes(simulation));
+    }
+
+    private static List<String> routes(Simulation simulation) {
+	RouteMetrics routes = simulation.getMetrics().getRoutes();
+	List<String> lines = new ArrayList<>();
+	for (int i = 0; i < routes.size(); i++) {
+	    lines.add(routes.getSource(i) + " " + routes.getDestination(i)
+		    + " " + routes.getDeliveries(i) + " " + routes.getHops(i));
+	}
+	return lines;
+    }
+
+    @Test
+    public void Simulation_StepListener_OneDeltaPerStep() {
+	Simulation simulation = new Simulation(new Topology(topology),
+		RoutingAlgorithm.create("FLOODING"), 1);
+	simulation.setSeed(seed);
+	List<StepDelta> deltas = new ArrayList<>();
+	simulation.addStepListener(deltas::add);
+
+	for (int i = 0; i < steps; i++) {
+	    StepResult result = simulation.step();
+	    StepDelta delta = deltas.get(i);
+	    assertEquals(result.getPacketsTransmitted(), delta.getMoved().size());
+	    assertEquals(result.getPacketsReceived(), delta.getDelivered()
+		    .size());
+	    assertEquals(result.getPacketsDropped(), delta.getDropped().size());
+	}
+	assertEquals(steps, deltas.size());
+    }
+}
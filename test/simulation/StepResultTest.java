@@ -0,0 +1,46 @@
+package simulation;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+import network.Router;
+import network.Topology;
+
+import org.junit.Test;
+
+import algorithm.RoutingAlgorithm;
+
+public class StepResultTest {
+
+    @Test
+    public void StepResult_WrittenAndRead_RendersTheSame() throws Exception {
+	Topology topology = new Topology();
+	Router[] ring = new Router[10];
+	for (int i = 0; i < ring.length; i++) {
+	    ring[i] = new Router("R" + i);
+	    topology.addRouter(ring[i]);
+	}
+	for (int i = 0; i < ring.length; i++) {
+	    topology.addEdge(ring[i], ring[(i + 1) % ring.length]);
+	}
+	Simulation simulation = new Simulation(topology,
+		RoutingAlgorithm.create("FLOODING"), 2);
+	simulation.setSeed(42);
+
+	for (int step = 0; step < 20; step++) {
+	    StepResult result = simulation.step();
+	    ByteBuffer buffer = ByteBuffer.allocate(result.getBinarySize());
+	    result.write(buffer);
+	    assertEquals(0, buffer.remaining());
+	    buffer.flip();
+
+	    StepResult read = StepResult.read(buffer, topology.getRouters());
+	    assertEquals(result.toString(), read.toString());
+	    assertEquals(result.getStepNumber(), read.getStepNumber());
+	    assertEquals(result.getPacketsTransmitted(),
+		    read.getPacketsTransmitted());
+	    assertEquals(result.getHopsReceived(), read.getHopsReceived());
+	}
+    }
+}
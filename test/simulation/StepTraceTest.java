@@ -0,0 +1,163 @@
+package simulation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import network.Packet;
+import network.Router;
+import network.Topology;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import algorithm.RoutingAlgorithm;
+
+public class StepTraceTest {
+
+    private final int routerCount = 120;
+    private final int steps = 300;
+    private final long seed = 3110;
+
+    private Topology topology;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+	topology = new Topology();
+	List<Router> routers = new ArrayList<>();
+	for (int i = 0; i < routerCount; i++) {
+	    Router router = new Router("R" + i);
+	    routers.add(router);
+	    topology.addRouter(router);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers.get(i),
+		    routers.get((i + 1) % routerCount));
+	    if (i % 6 == 0) {
+		topology.addEdge(routers.get(i),
+			routers.get((i + routerCount / 3) % routerCount));
+	    }
+	}
+
+	file = File.createTempFile("trace", ".bin");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+	file.delete();
+    }
+
+    /**
+     * @return The packets held by every router, by name.
+     */
+    private static Map<String, List<String>> packets(Topology topology) {
+	Map<String, List<String>> packets = new TreeMap<>();
+	for (Router router : topology) {
+	    List<String> held = new ArrayList<>();
+	    for (Packet packet : router.getPackets()) {
+		held.add(packet.getID() + "/" + packet.getHops());
+	    }
+	    held.sort(null);
+	    packets.put(router.getName(), held);
+	}
+	return packets;
+    }
+
+    private Simulation record() throws Exception {
+	// Flooding sends copies of packets, so the trace is big enough to
+	// need keyframes
+	Simulation simulation = new Simulation(topology,
+		RoutingAlgorithm.create("FLOODING"), 1);
+	simulation.setSeed(seed);
+	try (StepLog log = new StepLog(file, simulation)) {
+	    simulation.addStepListener(log);
+	    for (int i = 0; i < steps; i++) {
+		simulation.step();
+	    }
+	    // Steps taken again after going back replace the first ones
+	    simulation.seek(steps / 2);
+	    for (int i = 0; i < steps; i++) {
+		simulation.step();
+	    }
+	}
+	return simulation;
+    }
+
+    @Test
+    public void StepTrace_Replay_SameStepsAsRecorded() throws Exception {
+	Simulation recorded = record();
+	Simulation replay = new Simulation();
+	replay.replay(StepTrace.open(file));
+
+	List<String> expected = new ArrayList<>();
+	List<String> actual = new ArrayList<>();
+	for (int i = 0; i < steps; i++) {
+	    recorded.seek(steps / 2 + i);
+	    replay.seek(steps / 2 + i);
+	    assertEquals(packets(recorded.getTopology()), packets(replay
+		    .getTopology()));
+	    expected.addAll(recorded.step().getPacketMessages());
+	    actual.addAll(replay.step().getPacketMessages());
+	}
+	assertEquals(expected, actual);
+    }
+
+    @Test
+    public void StepTrace_SeekBack_SameStateAsRecorded() throws Exception {
+	Simulation recorded = record();
+	Simulation replay = new Simulation();
+	replay.replay(StepTrace.open(file));
+
+	replay.seek(steps + steps / 2);
+	assertEquals(packets(recorded.getTopology()), packets(replay
+		.getTopology()));
+	assertEquals(recorded.getMetrics().toString(), replay.getMetrics()
+		.toString());
+
+	for (long target = steps; target > 0; target -= 37) {
+	    recorded.seek(target);
+	    replay.seek(target);
+	    assertEquals(packets(recorded.getTopology()), packets(replay
+		    .getTopology()));
+	    assertEquals(recorded.getMetrics().toString(), replay
+		    .getMetrics().toString());
+	    assertEquals(recorded.getPacketCount(), replay.getPacketCount());
+	}
+    }
+
+    @Test
+    public void StepTrace_EdgeSwapped_TopologyWrittenAgain() throws Exception {
+	Simulation simulation = new Simulation(topology,
+		RoutingAlgorithm.create("FLOODING"), 1);
+	simulation.setSeed(seed);
+	Router[] routers = topology.getRouters();
+	try (StepLog log = new StepLog(file, simulation)) {
+	    simulation.addStepListener(log);
+	    simulation.step();
+	    // The same number of edges, but not the same ones
+	    topology.removeEdge(routers[0], routers[1]);
+	    topology.addEdge(routers[0], routers[2]);
+	    simulation.step();
+	}
+
+	try (StepTrace trace = StepTrace.open(file)) {
+	    Router replayed = trace.getTopology().getRouters()[0];
+	    List<String> connections = new ArrayList<>();
+	    for (Router router : replayed.getConnections()) {
+		connections.add(router.getName());
+	    }
+	    assertEquals(routers[0].getName(), replayed.getName());
+	    assertEquals(routers[0].getConnections().size(), connections.size());
+	    for (Router router : routers[0].getConnections()) {
+		assertTrue(connections.contains(router.getName()));
+	    }
+	}
+    }
+}
@@ -0,0 +1,148 @@
+package traffic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import network.Router;
+import network.Topology;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simulation.Simulation;
+import algorithm.RoutingAlgorithm;
+
+import common.Counter;
+import common.RandomStreams;
+
+public class TrafficGeneratorTest {
+
+    private final int routerCount = 50;
+    private final long seed = 3110;
+
+    private Topology topology;
+
+    @Before
+    public void setUp() throws Exception {
+	topology = new Topology();
+	List<Router> routers = new ArrayList<>();
+	for (int i = 0; i < routerCount; i++) {
+	    Router router = new Router("R" + i);
+	    routers.add(router);
+	    topology.addRouter(router);
+	}
+	for (int i = 0; i < routerCount; i++) {
+	    topology.addEdge(routers.get(i),
+		    routers.get((i + 1) % routerCount));
+	}
+    }
+
+    private int countPackets(TrafficGenerator traffic, int steps) {
+	RandomStreams randomStreams = new RandomStreams(seed);
+	TrafficBatch batch = new TrafficBatch();
+	Counter step = new Counter();
+	for (int i = 0; i < steps; i++) {
+	    step.increment();
+	    traffic.generate(step, topology.getRouters(), randomStreams, batch);
+	}
+
+	for (int i = 0; i < batch.size(); i++) {
+	    assertTrue(batch.getSources()[i] != batch.getDestinations()[i]);
+	}
+	return batch.size();
+    }
+
+    @Test
+    public void TrafficGenerator_Specification_RoundTrips() {
+	for (String specification : new String[] { "uniform:5",
+		"poisson:2.5", "onoff:0.25:10:3", "hotspot:4.0:0.5:R1,R7",
+		"matrix:R1>R2=0.5;R3>R4=2.0", "weighted:3.0:R1=2.0,R2=1.0:*" }) {
+	    assertEquals(specification, TrafficGenerator.create(specification)
+		    .toString());
+	}
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TrafficGenerator_InvalidProbability_Rejected() {
+	TrafficGenerator.create("onoff:1.5:10:3");
+    }
+
+    @Test
+    public void PoissonTraffic_ManySteps_MeanPerStep() {
+	int packets = countPackets(new PoissonTraffic(500), 200);
+	assertEquals(500, packets / 200.0, 5);
+    }
+
+    @Test
+    public void OnOffTraffic_ManySteps_ExpectedLoad() {
+	int packets = countPackets(new OnOffTraffic(0.2, 10, 4), 1000);
+	assertEquals(routerCount * 0.2 * 4, packets / 1000.0, 2);
+    }
+
+    @Test
+    public void WeightedTraffic_ManySteps_ProportionalToWeights() {
+	TrafficGenerator traffic = TrafficGenerator
+		.create("weighted:100:R1=3,R2=1:R1=1,R3=1");
+	RandomStreams randomStreams = new RandomStreams(seed);
+	TrafficBatch batch = new TrafficBatch();
+	Counter step = new Counter();
+	int[] sent = new int[routerCount];
+	int[] received = new int[routerCount];
+	for (int i = 0; i < 100; i++) {
+	    step.increment();
+	    batch.clear();
+	    traffic.generate(step, topology.getRouters(), randomStreams, batch);
+	    for (int j = 0; j < batch.size(); j++) {
+		sent[batch.getSources()[j]]++;
+		received[batch.getDestinations()[j]]++;
+	    }
+	}
+
+	int[] indices = new int[4];
+	for (Router router : topology) {
+	    for (int i = 1; i < indices.length; i++) {
+		if (router.getName().equals("R" + i)) {
+		    indices[i] = router.getIndex();
+		}
+	    }
+	}
+	int total = sent[indices[1]] + sent[indices[2]];
+	assertEquals(100, total / 100.0, 3);
+	assertEquals(0.75, sent[indices[1]] / (double) total, 0.03);
+	// R1 can only send to R3
+	assertEquals(sent[indices[1]] + sent[indices[2]] / 2.0,
+		received[indices[3]], 0.03 * total);
+	assertEquals(total, received[indices[1]] + received[indices[3]]);
+    }
+
+    @Test
+    public void MatrixTraffic_ManySteps_MeanPerPair() {
+	TrafficGenerator traffic = TrafficGenerator
+		.create("matrix:R1>R2=0.5;R3>R4=2.0;R5>R6=0");
+	assertEquals(2.5, countPackets(traffic, 2000) / 2000.0, 0.1);
+    }
+
+    @Test
+    public void Simulation_PoissonSeekBack_SameAsNeverTaken() {
+	Simulation simulation = new Simulation(topology,
+		RoutingAlgorithm.create("RANDOM_PATH"), new PoissonTraffic(20));
+	simulation.setSeed(seed);
+	for (int i = 0; i < 150; i++) {
+	    simulation.step();
+	}
+	long transmitted = simulation.getMetrics().getPacketsTransmitted();
+	Counter packetCount = new Counter(simulation.getPacketCount());
+
+	for (int i = 0; i < 50; i++) {
+	    simulation.step();
+	}
+	simulation.seek(150);
+
+	assertEquals(packetCount, simulation.getPacketCount());
+	assertEquals(transmitted, simulation.getMetrics()
+		.getPacketsTransmitted());
+    }
+}